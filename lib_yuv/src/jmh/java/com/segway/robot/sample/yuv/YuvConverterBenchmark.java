@@ -0,0 +1,86 @@
+package com.segway.robot.sample.yuv;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Frames per second of {@link YuvConverter} against the float loop the sample activities used
+ * before, which allocated its output array for every frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class YuvConverterBenchmark {
+
+    @Param({"1280x720", "1920x1080"})
+    public String resolution;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private int width;
+    private int height;
+    private byte[] data;
+    private YuvConverter converter;
+
+    @Setup
+    public void setUp() {
+        String[] size = resolution.split("x");
+        width = Integer.parseInt(size[0]);
+        height = Integer.parseInt(size[1]);
+        data = new byte[YuvConverter.frameLength(YuvConverter.FORMAT_NV12, width, height)];
+        new Random(1).nextBytes(data);
+        converter = new YuvConverter(threads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        converter.close();
+    }
+
+    @Benchmark
+    public int[] tableDriven() {
+        return converter.convert(data, YuvConverter.FORMAT_NV12, width, height);
+    }
+
+    @Benchmark
+    public int[] tableDrivenQuarterScale() {
+        return converter.convert(data, YuvConverter.FORMAT_NV12, width, height, 4);
+    }
+
+    /**
+     * The former yuv2RGBBitmap of the sample activities, without the setPixels() call. It does not
+     * use the thread count.
+     */
+    @Benchmark
+    public int[] floatLoop() {
+        int frameSize = width * height;
+        int[] rgba = new int[frameSize];
+        for (int i = 0; i < height; i++) {
+            for (int j = 0; j < width; j++) {
+                int y = 0xff & data[i * width + j];
+                int v = 0xff & data[frameSize + (i >> 1) * width + (j & ~1)];
+                int u = 0xff & data[frameSize + (i >> 1) * width + (j & ~1) + 1];
+                y = y < 16 ? 16 : y;
+                int r = Math.round(1.164f * (y - 16) + 1.596f * (v - 128));
+                int g = Math.round(1.164f * (y - 16) - 0.813f * (v - 128) - 0.391f * (u - 128));
+                int b = Math.round(1.164f * (y - 16) + 2.018f * (u - 128));
+                r = r < 0 ? 0 : (r > 255 ? 255 : r);
+                g = g < 0 ? 0 : (g > 255 ? 255 : g);
+                b = b < 0 ? 0 : (b > 255 ? 255 : b);
+                rgba[i * width + j] = 0xff000000 + (b << 16) + (g << 8) + r;
+            }
+        }
+        return rgba;
+    }
+}
@@ -0,0 +1,357 @@
+package com.segway.robot.sample.yuv;
+
+import java.io.Closeable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Converts 4:2:0 YUV frames to ARGB_8888 pixels, ready for Bitmap.setPixels().
+ * <p>
+ * The BT.601 limited range coefficients are applied with 16.16 fixed-point lookup tables, one
+ * per channel contribution, so a pixel costs a few table loads, adds and one clamp-table load.
+ * Each chroma sample is looked up once for its 2x2 block of pixels. The output array is owned by
+ * the converter and reused while the frame size stays the same.
+ * <p>
+ * For previews the frame can be downscaled while it is converted: with a scale of n only every
+ * n-th pixel of every n-th row is sampled, so a 1/4 scale preview costs 1/16 of the work and
+ * memory of a full conversion.
+ * <p>
+ * With more than one thread the frame is split into bands of row pairs: the calling thread
+ * converts the first band and a fixed pool the others. Call {@link #close()} to stop the pool.
+ * Not thread-safe, use one converter per producer.
+ */
+public class YuvConverter implements Closeable {
+
+    /**
+     * Y plane followed by interleaved U/V, U first.
+     */
+    public static final int FORMAT_NV12 = 0;
+    /**
+     * Y plane followed by interleaved V/U, V first.
+     */
+    public static final int FORMAT_NV21 = 1;
+    /**
+     * Y plane followed by the V and the U plane, as defined by Android: the chroma stride is
+     * half the width aligned up to 16.
+     */
+    public static final int FORMAT_YV12 = 2;
+
+    private static final int SHIFT = 16;
+    private static final int ROUND = 1 << (SHIFT - 1);
+    private static final int CLAMP_OFFSET = 384;
+
+    private static final int[] Y_TABLE = new int[256];
+    private static final int[] R_V_TABLE = new int[256];
+    private static final int[] G_U_TABLE = new int[256];
+    private static final int[] G_V_TABLE = new int[256];
+    private static final int[] B_U_TABLE = new int[256];
+    private static final int[] CLAMP_TABLE = new int[1024];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            Y_TABLE[i] = fixed(1.164 * (Math.max(i, 16) - 16)) + ROUND;
+            R_V_TABLE[i] = fixed(1.596 * (i - 128));
+            G_U_TABLE[i] = fixed(-0.391 * (i - 128));
+            G_V_TABLE[i] = fixed(-0.813 * (i - 128));
+            B_U_TABLE[i] = fixed(2.018 * (i - 128));
+        }
+        for (int i = 0; i < CLAMP_TABLE.length; i++) {
+            CLAMP_TABLE[i] = Math.min(255, Math.max(0, i - CLAMP_OFFSET));
+        }
+    }
+
+    private final int threadCount;
+    private final ExecutorService executor;
+    private final Band[] bands;
+
+    private int[] pixels;
+    private byte[] data;
+    private int format;
+    private int width;
+    private int height;
+    private int scale;
+    private int uOffset;
+    private int vOffset;
+    private int chromaStride;
+    private int chromaStep;
+    private CountDownLatch latch;
+
+    public YuvConverter() {
+        this(1);
+    }
+
+    /**
+     * @param threadCount number of threads converting a frame, including the calling thread
+     */
+    public YuvConverter(int threadCount) {
+        if (threadCount <= 0) {
+            throw new IllegalArgumentException("The thread count must be positive.");
+        }
+        this.threadCount = threadCount;
+        bands = new Band[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            bands[i] = new Band();
+        }
+        executor = threadCount > 1 ? Executors.newFixedThreadPool(threadCount - 1, new ThreadFactory() {
+            private int count;
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "YuvConverter-" + count++);
+                thread.setDaemon(true);
+                return thread;
+            }
+        }) : null;
+    }
+
+    /**
+     * Convert a frame into the converter's output array.
+     *
+     * @return the ARGB pixels, row by row with a stride of {@code width}; valid until the next call
+     */
+    public int[] convert(byte[] data, int format, int width, int height) {
+        return convert(data, format, width, height, 1);
+    }
+
+    /**
+     * Convert a frame downscaled by {@code scale} into the converter's output array.
+     *
+     * @return the ARGB pixels, row by row with a stride of {@code width / scale}; valid until the
+     * next call
+     */
+    public int[] convert(byte[] data, int format, int width, int height, int scale) {
+        int size = scaledSize(width, scale) * scaledSize(height, scale);
+        if (pixels == null || pixels.length != size) {
+            pixels = new int[size];
+        }
+        convert(data, format, width, height, scale, pixels);
+        return pixels;
+    }
+
+    /**
+     * Convert a frame into a caller-owned array of at least {@code width * height} pixels.
+     */
+    public void convert(byte[] data, int format, int width, int height, int[] out) {
+        convert(data, format, width, height, 1, out);
+    }
+
+    /**
+     * Convert a frame downscaled by {@code scale} into a caller-owned array of at least
+     * {@code (width / scale) * (height / scale)} pixels.
+     */
+    public void convert(byte[] data, int format, int width, int height, int scale, int[] out) {
+        if (data == null) {
+            throw new IllegalArgumentException("data is null");
+        }
+        if (width <= 0 || height <= 0 || (width & 1) != 0 || (height & 1) != 0) {
+            throw new IllegalArgumentException("Unsupported frame size " + width + "x" + height);
+        }
+        if (data.length < frameLength(format, width, height)) {
+            throw new IllegalArgumentException("The frame is too short: " + data.length);
+        }
+        if (scale <= 0 || scale > width || scale > height) {
+            throw new IllegalArgumentException("Unsupported scale " + scale);
+        }
+        int outHeight = scaledSize(height, scale);
+        if (out.length < scaledSize(width, scale) * outHeight) {
+            throw new IllegalArgumentException("The output is too short: " + out.length);
+        }
+        this.data = data;
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        this.scale = scale;
+        setChromaLayout();
+
+        // full size conversions work on row pairs sharing their chroma row
+        int rowStep = scale == 1 ? 2 : 1;
+        int units = outHeight / rowStep;
+        int bandCount = Math.min(threadCount, units);
+        int start = 0;
+        for (int i = 0; i < bandCount; i++) {
+            int end = start + units / bandCount + (i < units % bandCount ? 1 : 0);
+            bands[i].set(out, start * rowStep, end * rowStep);
+            start = end;
+        }
+        if (bandCount > 1) {
+            latch = new CountDownLatch(bandCount - 1);
+            for (int i = 1; i < bandCount; i++) {
+                executor.execute(bands[i]);
+            }
+        }
+        bands[0].convert();
+        if (bandCount > 1) {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    latch.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        this.data = null;
+    }
+
+    /**
+     * @return the number of bytes of a frame in {@code format}
+     */
+    public static int frameLength(int format, int width, int height) {
+        switch (format) {
+            case FORMAT_NV12:
+            case FORMAT_NV21:
+                return width * height * 3 / 2;
+            case FORMAT_YV12:
+                return width * height + 2 * yv12ChromaStride(width) * (height / 2);
+            default:
+                throw new IllegalArgumentException("Unsupported format " + format);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the width or height of a frame side downscaled by {@code scale}
+     */
+    public static int scaledSize(int size, int scale) {
+        return size / scale;
+    }
+
+    private static int yv12ChromaStride(int width) {
+        return ((width >> 1) + 15) & ~15;
+    }
+
+    private static int fixed(double value) {
+        return (int) Math.round(value * (1 << SHIFT));
+    }
+
+    private void setChromaLayout() {
+        int frameSize = width * height;
+        if (format == FORMAT_NV12) {
+            uOffset = frameSize;
+            vOffset = frameSize + 1;
+            chromaStride = width;
+            chromaStep = 2;
+        } else if (format == FORMAT_NV21) {
+            vOffset = frameSize;
+            uOffset = frameSize + 1;
+            chromaStride = width;
+            chromaStep = 2;
+        } else {
+            chromaStride = yv12ChromaStride(width);
+            vOffset = frameSize;
+            uOffset = frameSize + chromaStride * (height >> 1);
+            chromaStep = 1;
+        }
+    }
+
+    private void convertRows(int[] out, int startRow, int endRow) {
+        final byte[] data = this.data;
+        final int width = this.width;
+        final int chromaStride = this.chromaStride;
+        final int chromaStep = this.chromaStep;
+        final int[] yTable = Y_TABLE;
+        final int[] clamp = CLAMP_TABLE;
+
+        for (int row = startRow; row < endRow; row += 2) {
+            int y0 = row * width;
+            int y1 = y0 + width;
+            int chromaRow = (row >> 1) * chromaStride;
+            int u = uOffset + chromaRow;
+            int v = vOffset + chromaRow;
+            for (int x = 0; x < width; x += 2) {
+                int uValue = data[u] & 0xff;
+                int vValue = data[v] & 0xff;
+                u += chromaStep;
+                v += chromaStep;
+                int rv = R_V_TABLE[vValue];
+                int guv = G_U_TABLE[uValue] + G_V_TABLE[vValue];
+                int bu = B_U_TABLE[uValue];
+
+                int y = yTable[data[y0 + x] & 0xff];
+                out[y0 + x] = pack(clamp, y, rv, guv, bu);
+                y = yTable[data[y0 + x + 1] & 0xff];
+                out[y0 + x + 1] = pack(clamp, y, rv, guv, bu);
+                y = yTable[data[y1 + x] & 0xff];
+                out[y1 + x] = pack(clamp, y, rv, guv, bu);
+                y = yTable[data[y1 + x + 1] & 0xff];
+                out[y1 + x + 1] = pack(clamp, y, rv, guv, bu);
+            }
+        }
+    }
+
+    /**
+     * Point-sample output rows {@code [startRow, endRow)} of a frame downscaled by {@link #scale}.
+     */
+    private void convertScaledRows(int[] out, int startRow, int endRow) {
+        final byte[] data = this.data;
+        final int width = this.width;
+        final int scale = this.scale;
+        final int outWidth = scaledSize(width, scale);
+        final int chromaStride = this.chromaStride;
+        final int chromaStep = this.chromaStep;
+        final int[] yTable = Y_TABLE;
+        final int[] clamp = CLAMP_TABLE;
+
+        for (int row = startRow; row < endRow; row++) {
+            int sourceRow = row * scale;
+            int luma = sourceRow * width;
+            int chromaRow = (sourceRow >> 1) * chromaStride;
+            int output = row * outWidth;
+            for (int x = 0, sourceX = 0; x < outWidth; x++, sourceX += scale) {
+                int chroma = chromaRow + (sourceX >> 1) * chromaStep;
+                int uValue = data[uOffset + chroma] & 0xff;
+                int vValue = data[vOffset + chroma] & 0xff;
+                out[output + x] = pack(clamp, yTable[data[luma + sourceX] & 0xff], R_V_TABLE[vValue],
+                        G_U_TABLE[uValue] + G_V_TABLE[vValue], B_U_TABLE[uValue]);
+            }
+        }
+    }
+
+    private static int pack(int[] clamp, int y, int rv, int guv, int bu) {
+        int r = clamp[((y + rv) >> SHIFT) + CLAMP_OFFSET];
+        int g = clamp[((y + guv) >> SHIFT) + CLAMP_OFFSET];
+        int b = clamp[((y + bu) >> SHIFT) + CLAMP_OFFSET];
+        return 0xff000000 | (r << 16) | (g << 8) | b;
+    }
+
+    private class Band implements Runnable {
+        int[] out;
+        int startRow;
+        int endRow;
+
+        void set(int[] out, int startRow, int endRow) {
+            this.out = out;
+            this.startRow = startRow;
+            this.endRow = endRow;
+        }
+
+        void convert() {
+            if (scale == 1) {
+                convertRows(out, startRow, endRow);
+            } else {
+                convertScaledRows(out, startRow, endRow);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                convert();
+            } finally {
+                latch.countDown();
+            }
+        }
+    }
+}
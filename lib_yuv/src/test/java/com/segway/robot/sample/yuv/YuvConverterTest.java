@@ -0,0 +1,114 @@
+package com.segway.robot.sample.yuv;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test comparing {@link YuvConverter} with a floating point BT.601 reference.
+ */
+public class YuvConverterTest {
+    private static final int WIDTH = 66;
+    private static final int HEIGHT = 38;
+
+    private static byte[] randomFrame(int format, long seed) {
+        byte[] data = new byte[YuvConverter.frameLength(format, WIDTH, HEIGHT)];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    private static int reference(int y, int u, int v) {
+        y = Math.max(y, 16);
+        int r = clamp(Math.round(1.164f * (y - 16) + 1.596f * (v - 128)));
+        int g = clamp(Math.round(1.164f * (y - 16) - 0.813f * (v - 128) - 0.391f * (u - 128)));
+        int b = clamp(Math.round(1.164f * (y - 16) + 2.018f * (u - 128)));
+        return 0xff000000 | r << 16 | g << 8 | b;
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+
+    private static void assertMatchesReference(byte[] data, int format, int[] pixels) {
+        int frameSize = WIDTH * HEIGHT;
+        int chromaStride = format == YuvConverter.FORMAT_YV12 ? ((WIDTH / 2 + 15) & ~15) : WIDTH;
+        for (int row = 0; row < HEIGHT; row++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int chroma = frameSize + (row / 2) * chromaStride;
+                int u;
+                int v;
+                if (format == YuvConverter.FORMAT_NV12) {
+                    u = data[chroma + (x & ~1)] & 0xff;
+                    v = data[chroma + (x & ~1) + 1] & 0xff;
+                } else if (format == YuvConverter.FORMAT_NV21) {
+                    v = data[chroma + (x & ~1)] & 0xff;
+                    u = data[chroma + (x & ~1) + 1] & 0xff;
+                } else {
+                    v = data[chroma + x / 2] & 0xff;
+                    u = data[chroma + chromaStride * (HEIGHT / 2) + x / 2] & 0xff;
+                }
+                int expected = reference(data[row * WIDTH + x] & 0xff, u, v);
+                int actual = pixels[row * WIDTH + x];
+                assertEquals(0xff, actual >>> 24);
+                for (int shift = 0; shift <= 16; shift += 8) {
+                    int difference = Math.abs((expected >> shift & 0xff) - (actual >> shift & 0xff));
+                    assertTrue("pixel " + x + "," + row + " differs by " + difference, difference <= 1);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void matchesReference() {
+        YuvConverter converter = new YuvConverter();
+        for (int format : new int[]{YuvConverter.FORMAT_NV12, YuvConverter.FORMAT_NV21, YuvConverter.FORMAT_YV12}) {
+            byte[] data = randomFrame(format, format);
+            assertMatchesReference(data, format, converter.convert(data, format, WIDTH, HEIGHT));
+        }
+        converter.close();
+    }
+
+    @Test
+    public void threadsProduceSameOutput() {
+        YuvConverter single = new YuvConverter(1);
+        YuvConverter pooled = new YuvConverter(3);
+        byte[] data = randomFrame(YuvConverter.FORMAT_NV12, 42);
+        int[] expected = single.convert(data, YuvConverter.FORMAT_NV12, WIDTH, HEIGHT).clone();
+        int[] first = pooled.convert(data, YuvConverter.FORMAT_NV12, WIDTH, HEIGHT);
+        assertArrayEquals(expected, first);
+        // the output array is reused for frames of the same size
+        assertSame(first, pooled.convert(data, YuvConverter.FORMAT_NV12, WIDTH, HEIGHT));
+        single.close();
+        pooled.close();
+    }
+
+    @Test
+    public void scaledOutputSamplesFullOutput() {
+        YuvConverter full = new YuvConverter();
+        YuvConverter scaled = new YuvConverter(2);
+        for (int format : new int[]{YuvConverter.FORMAT_NV12, YuvConverter.FORMAT_NV21, YuvConverter.FORMAT_YV12}) {
+            byte[] data = randomFrame(format, 100 + format);
+            int[] expected = full.convert(data, format, WIDTH, HEIGHT).clone();
+            for (int scale : new int[]{2, 3, 4}) {
+                int outWidth = YuvConverter.scaledSize(WIDTH, scale);
+                int outHeight = YuvConverter.scaledSize(HEIGHT, scale);
+                int[] pixels = scaled.convert(data, format, WIDTH, HEIGHT, scale);
+                assertEquals(outWidth * outHeight, pixels.length);
+                for (int row = 0; row < outHeight; row++) {
+                    for (int x = 0; x < outWidth; x++) {
+                        assertEquals(expected[row * scale * WIDTH + x * scale], pixels[row * outWidth + x]);
+                    }
+                }
+            }
+        }
+        full.close();
+        scaled.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectShortFrame() {
+        new YuvConverter().convert(new byte[WIDTH * HEIGHT], YuvConverter.FORMAT_NV21, WIDTH, HEIGHT);
+    }
+}
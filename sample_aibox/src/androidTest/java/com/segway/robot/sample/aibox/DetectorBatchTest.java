@@ -0,0 +1,180 @@
+package com.segway.robot.sample.aibox;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.segway.robot.sdk.vision.stream.PixelFormat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Instrumented throughput test of {@link Detector#detectBatch} against detecting the same frames
+ * one by one. Needs the model at {@link #MODEL_PATH} and the sample image at {@link #IMAGE_PATH},
+ * converted to NV12 and placed differently in every frame; the timings are logged.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DetectorBatchTest {
+    private static final String TAG = "DetectorBatchTest";
+    private static final String MODEL_PATH = "/sdcard/apple_model.tflite";
+    private static final String IMAGE_PATH = "/sdcard/apple.jpeg";
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+    private static final int BATCH_SIZE = 4;
+    private static final int ROUNDS = 5;
+    private static final float COORDINATE_TOLERANCE = 1f;
+    private static final float SCORE_TOLERANCE = 1e-3f;
+
+    private Detector mDetector;
+    private ByteBuffer[] mFrames;
+    private DetectionResults[] mResults;
+    private DetectionResults[] mBatchResults;
+
+    @Before
+    public void setUp() {
+        assumeTrue("no model at " + MODEL_PATH, new File(MODEL_PATH).exists());
+        Bitmap image = BitmapFactory.decodeFile(IMAGE_PATH);
+        assumeTrue("no image at " + IMAGE_PATH, image != null);
+        // both paths on the CPU, the batch interpreter never uses the GPU delegate
+        mDetector = Detector.create(MODEL_PATH, false);
+        assertNotNull(mDetector);
+        mFrames = new ByteBuffer[BATCH_SIZE];
+        mResults = new DetectionResults[BATCH_SIZE];
+        mBatchResults = new DetectionResults[BATCH_SIZE];
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            mFrames[i] = toNv12(frame(image, i));
+            mResults[i] = new DetectionResults(64);
+            mBatchResults[i] = new DetectionResults(64);
+        }
+        image.recycle();
+    }
+
+    /**
+     * The image scaled onto a grey frame, a different placement for every index so that results
+     * swapped between frames do not match.
+     */
+    private static Bitmap frame(Bitmap image, int index) {
+        Bitmap frame = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(frame);
+        canvas.drawColor(Color.GRAY);
+        float scale = Math.min((float) WIDTH / image.getWidth(), (float) HEIGHT / image.getHeight());
+        if (index >= 2) {
+            scale *= 0.6f;
+        }
+        Matrix matrix = new Matrix();
+        matrix.postScale(scale, scale);
+        if (index % 2 == 1) {
+            matrix.postScale(-1, 1, image.getWidth() * scale / 2, 0);
+        }
+        float width = image.getWidth() * scale;
+        float height = image.getHeight() * scale;
+        switch (index) {
+            case 2:
+                break;
+            case 3:
+                matrix.postTranslate(WIDTH - width, HEIGHT - height);
+                break;
+            default:
+                matrix.postTranslate((WIDTH - width) / 2, (HEIGHT - height) / 2);
+                break;
+        }
+        canvas.drawBitmap(image, matrix, null);
+        return frame;
+    }
+
+    /**
+     * BT.601 video range NV12, the layout of the camera frames.
+     */
+    private static ByteBuffer toNv12(Bitmap frame) {
+        int[] argb = new int[WIDTH * HEIGHT];
+        frame.getPixels(argb, 0, WIDTH, 0, 0, WIDTH, HEIGHT);
+        frame.recycle();
+        byte[] nv12 = new byte[WIDTH * HEIGHT * 3 / 2];
+        int uvIndex = WIDTH * HEIGHT;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int pixel = argb[y * WIDTH + x];
+                int r = (pixel >> 16) & 0xff;
+                int g = (pixel >> 8) & 0xff;
+                int b = pixel & 0xff;
+                nv12[y * WIDTH + x] = (byte) (((66 * r + 129 * g + 25 * b + 128) >> 8) + 16);
+                if ((y & 1) == 0 && (x & 1) == 0) {
+                    nv12[uvIndex++] = (byte) (((-38 * r - 74 * g + 112 * b + 128) >> 8) + 128);
+                    nv12[uvIndex++] = (byte) (((112 * r - 94 * g - 18 * b + 128) >> 8) + 128);
+                }
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(nv12.length).order(ByteOrder.nativeOrder());
+        buffer.put(nv12).clear();
+        return buffer;
+    }
+
+    @After
+    public void tearDown() {
+        if (mDetector != null) {
+            mDetector.close();
+        }
+    }
+
+    @Test
+    public void batchMatchesSingleFrames() {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            int count = mDetector.detect(mFrames[i], 0, PixelFormat.YUV420, WIDTH, HEIGHT, mResults[i]);
+            assertTrue("no boxes in frame " + i, count > 0);
+        }
+        assertEquals(BATCH_SIZE, mDetector.detectBatch(mFrames, PixelFormat.YUV420, WIDTH, HEIGHT, mBatchResults));
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            DetectionResults single = mResults[i];
+            DetectionResults batch = mBatchResults[i];
+            assertEquals("boxes in frame " + i, single.size(), batch.size());
+            for (int box = 0; box < single.size(); box++) {
+                String message = "frame " + i + " box " + box;
+                assertEquals(message, single.getClassId(box), batch.getClassId(box));
+                assertEquals(message, single.getX1(box), batch.getX1(box), COORDINATE_TOLERANCE);
+                assertEquals(message, single.getY1(box), batch.getY1(box), COORDINATE_TOLERANCE);
+                assertEquals(message, single.getX2(box), batch.getX2(box), COORDINATE_TOLERANCE);
+                assertEquals(message, single.getY2(box), batch.getY2(box), COORDINATE_TOLERANCE);
+                assertEquals(message, single.getScore(box), batch.getScore(box), SCORE_TOLERANCE);
+            }
+        }
+    }
+
+    @Test
+    public void throughput() {
+        // the first calls load the kernels and size the batch interpreter
+        mDetector.detect(mFrames[0], 0, PixelFormat.YUV420, WIDTH, HEIGHT, mResults[0]);
+        assertEquals(BATCH_SIZE, mDetector.detectBatch(mFrames, PixelFormat.YUV420, WIDTH, HEIGHT, mResults));
+
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                mDetector.detect(mFrames[i], 0, PixelFormat.YUV420, WIDTH, HEIGHT, mResults[i]);
+            }
+        }
+        long single = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            mDetector.detectBatch(mFrames, PixelFormat.YUV420, WIDTH, HEIGHT, mResults);
+        }
+        long batch = System.nanoTime() - start;
+
+        int frames = ROUNDS * BATCH_SIZE;
+        Log.i(TAG, String.format("single frames: %.2f fps, batches of %d: %.2f fps", frames * 1e9 / single,
+                BATCH_SIZE, frames * 1e9 / batch));
+    }
+}
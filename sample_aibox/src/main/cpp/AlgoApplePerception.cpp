@@ -24,26 +24,39 @@ using namespace ninebot_algo;
 using namespace cnn_ninebot;
 // using namespace segway_scooter;
 
-AlgoApplePerception::AlgoApplePerception(){
-    _sidewalk_config.enable_multi_thread = false;
-    _sidewalk_config.input_width = 512;
-    _sidewalk_config.input_height = 512;
-    _sidewalk_config.input_depth = 3;
-    _sidewalk_config.grid_h = 16;
-    _sidewalk_config.grid_w = 16;
-    _sidewalk_config.num_object = 3;
-    _sidewalk_config.classes = 1;
-    _sidewalk_config.conf_thresh = 0.45;
-    _sidewalk_config.class_thresh = 0.5;
-    _sidewalk_config.nms_thresh = 0.3;
-    _sidewalk_config.frozen_net_path = "/sdcard/apple_model.tflite";
-    _sidewalk_config.num_classes = 3;
-    _sidewalk_config.softmax_CE = true;
-    _sidewalk_config.robot_base_type=3000;
+AlgoApplePerception::AlgoApplePerception() : AlgoApplePerception(defaultConfig()) {
+}
 
+AlgoApplePerception::AlgoApplePerception(const segmentor_config &config){
+    _sidewalk_config = config;
     _uq_pedestrian_perception = std::make_shared<ninebot_algo::cnn_ninebot::ApplePerception>(_sidewalk_config);
 }
 
+segmentor_config AlgoApplePerception::defaultConfig(){
+    segmentor_config config;
+    config.backend = inference_backend::gpu;
+    config.num_threads = 0;
+    config.input_width = 512;
+    config.input_height = 512;
+    config.input_depth = 3;
+    config.grid_h = 16;
+    config.grid_w = 16;
+    config.num_object = 3;
+    config.classes = 1;
+    config.conf_thresh = 0.45;
+    config.class_thresh = 0.5;
+    config.nms_thresh = 0.3;
+    config.frozen_net_path = "/sdcard/apple_model.tflite";
+    config.num_classes = 3;
+    config.softmax_CE = true;
+    config.robot_base_type=3000;
+    return config;
+}
+
+bool AlgoApplePerception::isReady() const {
+    return _uq_pedestrian_perception->is_ready();
+}
+
 std::vector<int> AlgoApplePerception::getFrontMask(){
     segmentor_config sidewalk_config = _uq_pedestrian_perception->get_segmentor_config();
     int basetype = sidewalk_config.robot_base_type;
@@ -89,47 +102,58 @@ vector<bbox> AlgoApplePerception::PerceptionProcess(const cv::Mat &frame){
 
     auto coreAlgoStart = std::chrono::high_resolution_clock::now();
 
-    // Init
-    int original_width = frame.cols;
-    int original_height = frame.rows;
-    front_mask = getFrontMask();
-    int handLoc = front_mask[3] % _sidewalk_config.input_width *
-            original_width / _sidewalk_config.input_width;
     //ALOGTAGD(TAG,"VisionLog pedestrainPerception Time");
 
     std::vector<bbox> pedestrian_res;
-    if((1920 == frame.cols) && (1080 == frame.rows)){
-        setCropParameter(_crop_config, 240, 0, 1440, 1080);
-        cv::Mat cropped_frame;
-        cv::Rect crop_rect = cv::Rect(_crop_config.crop_x, _crop_config.crop_y, _crop_config.crop_w, _crop_config.crop_h);
-        cropped_frame = frame(crop_rect);
-        (*_uq_pedestrian_perception)(cropped_frame, pedestrian_res, handLoc);
+    (*_uq_pedestrian_perception)(frame(selectCrop(frame.cols, frame.rows)), pedestrian_res);
+
+    toFrameCoordinates(pedestrian_res);
+    return pedestrian_res;
+
+}
+
+vector<bbox> AlgoApplePerception::PerceptionProcess(const uint8_t *nv12, size_t length, int width, int height){
+    std::vector<bbox> pedestrian_res;
+    (*_uq_pedestrian_perception)(nv12, length, width, height, selectCrop(width, height), pedestrian_res);
+    toFrameCoordinates(pedestrian_res);
+    return pedestrian_res;
+}
+
+vector<bbox> AlgoApplePerception::PerceptionProcess(const cv::Mat &cropped, const cv::Rect &crop){
+    setCropParameter(_crop_config, crop.x, crop.y, crop.width, crop.height);
+
+    std::vector<bbox> pedestrian_res;
+    (*_uq_pedestrian_perception)(cropped, pedestrian_res);
+    toFrameCoordinates(pedestrian_res);
+    return pedestrian_res;
+}
+
+bool AlgoApplePerception::PerceptionProcessBatch(const std::vector<const uint8_t *> &frames, size_t length,
+        int width, int height, std::vector<std::vector<bbox>> &results){
+    if (!_uq_pedestrian_perception->detect_batch(frames, length, width, height, selectCrop(width, height), results)){
+        return false;
     }
-    else if((1280 == frame.cols) && (720 == frame.rows)){
-        setCropParameter(_crop_config, 160, 0, 1120, 720);
-        (*_uq_pedestrian_perception)(frame, pedestrian_res, handLoc);
+    for (size_t i = 0; i < results.size(); i++){
+        toFrameCoordinates(results[i]);
     }
-    else if((960 == frame.cols) && (540 == frame.rows)){
-        setCropParameter(_crop_config, 0, 0, 640, 480);
-        (*_uq_pedestrian_perception)(frame, pedestrian_res, handLoc);
+    return true;
+}
+
+cv::Rect AlgoApplePerception::selectCrop(int width, int height){
+    if((1920 == width) && (1080 == height)){
+        setCropParameter(_crop_config, 240, 0, 1440, 1080);
+        return cv::Rect(_crop_config.crop_x, _crop_config.crop_y, _crop_config.crop_w, _crop_config.crop_h);
     }
-    else if((640 == frame.cols) && (480 == frame.rows)){
-        setCropParameter(_crop_config, 0, 0, 640, 480);
-        (*_uq_pedestrian_perception)(frame, pedestrian_res, handLoc);
+    else if((1280 == width) && (720 == height)){
+        setCropParameter(_crop_config, 160, 0, 1120, 720);
     }
     else{
         setCropParameter(_crop_config, 0, 0, 640, 480);
-        (*_uq_pedestrian_perception)(frame, pedestrian_res, handLoc);
     }
+    return cv::Rect(0, 0, width, height);
+}
 
-    // Pedestrian PostProcess
-    std::vector<cv::Point> pedestrian_coord, other_coord;
-    std::vector<cv::Rect> pedestrian_bboxes, other_bboxes;
-    std::vector<int> box_offset;
-
-    cv::Mat mask;
-    cv::Mat seg_choose;
-
+void AlgoApplePerception::toFrameCoordinates(std::vector<bbox> &pedestrian_res){
     for (int bid = 0; bid < pedestrian_res.size(); bid++){
         int ptx1_resized = _crop_config.crop_x + (int)(pedestrian_res[bid].x1 * _crop_config.crop_w);
         int ptx2_resized = _crop_config.crop_x + (int)(pedestrian_res[bid].x2 * _crop_config.crop_w);
@@ -144,8 +168,6 @@ vector<bbox> AlgoApplePerception::PerceptionProcess(const cv::Mat &frame){
         pedestrian_res[bid].y1 = pty1_resized;
         pedestrian_res[bid].y2 = pty2_resized;
     }
-    return pedestrian_res;
-
 }
 
 
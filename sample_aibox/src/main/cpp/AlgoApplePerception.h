@@ -4,6 +4,7 @@
 // #include "AlgoBase.h"
 #include "./include/ApplePerception.h"
 #include <map>
+#include <memory>
 
 namespace ninebot_algo {
     namespace cnn_ninebot {
@@ -11,8 +12,27 @@ namespace ninebot_algo {
         public:
             AlgoApplePerception();
 
+            explicit AlgoApplePerception(const segmentor_config &config);
+
+            // the configuration of the apple model, loaded from /sdcard/apple_model.tflite
+            static segmentor_config defaultConfig();
+
+            // false if the model could not be loaded
+            bool isReady() const;
+
             std::vector<bbox> PerceptionProcess(const cv::Mat &frame);
 
+            // detect on the region crop of a frame, cropped holds its pixels; the boxes are in
+            // frame coordinates
+            std::vector<bbox> PerceptionProcess(const cv::Mat &cropped, const cv::Rect &crop);
+
+            // detect on a width x height NV12 frame, sampled straight into the network input
+            std::vector<bbox> PerceptionProcess(const uint8_t *nv12, size_t length, int width, int height);
+
+            // detect on NV12 frames of the same size in one batch; false if it cannot be run
+            bool PerceptionProcessBatch(const std::vector<const uint8_t *> &frames, size_t length, int width,
+                                        int height, std::vector<std::vector<bbox>> &results);
+
             bool step();    // run algorithm once
             // RawData *_main_rawdata;
 
@@ -94,6 +114,10 @@ namespace ninebot_algo {
             void interset(int &x1, int &y1, int &x2, int &y2, int w_input, int h_input);
             float frame_coverage(cv::Mat seg_roi, int x1, int y1, int x2, int y2);
             void setCropParameter(crop_config &_crop_config, int x, int y, int w, int h);
+            // map boxes relative to the crop to frame pixels
+            void toFrameCoordinates(std::vector<bbox> &pedestrian_res);
+            // set the crop the boxes are mapped with and return the region the network sees
+            cv::Rect selectCrop(int width, int height);
         };
     }
 }
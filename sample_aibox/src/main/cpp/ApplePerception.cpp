@@ -1,10 +1,12 @@
-#include <android/log.h>
-
 #include "./include/ApplePerception.h"
+#include "./include/PerceptionLog.h"
 
 //notice the order of these above two headers, it will influence the "_DOUBLE_SPHERES_DISTORTION_"
 
 #include <algorithm>
+#include <chrono>
+#include <cstring>
+#include <limits>
 #include <opencv2/imgproc.hpp>
 #include <opencv2/highgui.hpp>
 
@@ -14,7 +16,16 @@
 #include "tensorflow/lite/optional_debug_tools.h"
 
 //#include "tensorflow/lite/delegates/gpu/gl_delegate.h"
+// the GPU delegate is only shipped for Android, elsewhere the CPU backends remain
+#ifdef __ANDROID__
+#define HAS_GPU_DELEGATE
 #include "tensorflow/lite/delegates/gpu/delegate.h"
+#endif
+// the XNNPACK delegate is not part of the vendored TensorFlow Lite, define HAS_XNNPACK_DELEGATE
+// when building against one that has it; without it the xnnpack backend falls back to cpu
+#ifdef HAS_XNNPACK_DELEGATE
+#include "tensorflow/lite/delegates/xnnpack/xnnpack_delegate.h"
+#endif
 
 //#include "ninebot_log.h"
 #include <iostream>
@@ -23,8 +34,6 @@ using std::vector;
 using namespace ninebot_algo;
 
 
-#define _USE_TF_FLOAT_MODEL
-
 #define OVERLAP_FRONT_MASK
 
 //#define _USE_ARGMAX_FOR_SEGMENTATION
@@ -32,31 +41,117 @@ using namespace ninebot_algo;
 #define CALCULATE_COST_TIME_
 
 #define SP_LOG_TAG "sidewalk_perception_so_log"
-#define SP_LOG(...) __android_log_print(ANDROID_LOG_DEBUG, SP_LOG_TAG, __VA_ARGS__)
+#define SP_LOG(...) PERCEPTION_LOG(SP_LOG_TAG, __VA_ARGS__)
 
 namespace ninebot_algo{ namespace cnn_ninebot {
+	static yolo::DecoderConfig decoder_config(const segmentor_config &cfg){
+		yolo::DecoderConfig config;
+		config.gridWidth = cfg.grid_w;
+		config.gridHeight = cfg.grid_h;
+		config.numObject = cfg.num_object;
+		config.classes = cfg.classes;
+		config.inputWidth = cfg.input_w;
+		config.inputHeight = cfg.input_h;
+		config.anchors = cfg.anchors;
+		config.confThresh = cfg.conf_thresh;
+		return config;
+	}
+
+	static yolo::NmsConfig nms_config(const segmentor_config &cfg){
+		yolo::NmsConfig config;
+		config.classes = cfg.classes;
+		config.iouThresh = cfg.nms_thresh;
+		config.topK = cfg.nms_top_k;
+		config.soft = cfg.soft_nms;
+		config.softSigma = cfg.soft_nms_sigma;
+		config.softScoreThresh = cfg.soft_nms_score_thresh;
+		return config;
+	}
+
+	// false for element types the samplers and the decoder do not handle
+	static bool format_of(const TfLiteTensor *tensor, tensor_format &format){
+		switch (tensor->type){
+			case kTfLiteFloat32:
+				format.type = element_type::float32;
+				break;
+			case kTfLiteUInt8:
+				format.type = element_type::uint8;
+				break;
+			case kTfLiteInt8:
+				format.type = element_type::int8;
+				break;
+			default:
+				return false;
+		}
+		format.scale = format.type == element_type::float32 ? 1.f : tensor->params.scale;
+		format.zero_point = format.type == element_type::float32 ? 0 : tensor->params.zero_point;
+		return format.scale > 0;
+	}
+
+	static const char *element_name(element_type type){
+		switch (type){
+			case element_type::uint8:
+				return "uint8";
+			case element_type::int8:
+				return "int8";
+			default:
+				return "float32";
+		}
+	}
+
+	// order of the fallbacks: a backend that cannot be used is replaced by the next one
+	static const inference_backend backend_fallbacks[] = {
+		inference_backend::gpu, inference_backend::xnnpack, inference_backend::cpu
+	};
+
+	static const char *backend_name(inference_backend backend){
+		switch (backend){
+			case inference_backend::gpu:
+				return "gpu";
+			case inference_backend::xnnpack:
+				return "xnnpack";
+			case inference_backend::cpu:
+				return "cpu";
+			default:
+				return "fastest";
+		}
+	}
+
 	ApplePerception::ApplePerception(const segmentor_config &cfg)
+		: delegate_(nullptr, nullptr), cam_paras_(nullptr), decoder_(decoder_config(cfg)), nms_(nms_config(cfg)),
+		  active_backend_(inference_backend::cpu)
 	{
 		cfg_ = cfg;
-		model_ = tflite::FlatBufferModel::BuildFromFile(cfg_.frozen_net_path.c_str());
-		tflite::ops::builtin::BuiltinOpResolver resolver;
-		tflite::InterpreterBuilder builder(*model_.get(), resolver);
-		builder(&interpreter_);
-        if(cfg_.enable_multi_thread)
-            interpreter_->SetNumThreads(2);
-		interpreter_->AllocateTensors();
-
-        if(cfg_.enable_gpu_inference){
-            const TfLiteGpuDelegateOptionsV2 options = {
-                .is_precision_loss_allowed = 1,
-                .inference_preference = TFLITE_GPU_INFERENCE_PREFERENCE_FAST_SINGLE_ANSWER,
-            };
-            delegate_ = TfLiteGpuDelegateV2Create(&options);
-
-            if (interpreter_->ModifyGraphWithDelegate(delegate_) != kTfLiteOk) {
-              return;
-            }
-        }
+		candidates_.reserve(decoder_.maxCandidates());
+		if (cfg_.model_data != nullptr) {
+			// the caller keeps the mapped model alive for the lifetime of this object
+			model_ = tflite::FlatBufferModel::BuildFromBuffer(cfg_.model_data, cfg_.model_size);
+		} else {
+			model_ = tflite::FlatBufferModel::BuildFromFile(cfg_.frozen_net_path.c_str());
+		}
+		if (!model_) {
+			SP_LOG("cannot load the model %s", cfg_.model_data != nullptr ? "buffer" : cfg_.frozen_net_path.c_str());
+			return;
+		}
+		if (cfg_.backend == inference_backend::fastest) {
+			select_fastest_backend();
+		} else {
+			select_backend(cfg_.backend);
+		}
+		if (!interpreter_) {
+			SP_LOG("no backend can run the model");
+			return;
+		}
+		if (!format_of(interpreter_->tensor(interpreter_->inputs()[0]), input_format_)) {
+			SP_LOG("the model input type %d is not supported", interpreter_->tensor(interpreter_->inputs()[0])->type);
+			interpreter_.reset();
+			delegate_.reset();
+			return;
+		}
+		sampler_.setFormat(input_format_);
+		SP_LOG("running on the %s backend with %d threads, %s input (scale %g, zero point %d)",
+				backend_name(active_backend_), cfg_.num_threads, element_name(input_format_.type),
+				input_format_.scale, input_format_.zero_point);
 
 #if defined _FOV_DISTORTION_
         cam_paras_ = new float[5];
@@ -77,156 +172,207 @@ namespace ninebot_algo{ namespace cnn_ninebot {
 	}
 
     ApplePerception::~ApplePerception(){
-        delete cam_paras_;
-        if(cfg_.enable_gpu_inference){
-            //Clean up.
-            TfLiteGpuDelegateV2Delete(delegate_);
-        }
+        delete[] cam_paras_;
+        batch_interpreter_.reset();
+        batch_delegate_.reset();
+        // the interpreter still refers to the delegate, destroy it first
+        interpreter_.reset();
+        delegate_.reset();
     }
 
-    // pedestrian detection
-    void ApplePerception::operator() (const cv::Mat &src_img, std::vector<bbox> &pedestrian_boxes,
-        int handLoc){
+    bool ApplePerception::build_interpreter(inference_backend backend, int batch, int threads,
+            std::unique_ptr<tflite::Interpreter> &interpreter, DelegatePtr &delegate){
+        // declared before the interpreter, so a failed attempt destroys the interpreter first
+        DelegatePtr built_delegate(nullptr, nullptr);
+        std::unique_ptr<tflite::Interpreter> built;
+        tflite::ops::builtin::BuiltinOpResolver resolver;
+        tflite::InterpreterBuilder builder(*model_.get(), resolver);
+        builder(&built);
+        if (!built) {
+            return false;
+        }
+        if (threads > 0) {
+            built->SetNumThreads(threads);
+        }
+        if (batch > 0 && built->ResizeInputTensor(built->inputs()[0],
+                {batch, cfg_.input_height, cfg_.input_width, cfg_.input_depth}) != kTfLiteOk) {
+            return false;
+        }
 
-        std::lock_guard<std::mutex> guard(operator_mutex_);
-        return run_quantization(src_img, pedestrian_boxes, handLoc);
-    }
+        switch (backend) {
+            case inference_backend::gpu: {
+#ifdef HAS_GPU_DELEGATE
+                const TfLiteGpuDelegateOptionsV2 options = {
+                    .is_precision_loss_allowed = 1,
+                    .inference_preference = TFLITE_GPU_INFERENCE_PREFERENCE_FAST_SINGLE_ANSWER,
+                };
+                built_delegate = DelegatePtr(TfLiteGpuDelegateV2Create(&options), TfLiteGpuDelegateV2Delete);
+                break;
+#else
+                return false;
+#endif
+            }
+            case inference_backend::xnnpack: {
+#ifdef HAS_XNNPACK_DELEGATE
+                TfLiteXNNPackDelegateOptions options = TfLiteXNNPackDelegateOptionsDefault();
+                options.num_threads = threads;
+                built_delegate = DelegatePtr(TfLiteXNNPackDelegateCreate(&options), TfLiteXNNPackDelegateDelete);
+                break;
+#else
+                return false;
+#endif
+            }
+            default:
+                break;
+        }
 
-    float sigmoid(float x){
-        return (1 / (1 + exp(-x)));
+        if (built->AllocateTensors() != kTfLiteOk) {
+            return false;
+        }
+        if (built_delegate && built->ModifyGraphWithDelegate(built_delegate.get()) != kTfLiteOk) {
+            // the interpreter is left half delegated, it is thrown away with the delegate
+            return false;
+        }
+        interpreter.reset();
+        delegate = std::move(built_delegate);
+        interpreter = std::move(built);
+        return true;
     }
 
-    bool comp(const bbox &a, const bbox &b){
-        return a.score > b.score; 
+    void ApplePerception::select_backend(inference_backend requested){
+        bool reached = false;
+        for (inference_backend backend : backend_fallbacks) {
+            reached = reached || backend == requested;
+            if (!reached) {
+                continue;
+            }
+            if (build_interpreter(backend, 0, cfg_.num_threads, interpreter_, delegate_)) {
+                active_backend_ = backend;
+                return;
+            }
+            SP_LOG("the %s backend is not available", backend_name(backend));
+        }
     }
 
-    std::vector<bbox> nms(std::vector<bbox> boxes, int classes, float thresh)
-    {
-        std::vector<bbox> res;
-        for(int i = 0; i < classes; i++)
-        {
-            vector<bbox> res_one_cls;
-            for(int j = 0; j < boxes.size(); j++)
-            {
-                if(boxes[j].classId == i)
-                    res_one_cls.push_back(boxes[j]);
+    void ApplePerception::select_fastest_backend(){
+        double fastest = std::numeric_limits<double>::infinity();
+        for (inference_backend backend : backend_fallbacks) {
+            DelegatePtr delegate(nullptr, nullptr);
+            std::unique_ptr<tflite::Interpreter> interpreter;
+            if (!build_interpreter(backend, 0, cfg_.num_threads, interpreter, delegate)) {
+                SP_LOG("the %s backend is not available", backend_name(backend));
+                continue;
             }
-            sort(res_one_cls.begin(),res_one_cls.end(),comp);
-            for(int j = 0; j < res_one_cls.size(); j++)
-            {
-                float area = (res_one_cls[j].x2 - res_one_cls[j].x1 + 0.0001) 
-                                * (res_one_cls[j].y2 - res_one_cls[j].y1 + 0.0001);
-                for(int k = res_one_cls.size()-1; k > j; k--)
-                {
-                    float xx1 = max(res_one_cls[j].x1, res_one_cls[k].x1);
-                    float xx2 = min(res_one_cls[j].x2, res_one_cls[k].x2);
-                    float yy1 = max(res_one_cls[j].y1, res_one_cls[k].y1);
-                    float yy2 = min(res_one_cls[j].y2, res_one_cls[k].y2);
-                    float w = xx2 - xx1 + 0.0001;
-                    float h = yy2 - yy1 + 0.0001;
-                    if (w > 0 && h > 0)
-                    {
-                        float o = w * h / area;
-                        if (o > thresh)
-                        {
-                            res_one_cls.erase(res_one_cls.begin() + k);
-                        }
-                    }
-                }
+            double elapsed = time_invoke(*interpreter);
+            SP_LOG("the %s backend takes %.1f ms per inference", backend_name(backend), elapsed);
+            if (elapsed < fastest) {
+                fastest = elapsed;
+                interpreter_.reset();
+                delegate_ = std::move(delegate);
+                interpreter_ = std::move(interpreter);
+                active_backend_ = backend;
             }
-            res.insert(res.end(), res_one_cls.begin(), res_one_cls.end());
         }
-        return res;
     }
 
-    void ApplePerception::pedestrian_yolo_parse(const std::vector<TfLiteTensor*> outs, std::vector<bbox> &pedestrian_boxes){
-        std::vector<bbox> boxes;
-        for (int s = 0; s < outs.size(); ++s){
-            float* resdata = (float*)outs[s]->data.uint8;
-            int scale = pow(2, s); 
-            int outputwidth = cfg_.grid_w * scale;
-            int outputheight = cfg_.grid_h * scale;
-            int map_pixel_size = outputheight * outputwidth;
-            for (int i = 0; i < map_pixel_size; i++){
-                int j = i * (cfg_.num_object * (cfg_.classes + 5));
-                for (int k = 0; k < cfg_.num_object; k++){
-                    int obj = k * (cfg_.classes + 5);
-                    // conf
-                    float conf = sigmoid(resdata[j + obj + 4]);
-                    if(conf < cfg_.conf_thresh)
-                        continue;
-                    // class
-                    float cls_score;
-                    int max_class = 0;
-                    float class_conf = -10000.;
-                    for (int cls = 0; cls < cfg_.classes; cls ++){
-                        cls_score = sigmoid(resdata[j + obj + cls + 5]);
-                        if (cls_score > class_conf){
-                            class_conf = cls_score;
-                            max_class = cls;
-                        }
-                    }
-                    // bbox
-                    float bw = exp(resdata[j + obj + 2]);
-                    float bh = exp(resdata[j + obj + 3]);
-                    float width = bw * (cfg_.anchors[s * cfg_.num_object * 2 + k * 2] / cfg_.input_w); // anchor.x / input_w
-                    float height = bh * (cfg_.anchors[s * cfg_.num_object * 2 + k * 2 + 1] / cfg_.input_h); // anchor.y / input_h
-                    float offset_x = sigmoid(resdata[j + obj]);
-                    float offset_y = sigmoid(resdata[j + obj + 1]);
-                    bbox box;
-                    int y = i / outputwidth;
-                    int x = i % outputwidth;
-                    box.x1 = (x + offset_x) / outputwidth - width / 2;
-                    box.y1 = (y + offset_y) / outputheight - height / 2;
-                    box.x2 = (x + offset_x) / outputwidth + width / 2;
-                    box.y2 = (y + offset_y) / outputheight + height / 2;
-                    box.x1 = box.x1 > 0 ? box.x1 : 0;
-                    box.y1 = box.y1 > 0 ? box.y1 : 0;
-                    box.x2 = box.x2 < 1 ? box.x2 : 1;
-                    box.y2 = box.y2 < 1 ? box.y2 : 1;
-
-                    box.score = class_conf * conf;
-                    box.classId = max_class;
-                    boxes.push_back(box);
-                }
+    double ApplePerception::time_invoke(tflite::Interpreter &interpreter){
+        TfLiteTensor *input = interpreter.tensor(interpreter.inputs()[0]);
+        std::memset(input->data.raw, 0, input->bytes);
+        // the first run pays for kernel preparation and shader compilation
+        if (interpreter.Invoke() != kTfLiteOk) {
+            return std::numeric_limits<double>::infinity();
+        }
+        int runs = std::max(1, cfg_.benchmark_runs);
+        auto start = std::chrono::steady_clock::now();
+        for (int i = 0; i < runs; i++) {
+            if (interpreter.Invoke() != kTfLiteOk) {
+                return std::numeric_limits<double>::infinity();
             }
+        }
+        std::chrono::duration<double, std::milli> elapsed = std::chrono::steady_clock::now() - start;
+        return elapsed.count() / runs;
+    }
+
+    inference_backend ApplePerception::active_backend() const {
+        return active_backend_;
+    }
+
+    bool ApplePerception::is_ready() const {
+        return interpreter_ != nullptr;
+    }
+
+    // pedestrian detection
+    void ApplePerception::operator() (const cv::Mat &src_img, std::vector<bbox> &pedestrian_boxes){
 
+        std::lock_guard<std::mutex> guard(operator_mutex_);
+        return run_quantization(src_img, pedestrian_boxes);
+    }
+
+    void ApplePerception::operator() (const uint8_t *nv12, size_t length, int width, int height,
+        const cv::Rect &crop, std::vector<bbox> &pedestrian_boxes){
+
+        std::lock_guard<std::mutex> guard(operator_mutex_);
+        return run_nv12(nv12, length, width, height, crop, pedestrian_boxes);
+    }
+
+    void ApplePerception::pedestrian_yolo_parse(const std::vector<TfLiteTensor*> outs, std::vector<bbox> &pedestrian_boxes,
+            int frame){
+        // quantised outputs are handed over as they are, the decoder dequantises what it reads
+        const void *outputs[3];
+        tensor_format formats[3];
+        for (size_t s = 0; s < 3; ++s){
+            size_t length = decoder_.outputLength(s);
+            if (s >= outs.size() || !format_of(outs[s], formats[s])
+                    || outs[s]->bytes < (frame + 1) * length * formats[s].element_size()){
+                SP_LOG("output %zu does not match the configured grid", s);
+                pedestrian_boxes.clear();
+                return;
+            }
+            outputs[s] = outs[s]->data.raw + frame * length * formats[s].element_size();
         }
-        boxes = nms(boxes, cfg_.classes, cfg_.nms_thresh);
-        pedestrian_boxes.assign(boxes.begin(), boxes.end());
+        decoder_.decode(outputs, formats, candidates_);
+        nms_.run(candidates_, pedestrian_boxes);
     }
 
 
-    void ApplePerception::run_quantization(const cv::Mat &src_img, std::vector<bbox> &pedestrian_boxes,
-            int handLoc){
+    void ApplePerception::run_quantization(const cv::Mat &src_img, std::vector<bbox> &pedestrian_boxes){
 #ifdef CALCULATE_COST_TIME_
         auto start = std::chrono::high_resolution_clock::now();
 #endif
-        auto input_width = cfg_.input_width;
-        auto input_height = cfg_.input_height;
-        cv::Mat cropped_img, rotated_img, resized_img, normalized_img;
-        cropped_img = cv::Mat::zeros(src_img.rows, src_img.cols - handLoc, CV_8UC3);
-        src_img(cv::Rect(handLoc, 0.0, src_img.cols - handLoc, src_img.rows)).copyTo(cropped_img);
-        cv::resize(src_img, resized_img, cv::Size(input_width, input_height), 0, 0, cv::INTER_NEAREST);
-        resized_img.convertTo(normalized_img, CV_32F, 1.0 / 255, 0);
-
-#ifdef _USE_TF_FLOAT_MODEL
-        auto input = interpreter_->typed_input_tensor<float>(0);
-
-        float *input_data = (float*)normalized_img.data;
-        int input_idx = 0;
-        while(input_idx < input_height * input_width * 3){
-            input[input_idx] = *input_data;
-            input_idx ++;
-            input_data ++;
+        // resize and normalise or quantise straight into the input tensor, in its element type
+        if (src_img.type() != CV_8UC3 || !sampler_.bgrToTensor(src_img.data, src_img.step, src_img.cols,
+                src_img.rows, interpreter_->tensor(interpreter_->inputs()[0])->data.raw,
+                cfg_.input_width, cfg_.input_height)) {
+            SP_LOG("cannot sample a %dx%d image of type %d", src_img.cols, src_img.rows, src_img.type());
+            return;
         }
-#else
-        auto input_node_index = interpreter_->inputs()[0];
-        auto input = interpreter_->typed_tensor<std::uint8_t>(input_node_index);//float
-        memcpy(input, resized_img.data, resized_img.rows*resized_img.cols*3);
 
+#ifdef CALCULATE_COST_TIME_
+        auto end0 = std::chrono::high_resolution_clock::now();
+        std::chrono::duration<double, std::milli> elapsed0 = end0 - start;
 #endif
+        run_inference(pedestrian_boxes);
+    }
 
+    void ApplePerception::run_nv12(const uint8_t *nv12, size_t length, int width, int height,
+            const cv::Rect &crop, std::vector<bbox> &pedestrian_boxes){
+#ifdef CALCULATE_COST_TIME_
+        auto start = std::chrono::high_resolution_clock::now();
+#endif
+        // crop, colour conversion, resize and normalisation in one pass over the camera frame
+        if (!sampler_.nv12ToTensor(nv12, length, width, height, crop.x, crop.y, crop.width, crop.height,
+                interpreter_->tensor(interpreter_->inputs()[0])->data.raw, cfg_.input_width, cfg_.input_height)) {
+            SP_LOG("cannot sample a %dx%d frame of %zu bytes", width, height, length);
+            return;
+        }
+#ifdef CALCULATE_COST_TIME_
+        auto end0 = std::chrono::high_resolution_clock::now();
+        std::chrono::duration<double, std::milli> elapsed0 = end0 - start;
+#endif
+        run_inference(pedestrian_boxes);
+    }
+
+    void ApplePerception::run_inference(std::vector<bbox> &pedestrian_boxes){
 #ifdef CALCULATE_COST_TIME_
         auto end0 = std::chrono::high_resolution_clock::now();
 #endif
@@ -252,12 +398,77 @@ namespace ninebot_algo{ namespace cnn_ninebot {
 #ifdef CALCULATE_COST_TIME_
         auto end2 = std::chrono::high_resolution_clock::now();
 
-        std::chrono::duration<double, std::milli> elapsed0 = end0 - start;
         std::chrono::duration<double, std::milli> elapsed1 = end1 - end0;
         std::chrono::duration<double, std::milli> elapsed2 = end2 - end1;
 #endif
     }
    
+    bool ApplePerception::detect_batch(const std::vector<const uint8_t*> &frames, size_t length, int width,
+            int height, const cv::Rect &crop, std::vector<std::vector<bbox>> &pedestrian_boxes){
+        std::lock_guard<std::mutex> guard(operator_mutex_);
+        const int count = (int) frames.size();
+        if (count == 0 || !model_ || !prepare_batch(count)){
+            return false;
+        }
+        const size_t frame_size = (size_t) cfg_.input_width * cfg_.input_height * 3 * input_format_.element_size();
+        char *input = batch_interpreter_->tensor(batch_interpreter_->inputs()[0])->data.raw;
+
+        // every thread samples its share of the frames into their slice of the input
+        const int thread_count = std::max(1, std::min(count, cfg_.batch_threads));
+        std::vector<char> sampled(count, 0);
+        auto fill = [&](int first){
+            for (int i = first; i < count; i += thread_count){
+                sampled[i] = batch_samplers_[i].nv12ToTensor(frames[i], length, width, height, crop.x, crop.y,
+                        crop.width, crop.height, input + i * frame_size, cfg_.input_width, cfg_.input_height);
+            }
+        };
+        std::vector<std::thread> threads;
+        for (int t = 1; t < thread_count; t++){
+            threads.emplace_back(fill, t);
+        }
+        fill(0);
+        for (auto &thread : threads){
+            thread.join();
+        }
+        if (std::find(sampled.begin(), sampled.end(), 0) != sampled.end()){
+            SP_LOG("cannot sample a %dx%d frame of %zu bytes", width, height, length);
+            return false;
+        }
+
+        if (batch_interpreter_->Invoke() != kTfLiteOk){
+            return false;
+        }
+        std::vector<TfLiteTensor*> tensors;
+        for (int s = 0; s < 3; s++){
+            tensors.push_back(batch_interpreter_->tensor(batch_interpreter_->outputs()[s]));
+        }
+        pedestrian_boxes.resize(count);
+        for (int i = 0; i < count; i++){
+            pedestrian_yolo_parse(tensors, pedestrian_boxes[i], i);
+        }
+        return true;
+    }
+
+    bool ApplePerception::prepare_batch(int count){
+        if (batch_interpreter_ && batch_size_ == count){
+            return true;
+        }
+        // the GPU delegate is built for a single frame, batches run on the CPU backends
+        batch_interpreter_.reset();
+        batch_size_ = 0;
+        if (!build_interpreter(inference_backend::xnnpack, count, cfg_.batch_threads, batch_interpreter_, batch_delegate_)
+                && !build_interpreter(inference_backend::cpu, count, cfg_.batch_threads, batch_interpreter_, batch_delegate_)){
+            SP_LOG("cannot build an interpreter for a batch of %d", count);
+            return false;
+        }
+        batch_size_ = count;
+        batch_samplers_.resize(count);
+        for (auto &sampler : batch_samplers_){
+            sampler.setFormat(input_format_);
+        }
+        return true;
+    }
+
     segmentor_config ApplePerception::get_segmentor_config(){
         return cfg_;
     }
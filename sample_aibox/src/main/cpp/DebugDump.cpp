@@ -0,0 +1,76 @@
+#include "DebugDump.h"
+
+#include <android/log.h>
+#include <opencv2/imgcodecs.hpp>
+
+#define TAG "DebugDump"
+#define LOGD(...)  __android_log_print(ANDROID_LOG_DEBUG, TAG, __VA_ARGS__)
+#define LOGE(...)  __android_log_print(ANDROID_LOG_ERROR, TAG, __VA_ARGS__)
+
+DebugDump::DebugDump() {
+}
+
+DebugDump::~DebugDump() {
+    {
+        std::lock_guard<std::mutex> guard(_mutex);
+        _stopped = true;
+    }
+    _condition.notify_all();
+    if (_thread.joinable()) {
+        _thread.join();
+    }
+}
+
+void DebugDump::configure(const std::string &directory, int interval) {
+    std::lock_guard<std::mutex> guard(_mutex);
+    _directory = directory;
+    _interval = interval > 0 ? interval : 0;
+    _frameCount = 0;
+    if (_interval > 0 && !_thread.joinable()) {
+        _thread = std::thread(&DebugDump::run, this);
+    }
+}
+
+void DebugDump::onFrame(const cv::Mat &bgr) {
+    if (sample()) {
+        post(bgr);
+    }
+}
+
+bool DebugDump::sample() {
+    std::lock_guard<std::mutex> guard(_mutex);
+    return _interval != 0 && _frameCount++ % _interval == 0 && !_busy;
+}
+
+void DebugDump::post(const cv::Mat &bgr) {
+    std::lock_guard<std::mutex> guard(_mutex);
+    if (_busy) {
+        return;
+    }
+    bgr.copyTo(_pending);
+    _pendingIndex = _frameCount - 1;
+    _busy = true;
+    _condition.notify_all();
+}
+
+void DebugDump::run() {
+    while (true) {
+        std::string path;
+        {
+            std::unique_lock<std::mutex> lock(_mutex);
+            _condition.wait(lock, [this] { return _stopped || _busy; });
+            if (_stopped) {
+                return;
+            }
+            path = _directory + "/detect_" + std::to_string(_pendingIndex) + ".jpeg";
+        }
+        // post() leaves _pending alone until _busy is cleared, so it is read without the lock
+        if (!cv::imwrite(path, _pending)) {
+            LOGE("cannot write %s", path.c_str());
+        } else {
+            LOGD("wrote %s", path.c_str());
+        }
+        std::lock_guard<std::mutex> guard(_mutex);
+        _busy = false;
+    }
+}
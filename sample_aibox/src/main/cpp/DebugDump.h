@@ -0,0 +1,50 @@
+#ifndef DEBUGDUMP_H
+#define DEBUGDUMP_H
+
+#include <condition_variable>
+#include <mutex>
+#include <string>
+#include <thread>
+#include <opencv2/core.hpp>
+
+/**
+ * Opt-in dump of every n-th detection input as a JPEG, for checking what the network sees.
+ *
+ * The frame loop only copies the sampled frame; encoding and writing happen on a background
+ * thread. A frame sampled while the previous one is still being written is skipped.
+ */
+class DebugDump {
+public:
+    DebugDump();
+
+    ~DebugDump();
+
+    // dump every interval-th frame into directory, an interval of 0 disables the dump
+    void configure(const std::string &directory, int interval);
+
+    void onFrame(const cv::Mat &bgr);
+
+    // count a frame and return whether it is to be dumped, for callers that only convert the
+    // sampled frames; hand those to post()
+    bool sample();
+
+    void post(const cv::Mat &bgr);
+
+private:
+    void run();
+
+    std::mutex _mutex;
+    std::condition_variable _condition;
+    std::thread _thread;
+    std::string _directory;
+    int _interval = 0;
+    long _frameCount = 0;
+    // the sampled frame, reused for every dump
+    cv::Mat _pending;
+    long _pendingIndex = 0;
+    // set from post() until the frame is written
+    bool _busy = false;
+    bool _stopped = false;
+};
+
+#endif
@@ -0,0 +1,121 @@
+#include "Detector.h"
+
+#include <android/log.h>
+#include <chrono>
+
+#define TAG "Detector"
+#define LOGD(...)  __android_log_print(ANDROID_LOG_DEBUG, TAG, __VA_ARGS__)
+#define LOGE(...)  __android_log_print(ANDROID_LOG_ERROR, TAG, __VA_ARGS__)
+
+using namespace ninebot_algo;
+using namespace cnn_ninebot;
+
+Detector::Model::~Model() {
+    // the interpreter reads the mapped asset, free it first
+    algo.reset();
+    if (asset != nullptr) {
+        AAsset_close(asset);
+    }
+}
+
+Detector::Detector(const segmentor_config &config) : _config(config) {
+}
+
+Detector *Detector::create(const segmentor_config &config, AAsset *asset) {
+    std::shared_ptr<Model> model = load(config, asset);
+    if (!model) {
+        return nullptr;
+    }
+    Detector *detector = new Detector(config);
+    std::atomic_store(&detector->_model, model);
+    return detector;
+}
+
+std::shared_ptr<Detector::Model> Detector::load(segmentor_config config, AAsset *asset) {
+    auto start = std::chrono::steady_clock::now();
+    std::shared_ptr<Model> model = std::make_shared<Model>();
+    model->asset = asset;
+    if (asset != nullptr) {
+        config.model_data = (const char *) AAsset_getBuffer(asset);
+        config.model_size = (size_t) AAsset_getLength(asset);
+        if (config.model_data == nullptr) {
+            LOGE("cannot map the model asset");
+            return nullptr;
+        }
+    }
+    model->algo.reset(new AlgoApplePerception(config));
+    if (!model->algo->isReady()) {
+        LOGE("cannot load the model %s", asset != nullptr ? "asset" : config.frozen_net_path.c_str());
+        return nullptr;
+    }
+    std::chrono::duration<double, std::milli> elapsed = std::chrono::steady_clock::now() - start;
+    LOGD("loaded the model in %.1f ms", elapsed.count());
+    return model;
+}
+
+void Detector::runBlank(Model &model, int width, int height) {
+    auto start = std::chrono::steady_clock::now();
+    cv::Mat frame = cv::Mat::zeros(height, width, CV_8UC3);
+    model.algo->PerceptionProcess(frame);
+    std::chrono::duration<double, std::milli> elapsed = std::chrono::steady_clock::now() - start;
+    LOGD("warmed up on %dx%d in %.1f ms", width, height, elapsed.count());
+}
+
+bool Detector::detect(const cv::Mat &frame, std::vector<bbox> &boxes) {
+    std::shared_ptr<Model> model = std::atomic_load(&_model);
+    boxes = model->algo->PerceptionProcess(frame);
+    return true;
+}
+
+bool Detector::detect(const cv::Mat &cropped, const cv::Rect &crop, std::vector<bbox> &boxes) {
+    std::shared_ptr<Model> model = std::atomic_load(&_model);
+    boxes = model->algo->PerceptionProcess(cropped, crop);
+    return true;
+}
+
+bool Detector::detectNv12(const uint8_t *nv12, size_t length, int width, int height,
+                          std::vector<bbox> &boxes) {
+    std::shared_ptr<Model> model = std::atomic_load(&_model);
+    boxes = model->algo->PerceptionProcess(nv12, length, width, height);
+    return true;
+}
+
+bool Detector::detectBatch(const std::vector<const uint8_t *> &frames, size_t length, int width, int height,
+                           std::vector<std::vector<bbox>> &results) {
+    std::shared_ptr<Model> model = std::atomic_load(&_model);
+    auto start = std::chrono::steady_clock::now();
+    if (!model->algo->PerceptionProcessBatch(frames, length, width, height, results)) {
+        return false;
+    }
+    std::chrono::duration<double, std::milli> elapsed = std::chrono::steady_clock::now() - start;
+    LOGD("detected a batch of %zu in %.1f ms", frames.size(), elapsed.count());
+    return true;
+}
+
+bool Detector::warmUp(int width, int height) {
+    if (width <= 0 || height <= 0) {
+        return false;
+    }
+    std::lock_guard<std::mutex> guard(_reload_mutex);
+    std::shared_ptr<Model> model = std::atomic_load(&_model);
+    runBlank(*model, width, height);
+    _warm_up_width = width;
+    _warm_up_height = height;
+    return true;
+}
+
+bool Detector::reload(const std::string &modelPath) {
+    std::lock_guard<std::mutex> guard(_reload_mutex);
+    segmentor_config config = _config;
+    config.frozen_net_path = modelPath;
+    std::shared_ptr<Model> model = load(config, nullptr);
+    if (!model) {
+        return false;
+    }
+    if (_warm_up_width > 0) {
+        runBlank(*model, _warm_up_width, _warm_up_height);
+    }
+    std::atomic_store(&_model, model);
+    LOGD("swapped in %s", modelPath.c_str());
+    return true;
+}
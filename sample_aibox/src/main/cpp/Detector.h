@@ -0,0 +1,71 @@
+#ifndef DETECTOR_H
+#define DETECTOR_H
+
+#include <memory>
+#include <mutex>
+#include <android/asset_manager.h>
+#include "AlgoApplePerception.h"
+
+namespace ninebot_algo {
+    namespace cnn_ninebot {
+        /**
+         * The detector behind a VisionNative handle: a loaded model that can be warmed up and
+         * swapped for another model while detection keeps running.
+         *
+         * A reload builds and warms up the new model on the calling thread and then swaps it in
+         * atomically; detections in flight finish on the old model, which is freed by whichever
+         * thread drops the last reference to it. The GPU delegate prefers its OpenCL backend,
+         * which does not need the model to be used on the thread that created it.
+         */
+        class Detector {
+        public:
+            /**
+             * @param asset the mapped model, owned by the detector from now on; nullptr to load
+             * config.frozen_net_path
+             * @return nullptr if the model cannot be loaded
+             */
+            static Detector *create(const segmentor_config &config, AAsset *asset);
+
+            bool detect(const cv::Mat &frame, std::vector<bbox> &boxes);
+
+            // detect on the region crop of a frame, cropped holds its pixels
+            bool detect(const cv::Mat &cropped, const cv::Rect &crop, std::vector<bbox> &boxes);
+
+            // detect on a width x height NV12 frame of length bytes
+            bool detectNv12(const uint8_t *nv12, size_t length, int width, int height, std::vector<bbox> &boxes);
+
+            // detect on NV12 frames of the same size with one inference, results[i] for frames[i]
+            bool detectBatch(const std::vector<const uint8_t *> &frames, size_t length, int width, int height,
+                             std::vector<std::vector<bbox>> &results);
+
+            // run one inference on a blank frame, so the first real frame does not pay for the
+            // delegate initialisation
+            bool warmUp(int width, int height);
+
+            // load another model with the same configuration and swap it in once it is warm
+            bool reload(const std::string &modelPath);
+
+        private:
+            struct Model {
+                AAsset *asset = nullptr;
+                std::unique_ptr<AlgoApplePerception> algo;
+
+                ~Model();
+            };
+
+            explicit Detector(const segmentor_config &config);
+
+            static std::shared_ptr<Model> load(segmentor_config config, AAsset *asset);
+
+            static void runBlank(Model &model, int width, int height);
+
+            const segmentor_config _config;
+            // read and replaced with std::atomic_load/std::atomic_store only
+            std::shared_ptr<Model> _model;
+            std::mutex _reload_mutex;
+            int _warm_up_width = 0;
+            int _warm_up_height = 0;
+        };
+    }
+}
+#endif
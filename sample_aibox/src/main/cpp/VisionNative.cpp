@@ -1,7 +1,13 @@
 #include "VisionNative.h"
 #include <jni.h>
 #include <android/log.h>
+#include <android/bitmap.h>
+#include <algorithm>
+#include <android/asset_manager_jni.h>
 #include "AlgoApplePerception.h"
+#include "Detector.h"
+#include "DebugDump.h"
+#include "yuv/YuvConvert.h"
 
 using namespace ninebot_algo;
 using namespace cnn_ninebot;
@@ -26,6 +32,17 @@ com_segway_robot_sample_aibox_DetectedResult mDetectedResult;
 
 static JNINativeMethod methodTable[] = {
         {"nativeDetect", "(Ljava/nio/ByteBuffer;III)[Lcom/segway/robot/sample/aibox/DetectedResult;", (void *) jni_detect},
+        {"nativeDetectAt", "(Ljava/nio/ByteBuffer;IIII)[Lcom/segway/robot/sample/aibox/DetectedResult;", (void *) jni_detect_at},
+        {"nativeDetectInto", "(Ljava/nio/ByteBuffer;IIIILjava/nio/FloatBuffer;)I", (void *) jni_detect_into},
+        {"nativeDetectInto", "(JLjava/nio/ByteBuffer;IIIILjava/nio/FloatBuffer;)I", (void *) jni_detect_into_handle},
+        {"nativeDetectBatch", "(J[Ljava/nio/ByteBuffer;III[Ljava/nio/FloatBuffer;)I", (void *) jni_detect_batch},
+        {"nativeCreate", "(Ljava/lang/String;Z)J", (void *) jni_create},
+        {"nativeCreateFromAsset", "(Landroid/content/res/AssetManager;Ljava/lang/String;Z)J", (void *) jni_create_from_asset},
+        {"nativeWarmUp", "(JII)Z", (void *) jni_warm_up},
+        {"nativeReload", "(JLjava/lang/String;)Z", (void *) jni_reload},
+        {"nativeDestroy", "(J)V", (void *) jni_destroy},
+        {"nativeSetDebugDump", "(Ljava/lang/String;I)V", (void *) jni_set_debug_dump},
+        {"nativeYuvToBitmap", "(Ljava/nio/ByteBuffer;IIIILandroid/graphics/Bitmap;)Z", (void *) jni_yuv_to_bitmap},
 };
 
 JNIEXPORT jint JNICALL JNI_OnLoad(JavaVM *vm, void *reserved) {
@@ -54,44 +71,73 @@ void yuv2bgr(cv::Mat &frame, char *data, jint width, jint height) {
     cv::cvtColor(srcFrame, frame, CV_YUV2BGR_NV12);
 }
 
-void rgba2bgr(cv::Mat &frame, char *data, jint width, jint height) {
-    //cv::Mat srcFrame(cv::Size(width, height), CV_8UC4, data, cv::Mat::AUTO_STEP);
-    //cv::cvtColor(srcFrame, frame, CV_RGBA2BGR);
+void rgba2bgr(cv::Mat &frame, char *data, jint width, jint height, const cv::Rect &crop) {
+    // only the region the network sees is converted, it resizes the crop to its input itself
     cv::Mat srcFrame(cv::Size(width, height), CV_8UC4, data, cv::Mat::AUTO_STEP);
-    cv::Mat resizeFrame;
-    cv::cvtColor(srcFrame, resizeFrame, CV_RGBA2BGR);
-    cv::resize(resizeFrame, frame, cv::Size(1920, 1080));
-    cv::imwrite("/sdcard/apple1.jpeg", frame);
+    cv::cvtColor(srcFrame(crop), frame, CV_RGBA2BGR);
     LOGD("detect, frame.cols %d, frame.rows %d", frame.cols, frame.rows);
 }
 
-AlgoApplePerception *algoApplePerception = nullptr;
+/**
+ * @return the region of a still image the network sees: the middle 3/4 of the width, which is the
+ * 1440x1080 crop of a 1920x1080 frame scaled to any image size
+ */
+static cv::Rect stillImageCrop(jint width, jint height) {
+    int margin = width / 8;
+    return cv::Rect(margin, 0, width - 2 * margin, height);
+}
 
-JNIEXPORT jobjectArray JNICALL
-jni_detect(JNIEnv *env, jclass obj, jobject data, jint format, jint width, jint height) {
+static DebugDump debugDump;
+
+/**
+ * @return the detector of the calls without a handle, created on first use
+ */
+static Detector *defaultDetector() {
+    static Detector *detector = Detector::create(AlgoApplePerception::defaultConfig(), nullptr);
+    return detector;
+}
+
+static bool runDetection(Detector *detector, char *imageData, jint format, jint width, jint height,
+                         std::vector<bbox> &boxes) {
+    if (detector == nullptr) {
+        LOGE("detect: no model loaded");
+        return false;
+    }
     LOGD("width: %d, height: %d, format %d", width, height, format);
-    char *imageData = (char *) env->GetDirectBufferAddress(data);
     cv::Mat frame;
 
     switch (format) {
-        case RGBA8888:
-            rgba2bgr(frame, imageData, width, height);
+        case RGBA8888: {
+            cv::Rect crop = stillImageCrop(width, height);
+            rgba2bgr(frame, imageData, width, height, crop);
             LOGD("detect image");
+            debugDump.onFrame(frame);
+            detector->detect(frame, crop, boxes);
             break;
+        }
         case YUV420:
-            yuv2bgr(frame, imageData, width, height);
             LOGD("detect video");
+            if (debugDump.sample()) {
+                yuv2bgr(frame, imageData, width, height);
+                debugDump.post(frame);
+            }
+            //调用算法, the network input is sampled straight from the NV12 frame
+            detector->detectNv12((const uint8_t *) imageData, (size_t) width * height * 3 / 2, width, height,
+                                 boxes);
             break;
         default:
-            return nullptr;
+            return false;
     }
 
-    //调用算法
-    if (algoApplePerception == nullptr) {
-        algoApplePerception = new AlgoApplePerception();
+    LOGD("appleDetectResult size is %d", boxes.size());
+    return true;
+}
+
+static jobjectArray detect(JNIEnv *env, char *imageData, jint format, jint width, jint height) {
+    std::vector<bbox> appleDetectResult;
+    if (!runDetection(defaultDetector(), imageData, format, width, height, appleDetectResult)) {
+        return nullptr;
     }
-    std::vector<bbox> appleDetectResult = algoApplePerception->PerceptionProcess(frame);
-    LOGD("appleDetectResult size is %d", appleDetectResult.size());
 
     jobjectArray objArray = env->NewObjectArray(appleDetectResult.size(), mDetectedResult.clazz, nullptr);
 
@@ -101,9 +147,238 @@ jni_detect(JNIEnv *env, jclass obj, jobject data, jint format, jint width, jint
                                                        mDetectedResult.DetectedResult_id, box.classId, box.x1, box.y1,
                                                        box.x2, box.y2, box.score);
         env->SetObjectArrayElement(objArray, i, detectedResultObj);
+        env->DeleteLocalRef(detectedResultObj);
 
         LOGD("appleDetectResult box.classId %d, x1 %f, x2 %f, y1 %f, y2 %f,score %f", box.classId, box.x1, box.y1, box.x2, box.y2, box.score);
     }
     return objArray;
 
-}
\ No newline at end of file
+}
+
+/**
+ * @return the address of a frame starting offset bytes into a direct buffer, or nullptr if the
+ * buffer is not direct or the frame does not fit into it
+ */
+static char *frameAt(JNIEnv *env, jobject data, jint offset, jint format, jint width, jint height) {
+    char *imageData = (char *) env->GetDirectBufferAddress(data);
+    jlong capacity = env->GetDirectBufferCapacity(data);
+    if (imageData == nullptr || capacity < 0) {
+        LOGE("detect: the frame is not a direct buffer");
+        return nullptr;
+    }
+    jlong length;
+    switch (format) {
+        case RGBA8888:
+            length = (jlong) width * height * 4;
+            break;
+        case YUV420:
+            length = (jlong) width * height * 3 / 2;
+            break;
+        default:
+            LOGE("detect: unsupported format %d", format);
+            return nullptr;
+    }
+    if (width <= 0 || height <= 0 || offset < 0 || offset > capacity - length) {
+        LOGE("detect: %dx%d frame at %d does not fit into %lld bytes", width, height, offset,
+             (long long) capacity);
+        return nullptr;
+    }
+    return imageData + offset;
+}
+
+JNIEXPORT jobjectArray JNICALL
+jni_detect(JNIEnv *env, jclass obj, jobject data, jint format, jint width, jint height) {
+    char *imageData = (char *) env->GetDirectBufferAddress(data);
+    if (imageData == nullptr) {
+        LOGE("detect: the frame is not a direct buffer");
+        return nullptr;
+    }
+    return detect(env, imageData, format, width, height);
+}
+
+JNIEXPORT jobjectArray JNICALL
+jni_detect_at(JNIEnv *env, jclass obj, jobject data, jint offset, jint format, jint width, jint height) {
+    // the buffer may be the service's shared memory, it is only read and never kept
+    char *imageData = frameAt(env, data, offset, format, width, height);
+    return imageData == nullptr ? nullptr : detect(env, imageData, format, width, height);
+}
+
+/**
+ * Write boxes into a results buffer of capacity floats: the count, then classId, x1, y1, x2, y2
+ * and score per box.
+ */
+static jint writeResults(const std::vector<bbox> &boxes, float *out, jlong capacity) {
+    size_t count = std::min(boxes.size(), (size_t) ((capacity - 1) / 6));
+    if (count < boxes.size()) {
+        LOGE("detect into: room for %zu of %zu boxes", count, boxes.size());
+    }
+    out[0] = (float) count;
+    float *box = out + 1;
+    for (size_t i = 0; i < count; i++, box += 6) {
+        box[0] = (float) boxes[i].classId;
+        box[1] = boxes[i].x1;
+        box[2] = boxes[i].y1;
+        box[3] = boxes[i].x2;
+        box[4] = boxes[i].y2;
+        box[5] = boxes[i].score;
+    }
+    return (jint) count;
+}
+
+static jint detectInto(JNIEnv *env, Detector *detector, jobject data, jint offset, jint format, jint width,
+                      jint height, jobject results) {
+    float *out = (float *) env->GetDirectBufferAddress(results);
+    jlong capacity = env->GetDirectBufferCapacity(results);
+    if (out == nullptr || capacity < 1) {
+        LOGE("detect into: the results are not a direct float buffer");
+        return -1;
+    }
+    char *imageData = frameAt(env, data, offset, format, width, height);
+    std::vector<bbox> boxes;
+    if (imageData == nullptr || !runDetection(detector, imageData, format, width, height, boxes)) {
+        out[0] = 0;
+        return -1;
+    }
+    return writeResults(boxes, out, capacity);
+}
+
+JNIEXPORT jint JNICALL
+jni_detect_into(JNIEnv *env, jclass obj, jobject data, jint offset, jint format, jint width, jint height,
+                jobject results) {
+    return detectInto(env, defaultDetector(), data, offset, format, width, height, results);
+}
+
+JNIEXPORT jint JNICALL
+jni_detect_into_handle(JNIEnv *env, jclass obj, jlong handle, jobject data, jint offset, jint format, jint width,
+                       jint height, jobject results) {
+    return detectInto(env, (Detector *) handle, data, offset, format, width, height, results);
+}
+
+JNIEXPORT jint JNICALL
+jni_detect_batch(JNIEnv *env, jclass obj, jlong handle, jobjectArray frames, jint format, jint width, jint height,
+                 jobjectArray results) {
+    jsize count = frames != nullptr ? env->GetArrayLength(frames) : 0;
+    if (count == 0 || results == nullptr || env->GetArrayLength(results) < count) {
+        LOGE("detect batch: %d frames and too few results", count);
+        return -1;
+    }
+    if (format != YUV420) {
+        LOGE("detect batch: unsupported format %d", format);
+        return -1;
+    }
+    std::vector<const uint8_t *> frameData(count);
+    std::vector<float *> out(count);
+    std::vector<jlong> capacities(count);
+    for (jsize i = 0; i < count; i++) {
+        jobject frame = env->GetObjectArrayElement(frames, i);
+        jobject result = env->GetObjectArrayElement(results, i);
+        frameData[i] = frame != nullptr ? (const uint8_t *) frameAt(env, frame, 0, format, width, height) : nullptr;
+        out[i] = result != nullptr ? (float *) env->GetDirectBufferAddress(result) : nullptr;
+        capacities[i] = result != nullptr ? env->GetDirectBufferCapacity(result) : 0;
+        env->DeleteLocalRef(frame);
+        env->DeleteLocalRef(result);
+        if (frameData[i] == nullptr || out[i] == nullptr || capacities[i] < 1) {
+            LOGE("detect batch: frame or results %d are invalid", i);
+            return -1;
+        }
+    }
+    std::vector<std::vector<bbox>> boxes;
+    if (!((Detector *) handle)->detectBatch(frameData, (size_t) width * height * 3 / 2, width, height, boxes)) {
+        return -1;
+    }
+    for (jsize i = 0; i < count; i++) {
+        writeResults(boxes[i], out[i], capacities[i]);
+    }
+    return count;
+}
+
+static segmentor_config configFor(jboolean gpu) {
+    segmentor_config config = AlgoApplePerception::defaultConfig();
+    // without the GPU take the fastest CPU backend available
+    config.backend = gpu == JNI_TRUE ? inference_backend::gpu : inference_backend::xnnpack;
+    return config;
+}
+
+JNIEXPORT jlong JNICALL
+jni_create(JNIEnv *env, jclass obj, jstring modelPath, jboolean gpu) {
+    segmentor_config config = configFor(gpu);
+    const char *path = env->GetStringUTFChars(modelPath, nullptr);
+    config.frozen_net_path = path;
+    env->ReleaseStringUTFChars(modelPath, path);
+    return (jlong) Detector::create(config, nullptr);
+}
+
+JNIEXPORT jlong JNICALL
+jni_create_from_asset(JNIEnv *env, jclass obj, jobject assetManager, jstring assetName, jboolean gpu) {
+    AAssetManager *manager = AAssetManager_fromJava(env, assetManager);
+    const char *name = env->GetStringUTFChars(assetName, nullptr);
+    // models are stored uncompressed, so the buffer is an mmap of the APK
+    AAsset *asset = manager != nullptr ? AAssetManager_open(manager, name, AASSET_MODE_BUFFER) : nullptr;
+    if (asset == nullptr) {
+        LOGE("create: cannot open the asset %s", name);
+    }
+    env->ReleaseStringUTFChars(assetName, name);
+    return asset == nullptr ? 0 : (jlong) Detector::create(configFor(gpu), asset);
+}
+
+JNIEXPORT jboolean JNICALL
+jni_warm_up(JNIEnv *env, jclass obj, jlong handle, jint width, jint height) {
+    return ((Detector *) handle)->warmUp(width, height) ? JNI_TRUE : JNI_FALSE;
+}
+
+JNIEXPORT jboolean JNICALL
+jni_reload(JNIEnv *env, jclass obj, jlong handle, jstring modelPath) {
+    const char *path = env->GetStringUTFChars(modelPath, nullptr);
+    std::string pathString(path);
+    env->ReleaseStringUTFChars(modelPath, path);
+    return ((Detector *) handle)->reload(pathString) ? JNI_TRUE : JNI_FALSE;
+}
+
+JNIEXPORT void JNICALL
+jni_destroy(JNIEnv *env, jclass obj, jlong handle) {
+    delete (Detector *) handle;
+}
+
+JNIEXPORT void JNICALL
+jni_set_debug_dump(JNIEnv *env, jclass obj, jstring directory, jint interval) {
+    const char *path = directory != nullptr ? env->GetStringUTFChars(directory, nullptr) : nullptr;
+    debugDump.configure(path != nullptr ? path : "", path != nullptr ? interval : 0);
+    if (path != nullptr) {
+        env->ReleaseStringUTFChars(directory, path);
+    }
+}
+
+JNIEXPORT jboolean JNICALL
+jni_yuv_to_bitmap(JNIEnv *env, jclass obj, jobject data, jint format, jint width, jint height, jint scale,
+                  jobject bitmap) {
+    uint8_t *yuvData = (uint8_t *) env->GetDirectBufferAddress(data);
+    jlong capacity = env->GetDirectBufferCapacity(data);
+    if (yuvData == nullptr || capacity < 0) {
+        LOGE("yuv to bitmap: the frame is not a direct buffer");
+        return JNI_FALSE;
+    }
+    if (scale <= 0) {
+        LOGE("yuv to bitmap: invalid scale %d", scale);
+        return JNI_FALSE;
+    }
+    AndroidBitmapInfo info;
+    if (AndroidBitmap_getInfo(env, bitmap, &info) != ANDROID_BITMAP_RESULT_SUCCESS
+        || info.format != ANDROID_BITMAP_FORMAT_RGBA_8888
+        || (jint) info.width != width / scale || (jint) info.height != height / scale) {
+        LOGE("yuv to bitmap: the bitmap is not a %dx%d ARGB_8888 bitmap", width / scale, height / scale);
+        return JNI_FALSE;
+    }
+    void *pixels = nullptr;
+    if (AndroidBitmap_lockPixels(env, bitmap, &pixels) != ANDROID_BITMAP_RESULT_SUCCESS) {
+        LOGE("yuv to bitmap: cannot lock the bitmap pixels");
+        return JNI_FALSE;
+    }
+    bool converted = yuv::toRgba(yuvData, (size_t) capacity, format, width, height,
+                                 (uint8_t *) pixels, (int) info.stride, scale);
+    AndroidBitmap_unlockPixels(env, bitmap);
+    if (!converted) {
+        LOGE("yuv to bitmap: cannot convert format %d, %dx%d from %lld bytes", format, width, height,
+             (long long) capacity);
+    }
+    return converted ? JNI_TRUE : JNI_FALSE;
+}
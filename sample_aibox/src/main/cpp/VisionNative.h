@@ -9,8 +9,19 @@
 #include "./include/ApplePerception.h"
 #include <list>
 
-void rgba2bgr(cv::Mat &frame, char *data, jint width, jint height);
+void rgba2bgr(cv::Mat &frame, char *data, jint width, jint height, const cv::Rect &crop);
 void yuv2bgr(cv::Mat &frame, char *data, jint width, jint height);
 JNIEXPORT jobjectArray JNICALL jni_detect(JNIEnv *env, jclass obj, jobject data, jint format, jint width, jint height);
+JNIEXPORT jobjectArray JNICALL jni_detect_at(JNIEnv *env, jclass obj, jobject data, jint offset, jint format, jint width, jint height);
+JNIEXPORT jint JNICALL jni_detect_into(JNIEnv *env, jclass obj, jobject data, jint offset, jint format, jint width, jint height, jobject results);
+JNIEXPORT jint JNICALL jni_detect_into_handle(JNIEnv *env, jclass obj, jlong handle, jobject data, jint offset, jint format, jint width, jint height, jobject results);
+JNIEXPORT jint JNICALL jni_detect_batch(JNIEnv *env, jclass obj, jlong handle, jobjectArray frames, jint format, jint width, jint height, jobjectArray results);
+JNIEXPORT jlong JNICALL jni_create(JNIEnv *env, jclass obj, jstring modelPath, jboolean gpu);
+JNIEXPORT jlong JNICALL jni_create_from_asset(JNIEnv *env, jclass obj, jobject assetManager, jstring assetName, jboolean gpu);
+JNIEXPORT jboolean JNICALL jni_warm_up(JNIEnv *env, jclass obj, jlong handle, jint width, jint height);
+JNIEXPORT jboolean JNICALL jni_reload(JNIEnv *env, jclass obj, jlong handle, jstring modelPath);
+JNIEXPORT void JNICALL jni_destroy(JNIEnv *env, jclass obj, jlong handle);
+JNIEXPORT void JNICALL jni_set_debug_dump(JNIEnv *env, jclass obj, jstring directory, jint interval);
+JNIEXPORT jboolean JNICALL jni_yuv_to_bitmap(JNIEnv *env, jclass obj, jobject data, jint format, jint width, jint height, jint scale, jobject bitmap);
 
 #endif //VISIONSERVICE_VISIONNATIVE_H
@@ -7,6 +7,12 @@
 #include <opencv2/opencv.hpp>
 #include <unordered_map>
 
+#include "BoundingBox.h"
+#include "TensorFormat.h"
+#include "yolo/NonMaxSuppression.h"
+#include "yolo/YoloDecoder.h"
+#include "yuv/TensorSampler.h"
+
 #define _FOV_DISTORTION_
 
 namespace tflite {
@@ -15,22 +21,19 @@ namespace tflite {
 }
 
 namespace ninebot_algo { namespace cnn_ninebot {
-	struct bbox
-	{
-		int classId;
-		float x1;
-		float y1;
-		float x2;
-		float y2;
-		float score;
+	enum class inference_backend {
+		gpu,        // TensorFlow Lite GPU delegate, Android only
+		xnnpack,    // XNNPACK delegate, when built with HAS_XNNPACK_DELEGATE
+		cpu,        // the builtin CPU kernels
+		fastest     // time every available backend at startup and keep the fastest
 	};
+
 	struct segmentor_config {
 		int input_width = 512;
 		int input_height = 512;
         int input_depth = 3;
 		int num_classes = 3;
 		std::string frozen_net_path;
-        bool enable_multi_thread = false;
 
 #if defined _FOV_DISTORTION_
 		float fx = 467.3418184973979 * 512 / 1280; //184.0;
@@ -64,7 +67,13 @@ namespace ninebot_algo { namespace cnn_ninebot {
 		std::vector<int> front_mask_border_pts_large_fov_2000{0, 233, 94953, 95001, 167193, 167145, 261865, 261632};
 		std::vector<int> front_mask_border_pts_post_process_large_fov_2000{0, 236, 93420, 93468, 168732, 168684, 261868, 261632};//large fov 2021-03-28
 		
-		bool enable_gpu_inference = true;
+		// backend to run on; one that cannot be used falls back to the next of gpu, xnnpack, cpu
+		inference_backend backend = inference_backend::gpu;
+		// threads of the CPU backends; 0 keeps the TensorFlow Lite default, single threaded like
+		// the old enable_multi_thread = false
+		int num_threads = 0;
+		// timed inferences per backend when picking the fastest one
+		int benchmark_runs = 3;
 		float mean_b = 127.9489;
 		float mean_g = 125.3112;
 		float mean_r = 125.6642;
@@ -77,6 +86,11 @@ namespace ninebot_algo { namespace cnn_ninebot {
 
 		int robot_base_type = 2000;
 
+		// model mapped in memory, e.g. an uncompressed asset, used instead of frozen_net_path
+		// when set; it has to outlive the perception
+		const char *model_data = nullptr;
+		size_t model_size = 0;
+
 		uchar background_label = 0;
 		uchar road_label = 128;
 		uchar sidewalk_label = 255;
@@ -95,26 +109,77 @@ namespace ninebot_algo { namespace cnn_ninebot {
         float conf_thresh = 0.45;
         float class_thresh = 0.5;
         float nms_thresh = 0.3;
+        // best boxes per class entering the NMS, 0 for all
+        int nms_top_k = 0;
+        // decay the scores of overlapping boxes instead of dropping them
+        bool soft_nms = false;
+        float soft_nms_sigma = 0.5;
+        float soft_nms_score_thresh = 0.05;
+        // threads filling and running a batch of ApplePerception::detect_batch
+        int batch_threads = 4;
 
 	};
 	class ApplePerception {
 	public:
 		ApplePerception(const segmentor_config &cfg);
 		~ApplePerception();
-		void operator() (const cv::Mat &src_img, std::vector<bbox> &pedestrian_boxes, int handLoc);
+		void operator() (const cv::Mat &src_img, std::vector<bbox> &pedestrian_boxes);
+		// detect on the crop of a width x height NV12 frame, without converting the whole frame
+		void operator() (const uint8_t *nv12, size_t length, int width, int height, const cv::Rect &crop,
+				std::vector<bbox> &pedestrian_boxes);
 
         segmentor_config get_segmentor_config();
+
+		// detect on a batch of NV12 frames of the same size with one Invoke of a CPU interpreter
+		// sized for the batch; false if the batch cannot be run
+		bool detect_batch(const std::vector<const uint8_t*> &frames, size_t length, int width, int height,
+				const cv::Rect &crop, std::vector<std::vector<bbox>> &pedestrian_boxes);
+
+		// false if the model could not be loaded
+		bool is_ready() const;
+
+		// the backend the model runs on, after any fallback
+		inference_backend active_backend() const;
 	private:
+		using DelegatePtr = std::unique_ptr<TfLiteDelegate, void (*)(TfLiteDelegate *)>;
+
 		std::unique_ptr<tflite::Interpreter> interpreter_;
 		std::unique_ptr<tflite::FlatBufferModel> model_;
-		TfLiteDelegate* delegate_;
+		DelegatePtr delegate_;
 		segmentor_config cfg_;
 		float* cam_paras_;
 		mutable std::mutex operator_mutex_;
+		yuv::TensorSampler sampler_;
+		// element type and quantisation of the model input, read from the interpreter
+		tensor_format input_format_;
+		yolo::YoloDecoder decoder_;
+		// decoded boxes before the NMS, kept to reuse their storage
+		std::vector<bbox> candidates_;
+		yolo::NonMaxSuppression nms_;
+		// interpreter of detect_batch, resized to batch_size_ frames on demand
+		std::unique_ptr<tflite::Interpreter> batch_interpreter_;
+		DelegatePtr batch_delegate_ = DelegatePtr(nullptr, nullptr);
+		int batch_size_ = 0;
+		std::vector<yuv::TensorSampler> batch_samplers_;
 
 		bool is_large_fov_;
-		void pedestrian_yolo_parse(const std::vector<TfLiteTensor*> outs, std::vector<bbox> &pedestrian_boxes);
-		void run_quantization(const cv::Mat &src_img, std::vector<bbox> &pedestrian_boxes, int handLoc);
+		// decode frame of batched outputs
+		void pedestrian_yolo_parse(const std::vector<TfLiteTensor*> outs, std::vector<bbox> &pedestrian_boxes,
+				int frame = 0);
+		bool prepare_batch(int count);
+		inference_backend active_backend_;
+		// build an interpreter on backend, for batch frames if batch > 0; interpreter and
+		// delegate are only replaced on success
+		bool build_interpreter(inference_backend backend, int batch, int threads,
+				std::unique_ptr<tflite::Interpreter> &interpreter, DelegatePtr &delegate);
+		void select_backend(inference_backend requested);
+		void select_fastest_backend();
+		// average milliseconds of an inference on a blank input
+		double time_invoke(tflite::Interpreter &interpreter);
+		void run_quantization(const cv::Mat &src_img, std::vector<bbox> &pedestrian_boxes);
+		void run_nv12(const uint8_t *nv12, size_t length, int width, int height, const cv::Rect &crop,
+				std::vector<bbox> &pedestrian_boxes);
+		void run_inference(std::vector<bbox> &pedestrian_boxes);
     	bool large_fov_decider();
 	};
 } }
@@ -0,0 +1,16 @@
+#ifndef BOUNDINGBOX_H
+#define BOUNDINGBOX_H
+
+namespace ninebot_algo { namespace cnn_ninebot {
+	// a detection, relative to the network input (0..1) until it is mapped to frame pixels
+	struct bbox
+	{
+		int classId;
+		float x1;
+		float y1;
+		float x2;
+		float y2;
+		float score;
+	};
+} }
+#endif
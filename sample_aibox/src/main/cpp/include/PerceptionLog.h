@@ -0,0 +1,15 @@
+#ifndef PERCEPTIONLOG_H
+#define PERCEPTIONLOG_H
+
+// Logging of the perception code: logcat on Android, stderr elsewhere, so the CPU inference paths
+// also build and run on a Linux host.
+#ifdef __ANDROID__
+#include <android/log.h>
+#define PERCEPTION_LOG(tag, ...) __android_log_print(ANDROID_LOG_DEBUG, tag, __VA_ARGS__)
+#else
+#include <cstdio>
+#define PERCEPTION_LOG(tag, ...) \
+    (std::fprintf(stderr, "%s: ", tag), std::fprintf(stderr, __VA_ARGS__), std::fputc('\n', stderr))
+#endif
+
+#endif
@@ -0,0 +1,22 @@
+#ifndef TENSORFORMAT_H
+#define TENSORFORMAT_H
+
+#include <cstddef>
+
+namespace ninebot_algo { namespace cnn_ninebot {
+	enum class element_type { float32, uint8, int8 };
+
+	// element type of a network input or output; the integer types are affine quantised,
+	// real = (q - zero_point) * scale
+	struct tensor_format
+	{
+		element_type type = element_type::float32;
+		float scale = 1.f;
+		int zero_point = 0;
+
+		size_t element_size() const {
+			return type == element_type::float32 ? sizeof(float) : 1;
+		}
+	};
+} }
+#endif
@@ -0,0 +1,146 @@
+#include "NonMaxSuppression.h"
+
+#include <algorithm>
+#include <cmath>
+
+namespace yolo {
+
+static inline float areaOf(const bbox &box) {
+    return std::max(box.x2 - box.x1, 0.f) * std::max(box.y2 - box.y1, 0.f);
+}
+
+NonMaxSuppression::NonMaxSuppression(const NmsConfig &config) : _config(config) {
+}
+
+float NonMaxSuppression::iou(const bbox &a, float areaA, const bbox &b, float areaB) {
+    float width = std::min(a.x2, b.x2) - std::max(a.x1, b.x1);
+    float height = std::min(a.y2, b.y2) - std::max(a.y1, b.y1);
+    if (width <= 0 || height <= 0) {
+        return 0;
+    }
+    float intersection = width * height;
+    float unionArea = areaA + areaB - intersection;
+    return unionArea > 0 ? intersection / unionArea : 0;
+}
+
+void NonMaxSuppression::run(const std::vector<bbox> &candidates, std::vector<bbox> &kept) {
+    kept.clear();
+    const int count = (int) candidates.size();
+    _order.resize(count);
+    for (int i = 0; i < count; i++) {
+        _order[i] = i;
+    }
+    std::sort(_order.begin(), _order.end(), [&candidates](int a, int b) {
+        if (candidates[a].classId != candidates[b].classId) {
+            return candidates[a].classId < candidates[b].classId;
+        }
+        return candidates[a].score > candidates[b].score;
+    });
+    // coordinates in sorted order, so the overlap loops read contiguous memory
+    _x1.resize(count);
+    _y1.resize(count);
+    _x2.resize(count);
+    _y2.resize(count);
+    _areas.resize(count);
+    for (int i = 0; i < count; i++) {
+        const bbox &box = candidates[_order[i]];
+        _x1[i] = box.x1;
+        _y1[i] = box.y1;
+        _x2[i] = box.x2;
+        _y2[i] = box.y2;
+        _areas[i] = areaOf(box);
+    }
+    _suppressed.assign(count, 0);
+
+    for (int begin = 0; begin < count;) {
+        int classId = candidates[_order[begin]].classId;
+        int end = begin + 1;
+        while (end < count && candidates[_order[end]].classId == classId) {
+            end++;
+        }
+        if (classId >= 0 && classId < _config.classes) {
+            int last = _config.topK > 0 ? std::min(end, begin + _config.topK) : end;
+            if (_config.soft) {
+                softDecay(candidates, begin, last, kept);
+            } else {
+                hard(candidates, begin, last, kept);
+            }
+        }
+        begin = end;
+    }
+}
+
+void NonMaxSuppression::hard(const std::vector<bbox> &candidates, int begin, int end,
+                             std::vector<bbox> &kept) {
+    const float *x1 = _x1.data();
+    const float *y1 = _y1.data();
+    const float *x2 = _x2.data();
+    const float *y2 = _y2.data();
+    const float *areas = _areas.data();
+    uint8_t *suppressed = _suppressed.data();
+    const float thresh = _config.iouThresh;
+    for (int i = begin; i < end; i++) {
+        if (suppressed[i]) {
+            continue;
+        }
+        kept.push_back(candidates[_order[i]]);
+        const float bx1 = x1[i];
+        const float by1 = y1[i];
+        const float bx2 = x2[i];
+        const float by2 = y2[i];
+        const float area = areas[i];
+        // branch-free so it vectorises; IoU > thresh is tested as intersection > thresh * union
+        for (int j = i + 1; j < end; j++) {
+            float width = std::max(std::min(bx2, x2[j]) - std::max(bx1, x1[j]), 0.f);
+            float height = std::max(std::min(by2, y2[j]) - std::max(by1, y1[j]), 0.f);
+            float intersection = width * height;
+            float unionArea = area + areas[j] - intersection;
+            suppressed[j] |= (uint8_t) ((intersection > thresh * unionArea) & (intersection > 0));
+        }
+    }
+}
+
+void NonMaxSuppression::softDecay(const std::vector<bbox> &candidates, int begin, int end,
+                                  std::vector<bbox> &kept) {
+    // positions begin..active hold the boxes still in play, their scores decay as boxes are kept
+    int *order = _order.data();
+    _scores.resize(end);
+    float *scores = _scores.data();
+    for (int i = begin; i < end; i++) {
+        scores[i] = candidates[order[i]].score;
+    }
+    const float sigma = _config.softSigma;
+    const float scoreThresh = _config.softScoreThresh;
+    int active = end;
+    while (active > begin) {
+        int best = begin;
+        for (int i = begin + 1; i < active; i++) {
+            if (scores[i] > scores[best]) {
+                best = i;
+            }
+        }
+        // move the best box out of the active range
+        active--;
+        std::swap(order[best], order[active]);
+        std::swap(scores[best], scores[active]);
+        const bbox &box = candidates[order[active]];
+        float boxArea = areaOf(box);
+        kept.push_back(box);
+        kept.back().score = scores[active];
+
+        for (int i = begin; i < active;) {
+            const bbox &other = candidates[order[i]];
+            float overlap = iou(box, boxArea, other, areaOf(other));
+            scores[i] *= std::exp(-overlap * overlap / sigma);
+            if (scores[i] < scoreThresh) {
+                active--;
+                std::swap(order[i], order[active]);
+                std::swap(scores[i], scores[active]);
+            } else {
+                i++;
+            }
+        }
+    }
+}
+
+} // namespace yolo
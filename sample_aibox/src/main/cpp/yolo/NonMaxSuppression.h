@@ -0,0 +1,68 @@
+//
+// Per-class non-maximum suppression of decoded candidates, shared by ApplePerception and the host
+// tests.
+//
+
+#ifndef VISIONSERVICE_NONMAXSUPPRESSION_H
+#define VISIONSERVICE_NONMAXSUPPRESSION_H
+
+#include <cstdint>
+#include <vector>
+
+#include "include/BoundingBox.h"
+
+namespace yolo {
+
+using ninebot_algo::cnn_ninebot::bbox;
+
+struct NmsConfig {
+    int classes = 1;
+    // boxes overlapping a kept box of their class by more than this IoU are suppressed
+    float iouThresh = 0.3f;
+    // only the topK best scored boxes of every class are considered, 0 for all of them
+    int topK = 0;
+    // Soft-NMS: instead of dropping overlapping boxes decay their score by
+    // exp(-IoU^2 / softSigma) and drop them once it falls below softScoreThresh
+    bool soft = false;
+    float softSigma = 0.5f;
+    float softScoreThresh = 0.05f;
+};
+
+// One sort orders all candidates by class and descending score, and their coordinates are copied
+// into contiguous arrays in that order. Hard NMS then walks every class once: each kept box marks
+// the boxes it overlaps in a suppression mask in a branch-free loop, instead of erasing them from
+// a vector.
+class NonMaxSuppression {
+public:
+    explicit NonMaxSuppression(const NmsConfig &config);
+
+    // Replace the contents of kept with the surviving candidates: class by class, best score
+    // first. With Soft-NMS the scores are the decayed ones.
+    void run(const std::vector<bbox> &candidates, std::vector<bbox> &kept);
+
+    // intersection over union, 0 for boxes without area
+    static float iou(const bbox &a, float areaA, const bbox &b, float areaB);
+
+private:
+    void hard(const std::vector<bbox> &candidates, int begin, int end, std::vector<bbox> &kept);
+
+    void softDecay(const std::vector<bbox> &candidates, int begin, int end, std::vector<bbox> &kept);
+
+    NmsConfig _config;
+    // candidate indices ordered by class and descending score
+    std::vector<int> _order;
+    // coordinates and area of the candidates, by position of _order
+    std::vector<float> _x1;
+    std::vector<float> _y1;
+    std::vector<float> _x2;
+    std::vector<float> _y2;
+    std::vector<float> _areas;
+    // one flag per position of _order, bytes rather than bits so the marking loop vectorises
+    std::vector<uint8_t> _suppressed;
+    // decayed scores of the boxes of the current class for Soft-NMS, by position of _order
+    std::vector<float> _scores;
+};
+
+} // namespace yolo
+
+#endif //VISIONSERVICE_NONMAXSUPPRESSION_H
@@ -0,0 +1,130 @@
+#include "YoloDecoder.h"
+
+#include <algorithm>
+#include <cmath>
+#include <limits>
+
+namespace yolo {
+
+using ninebot_algo::cnn_ninebot::element_type;
+
+static inline float sigmoid(float x) {
+    return 1 / (1 + std::exp(-x));
+}
+
+YoloDecoder::YoloDecoder(const DecoderConfig &config)
+        : _config(config), _stride(config.classes + 5) {
+    float thresh = config.confThresh;
+    if (thresh <= 0) {
+        _logitThresh = -std::numeric_limits<float>::infinity();
+    } else if (thresh >= 1) {
+        _logitThresh = std::numeric_limits<float>::infinity();
+    } else {
+        _logitThresh = std::log(thresh / (1 - thresh));
+    }
+    int anchors = 0;
+    for (int scale = 0; scale < config.scaleCount; scale++) {
+        anchors = std::max(anchors, outputLength(scale) / _stride);
+    }
+    _hits.resize(anchors);
+}
+
+int YoloDecoder::outputLength(int scale) const {
+    return (_config.gridWidth << scale) * (_config.gridHeight << scale) * _config.numObject * _stride;
+}
+
+int YoloDecoder::maxCandidates() const {
+    int anchors = 0;
+    for (int scale = 0; scale < _config.scaleCount; scale++) {
+        anchors += outputLength(scale) / _stride;
+    }
+    return anchors;
+}
+
+void YoloDecoder::decode(const float *const *outputs, std::vector<bbox> &candidates) {
+    candidates.clear();
+    const tensor_format format;
+    for (int scale = 0; scale < _config.scaleCount; scale++) {
+        decodeScale(outputs[scale], scale, format, candidates);
+    }
+}
+
+void YoloDecoder::decode(const void *const *outputs, const tensor_format *formats,
+                         std::vector<bbox> &candidates) {
+    candidates.clear();
+    for (int scale = 0; scale < _config.scaleCount; scale++) {
+        switch (formats[scale].type) {
+            case element_type::uint8:
+                decodeScale((const uint8_t *) outputs[scale], scale, formats[scale], candidates);
+                break;
+            case element_type::int8:
+                decodeScale((const int8_t *) outputs[scale], scale, formats[scale], candidates);
+                break;
+            default:
+                decodeScale((const float *) outputs[scale], scale, formats[scale], candidates);
+                break;
+        }
+    }
+}
+
+template <typename T>
+void YoloDecoder::decodeScale(const T *data, int scale, const tensor_format &format,
+                              std::vector<bbox> &candidates) {
+    const int stride = _stride;
+    const int anchorCount = outputLength(scale) / stride;
+    // (q - zero_point) * scale >= logit  <=>  q >= logit / scale + zero_point, for a positive scale
+    const float quantScale = format.scale;
+    const int zeroPoint = format.zero_point;
+    const float thresh = _logitThresh / quantScale + zeroPoint;
+    int *hits = _hits.data();
+
+    // branch-free compaction of the anchors whose objectness passes, most of them do not
+    const T *objectness = data + 4;
+    int hitCount = 0;
+    for (int anchor = 0; anchor < anchorCount; anchor++) {
+        hits[hitCount] = anchor;
+        hitCount += objectness[anchor * stride] >= thresh;
+    }
+
+    const int outputWidth = _config.gridWidth << scale;
+    const int outputHeight = _config.gridHeight << scale;
+    const int numObject = _config.numObject;
+    const int classes = _config.classes;
+    const float *anchors = _config.anchors.data() + scale * numObject * 2;
+    for (int h = 0; h < hitCount; h++) {
+        int anchor = hits[h];
+        const T *values = data + anchor * stride;
+        int cell = anchor / numObject;
+        int k = anchor - cell * numObject;
+
+        // the class sigmoid is monotonic as well, only the best class needs one
+        int maxClass = 0;
+        T maxLogit = values[5];
+        for (int cls = 1; cls < classes; cls++) {
+            if (values[5 + cls] > maxLogit) {
+                maxLogit = values[5 + cls];
+                maxClass = cls;
+            }
+        }
+
+        float tx = (values[0] - zeroPoint) * quantScale;
+        float ty = (values[1] - zeroPoint) * quantScale;
+        float tw = (values[2] - zeroPoint) * quantScale;
+        float th = (values[3] - zeroPoint) * quantScale;
+        float width = std::exp(tw) * (anchors[k * 2] / _config.inputWidth);
+        float height = std::exp(th) * (anchors[k * 2 + 1] / _config.inputHeight);
+        float centerX = (cell % outputWidth + sigmoid(tx)) / outputWidth;
+        float centerY = (cell / outputWidth + sigmoid(ty)) / outputHeight;
+
+        bbox box;
+        box.x1 = std::max(centerX - width / 2, 0.f);
+        box.y1 = std::max(centerY - height / 2, 0.f);
+        box.x2 = std::min(centerX + width / 2, 1.f);
+        box.y2 = std::min(centerY + height / 2, 1.f);
+        box.score = sigmoid((maxLogit - zeroPoint) * quantScale) * sigmoid((values[4] - zeroPoint) * quantScale);
+        box.classId = maxClass;
+        candidates.push_back(box);
+    }
+}
+
+} // namespace yolo
@@ -0,0 +1,77 @@
+//
+// Decoding of the YOLOv3 output tensors into candidate boxes, shared by ApplePerception and the
+// host tests.
+//
+
+#ifndef VISIONSERVICE_YOLODECODER_H
+#define VISIONSERVICE_YOLODECODER_H
+
+#include <cstdint>
+#include <vector>
+
+#include "include/BoundingBox.h"
+#include "include/TensorFormat.h"
+
+namespace yolo {
+
+using ninebot_algo::cnn_ninebot::bbox;
+using ninebot_algo::cnn_ninebot::tensor_format;
+
+struct DecoderConfig {
+    // cells of the coarsest output, every further output doubles both
+    int gridWidth = 16;
+    int gridHeight = 16;
+    int scaleCount = 3;
+    // anchors per cell and classes per anchor; an anchor is tx, ty, tw, th, objectness, classes
+    int numObject = 3;
+    int classes = 1;
+    // network input size the anchors are given in
+    int inputWidth = 512;
+    int inputHeight = 512;
+    // width and height of every anchor, scale by scale
+    std::vector<float> anchors;
+    float confThresh = 0.45f;
+};
+
+// Turns the raw outputs into boxes relative to the input, scored objectness * class confidence.
+//
+// The objectness sigmoid is monotonic, so instead of computing sigmoid(logit) >= conf_thresh for
+// every anchor the raw logits are compared against logit(conf_thresh). A first branch-free pass
+// over each output collects the anchors above it into an index buffer, sized for the worst case
+// up front; only those anchors pay for the exp() calls of the box and score.
+//
+// Quantised outputs are read as they are: the threshold is moved into the quantised domain of
+// each output, so the compaction pass compares the raw integers, and only the values of the
+// anchors above it are dequantised.
+class YoloDecoder {
+public:
+    explicit YoloDecoder(const DecoderConfig &config);
+
+    // number of floats output scale holds
+    int outputLength(int scale) const;
+
+    // the most candidates a decode can produce, for reserving the candidate buffer
+    int maxCandidates() const;
+
+    // Decode outputs[0..scaleCount) into candidates, replacing their contents. The capacity of
+    // candidates is kept, so passing the same vector every frame does not allocate either.
+    void decode(const float *const *outputs, std::vector<bbox> &candidates);
+
+    // The same for outputs whose elements are stored as formats[0..scaleCount) describe.
+    void decode(const void *const *outputs, const tensor_format *formats, std::vector<bbox> &candidates);
+
+private:
+    template <typename T>
+    void decodeScale(const T *data, int scale, const tensor_format &format, std::vector<bbox> &candidates);
+
+    DecoderConfig _config;
+    int _stride;
+    // objectness logit of conf_thresh
+    float _logitThresh;
+    // anchors of the current output above the threshold
+    std::vector<int> _hits;
+};
+
+} // namespace yolo
+
+#endif //VISIONSERVICE_YOLODECODER_H
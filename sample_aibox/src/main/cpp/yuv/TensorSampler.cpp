@@ -0,0 +1,172 @@
+#include "TensorSampler.h"
+
+#include <algorithm>
+#include <cmath>
+
+namespace yuv {
+
+using ninebot_algo::cnn_ninebot::element_type;
+
+// The fixed-point BT.601 coefficients of OpenCV's YUV420sp to RGB conversion, in Q20.
+static const int kShift = 20;
+static const int kRound = 1 << (kShift - 1);
+static const int kY = 1220542;
+static const int kUB = 2116026;
+static const int kUG = -409993;
+static const int kVG = -852492;
+static const int kVR = 1673527;
+
+static inline int saturate(int value) {
+    return value < 0 ? 0 : (value > 255 ? 255 : value);
+}
+
+// Source index of dst in a nearest neighbour resize, computed like cv::resize(INTER_NEAREST).
+static inline int nearestSource(int dst, int srcSize, int dstSize) {
+    double inverseScale = 1. / ((double) dstSize / srcSize);
+    return std::min((int) std::floor(dst * inverseScale), srcSize - 1);
+}
+
+TensorSampler::TensorSampler() : _columnsCropX(-1), _columnsCropWidth(0) {
+    setNormalization(1.f / 255, 0.f);
+}
+
+void TensorSampler::setNormalization(float scale, float offset) {
+    for (int channel = 0; channel < 3; channel++) {
+        for (int value = 0; value < 256; value++) {
+            _table[channel][value] = value * scale + offset;
+        }
+    }
+    quantizeTable();
+}
+
+void TensorSampler::setMeanStd(const float mean[3], const float deviation[3]) {
+    for (int channel = 0; channel < 3; channel++) {
+        float scale = 1.f / (255 * deviation[channel]);
+        float offset = -mean[channel] / deviation[channel];
+        for (int value = 0; value < 256; value++) {
+            _table[channel][value] = value * scale + offset;
+        }
+    }
+    quantizeTable();
+}
+
+void TensorSampler::setFormat(const tensor_format &format) {
+    _format = format;
+    quantizeTable();
+}
+
+const tensor_format &TensorSampler::format() const {
+    return _format;
+}
+
+void TensorSampler::quantizeTable() {
+    if (_format.type == element_type::float32) {
+        return;
+    }
+    const int low = _format.type == element_type::int8 ? -128 : 0;
+    const int high = low + 255;
+    for (int channel = 0; channel < 3; channel++) {
+        for (int value = 0; value < 256; value++) {
+            int q = (int) std::lround(_table[channel][value] / _format.scale) + _format.zero_point;
+            _quantized[channel][value] = (uint8_t) std::min(high, std::max(low, q));
+        }
+    }
+}
+
+void TensorSampler::prepareColumns(int cropX, int cropWidth, int dstWidth) {
+    if ((int) _columns.size() == dstWidth && _columnsCropX == cropX && _columnsCropWidth == cropWidth) {
+        return;
+    }
+    _columns.resize(dstWidth);
+    for (int x = 0; x < dstWidth; x++) {
+        _columns[x] = cropX + nearestSource(x, cropWidth, dstWidth);
+    }
+    _columnsCropX = cropX;
+    _columnsCropWidth = cropWidth;
+}
+
+bool TensorSampler::nv12ToTensor(const uint8_t *src, size_t srcLength, int width, int height,
+                                 int cropX, int cropY, int cropWidth, int cropHeight,
+                                 void *dst, int dstWidth, int dstHeight) {
+    if (src == nullptr || dst == nullptr || width <= 0 || height <= 0
+            || (width & 1) != 0 || (height & 1) != 0
+            || srcLength < (size_t) width * height * 3 / 2
+            || cropX < 0 || cropY < 0 || cropWidth <= 0 || cropHeight <= 0
+            || cropX + cropWidth > width || cropY + cropHeight > height
+            || dstWidth <= 0 || dstHeight <= 0) {
+        return false;
+    }
+    prepareColumns(cropX, cropWidth, dstWidth);
+    const uint8_t *chroma = src + (size_t) width * height;
+    if (_format.type == element_type::float32) {
+        sampleNv12(src, chroma, width, cropY, cropHeight, _table, (float *) dst, dstWidth, dstHeight);
+    } else {
+        sampleNv12(src, chroma, width, cropY, cropHeight, _quantized, (uint8_t *) dst, dstWidth, dstHeight);
+    }
+    return true;
+}
+
+bool TensorSampler::bgrToTensor(const uint8_t *src, size_t stride, int width, int height,
+                                void *dst, int dstWidth, int dstHeight) {
+    if (src == nullptr || dst == nullptr || width <= 0 || height <= 0 || stride < (size_t) width * 3
+            || dstWidth <= 0 || dstHeight <= 0) {
+        return false;
+    }
+    prepareColumns(0, width, dstWidth);
+    if (_format.type == element_type::float32) {
+        sampleBgr(src, stride, height, _table, (float *) dst, dstWidth, dstHeight);
+    } else {
+        sampleBgr(src, stride, height, _quantized, (uint8_t *) dst, dstWidth, dstHeight);
+    }
+    return true;
+}
+
+template <typename T>
+void TensorSampler::sampleNv12(const uint8_t *src, const uint8_t *chroma, int width, int cropY, int cropHeight,
+                               const T (*table)[256], T *dst, int dstWidth, int dstHeight) {
+    const int *columns = _columns.data();
+    const T *blue = table[0];
+    const T *green = table[1];
+    const T *red = table[2];
+
+    for (int row = 0; row < dstHeight; row++) {
+        int sourceRow = cropY + nearestSource(row, cropHeight, dstHeight);
+        const uint8_t *yRow = src + (size_t) sourceRow * width;
+        const uint8_t *uvRow = chroma + (size_t) (sourceRow >> 1) * width;
+        T *out = dst + (size_t) row * dstWidth * 3;
+        for (int x = 0; x < dstWidth; x++) {
+            int column = columns[x];
+            const uint8_t *uv = uvRow + (column & ~1);
+            int u = uv[0] - 128;
+            int v = uv[1] - 128;
+            int y = std::max(0, yRow[column] - 16) * kY + kRound;
+            out[0] = blue[saturate((y + kUB * u) >> kShift)];
+            out[1] = green[saturate((y + kVG * v + kUG * u) >> kShift)];
+            out[2] = red[saturate((y + kVR * v) >> kShift)];
+            out += 3;
+        }
+    }
+}
+
+template <typename T>
+void TensorSampler::sampleBgr(const uint8_t *src, size_t stride, int height,
+                              const T (*table)[256], T *dst, int dstWidth, int dstHeight) {
+    const int *columns = _columns.data();
+    const T *blue = table[0];
+    const T *green = table[1];
+    const T *red = table[2];
+
+    for (int row = 0; row < dstHeight; row++) {
+        const uint8_t *sourceRow = src + (size_t) nearestSource(row, height, dstHeight) * stride;
+        T *out = dst + (size_t) row * dstWidth * 3;
+        for (int x = 0; x < dstWidth; x++) {
+            const uint8_t *pixel = sourceRow + columns[x] * 3;
+            out[0] = blue[pixel[0]];
+            out[1] = green[pixel[1]];
+            out[2] = red[pixel[2]];
+            out += 3;
+        }
+    }
+}
+
+} // namespace yuv
@@ -0,0 +1,79 @@
+//
+// Fused NV12 to network input conversion: crop, nearest neighbour resize, BT.601 to BGR and
+// normalisation in a single pass, writing straight into a float or quantised input tensor.
+//
+
+#ifndef VISIONSERVICE_TENSORSAMPLER_H
+#define VISIONSERVICE_TENSORSAMPLER_H
+
+#include <cstddef>
+#include <cstdint>
+#include <vector>
+
+#include "include/TensorFormat.h"
+
+namespace yuv {
+
+using ninebot_algo::cnn_ninebot::tensor_format;
+
+// Produces the same values as the OpenCV chain
+//   cvtColor(COLOR_YUV2BGR_NV12) -> roi(crop) -> resize(INTER_NEAREST) -> convertTo(CV_32F, scale, offset)
+// without any intermediate image: every output pixel reads one luma and one chroma pair of the
+// source, through column and normalisation tables rebuilt only when the geometry changes.
+//
+// For a quantised tensor the normalised values are quantised once per table entry, so writing
+// uint8 or int8 elements costs the same lookups as floats and moves a quarter of the bytes.
+class TensorSampler {
+public:
+    TensorSampler();
+
+    // Normalise every channel value v to v * scale + offset, the default is v / 255.
+    void setNormalization(float scale, float offset);
+
+    // Per channel normalisation (v / 255 - mean) / deviation, in B, G, R order.
+    void setMeanStd(const float mean[3], const float deviation[3]);
+
+    // Element type of the tensor written, the default is float32. Integer elements hold the
+    // normalised value v as round(v / scale) + zero_point, saturated.
+    void setFormat(const tensor_format &format);
+
+    const tensor_format &format() const;
+
+    // Write the crop of a width x height NV12 frame, resized to dstWidth x dstHeight, as
+    // interleaved B, G, R elements of the format to dst, which holds dstWidth * dstHeight * 3
+    // of them. Returns false if the frame is too short or the crop does not lie within the frame.
+    bool nv12ToTensor(const uint8_t *src, size_t srcLength, int width, int height,
+                      int cropX, int cropY, int cropWidth, int cropHeight,
+                      void *dst, int dstWidth, int dstHeight);
+
+    // The same for a width x height 8 bit BGR image whose rows are stride bytes apart, like
+    // resize(INTER_NEAREST) -> convertTo(CV_32F, scale, offset) on it.
+    bool bgrToTensor(const uint8_t *src, size_t stride, int width, int height,
+                     void *dst, int dstWidth, int dstHeight);
+
+private:
+    void prepareColumns(int cropX, int cropWidth, int dstWidth);
+    void quantizeTable();
+
+    template <typename T>
+    void sampleNv12(const uint8_t *src, const uint8_t *chroma, int width, int cropY, int cropHeight,
+                    const T (*table)[256], T *dst, int dstWidth, int dstHeight);
+
+    template <typename T>
+    void sampleBgr(const uint8_t *src, size_t stride, int height,
+                   const T (*table)[256], T *dst, int dstWidth, int dstHeight);
+
+    // value of every 8 bit channel value, per B, G, R channel
+    float _table[3][256];
+    // the same values quantised to the format, the bytes of int8 elements stored as uint8
+    uint8_t _quantized[3][256];
+    tensor_format _format;
+    // luma column of every output column
+    std::vector<int> _columns;
+    int _columnsCropX;
+    int _columnsCropWidth;
+};
+
+} // namespace yuv
+
+#endif //VISIONSERVICE_TENSORSAMPLER_H
@@ -0,0 +1,236 @@
+#include "YuvConvert.h"
+
+#if defined(__ARM_NEON) || defined(__ARM_NEON__)
+#include <arm_neon.h>
+#define YUV_HAS_NEON 1
+#endif
+
+namespace yuv {
+
+// BT.601 limited range coefficients in Q13, small enough for 16 bit lanes.
+static const int kShift = 13;
+static const int kRound = 1 << (kShift - 1);
+static const int kY = 9535;      // 1.164
+static const int kRV = 13074;    // 1.596
+static const int kGU = -3203;    // -0.391
+static const int kGV = -6660;    // -0.813
+static const int kBU = 16532;    // 2.018
+
+static inline int yv12ChromaStride(int width) {
+    return ((width >> 1) + 15) & ~15;
+}
+
+static inline uint8_t clamp255(int value) {
+    return (uint8_t) (value < 0 ? 0 : (value > 255 ? 255 : value));
+}
+
+static inline void storePixel(uint8_t *dst, int y, int rv, int guv, int bu) {
+    dst[0] = clamp255((y + rv + kRound) >> kShift);
+    dst[1] = clamp255((y + guv + kRound) >> kShift);
+    dst[2] = clamp255((y + bu + kRound) >> kShift);
+    dst[3] = 0xff;
+}
+
+static inline int lumaTerm(uint8_t y) {
+    return kY * (y < 16 ? 0 : y - 16);
+}
+
+size_t frameLength(int format, int width, int height) {
+    if (width <= 0 || height <= 0) {
+        return 0;
+    }
+    switch (format) {
+        case FORMAT_NV12:
+        case FORMAT_NV21:
+            return (size_t) width * height * 3 / 2;
+        case FORMAT_YV12:
+            return (size_t) width * height + 2 * (size_t) yv12ChromaStride(width) * (height / 2);
+        default:
+            return 0;
+    }
+}
+
+void planesToRgbaScalar(const uint8_t *y, int yStride, const uint8_t *u, const uint8_t *v,
+                        int uvStride, int uvStep, uint8_t *dst, int dstStride, int width, int height) {
+    for (int row = 0; row < height; row += 2) {
+        const uint8_t *y0 = y + row * yStride;
+        const uint8_t *y1 = y0 + yStride;
+        const uint8_t *uRow = u + (row >> 1) * uvStride;
+        const uint8_t *vRow = v + (row >> 1) * uvStride;
+        uint8_t *d0 = dst + row * dstStride;
+        uint8_t *d1 = d0 + dstStride;
+        for (int x = 0; x < width; x += 2) {
+            int uValue = uRow[(x >> 1) * uvStep] - 128;
+            int vValue = vRow[(x >> 1) * uvStep] - 128;
+            int rv = kRV * vValue;
+            int guv = kGU * uValue + kGV * vValue;
+            int bu = kBU * uValue;
+            storePixel(d0 + x * 4, lumaTerm(y0[x]), rv, guv, bu);
+            storePixel(d0 + x * 4 + 4, lumaTerm(y0[x + 1]), rv, guv, bu);
+            storePixel(d1 + x * 4, lumaTerm(y1[x]), rv, guv, bu);
+            storePixel(d1 + x * 4 + 4, lumaTerm(y1[x + 1]), rv, guv, bu);
+        }
+    }
+}
+
+void planesToRgbaScaled(const uint8_t *y, int yStride, const uint8_t *u, const uint8_t *v,
+                        int uvStride, int uvStep, uint8_t *dst, int dstStride, int width, int height,
+                        int scale) {
+    const int outWidth = width / scale;
+    const int outHeight = height / scale;
+    for (int row = 0; row < outHeight; row++) {
+        int sourceRow = row * scale;
+        const uint8_t *yRow = y + sourceRow * yStride;
+        const uint8_t *uRow = u + (sourceRow >> 1) * uvStride;
+        const uint8_t *vRow = v + (sourceRow >> 1) * uvStride;
+        uint8_t *d = dst + row * dstStride;
+        for (int x = 0, sourceX = 0; x < outWidth; x++, sourceX += scale) {
+            int chroma = (sourceX >> 1) * uvStep;
+            int uValue = uRow[chroma] - 128;
+            int vValue = vRow[chroma] - 128;
+            storePixel(d + x * 4, lumaTerm(yRow[sourceX]), kRV * vValue, kGU * uValue + kGV * vValue,
+                       kBU * uValue);
+        }
+    }
+}
+
+#ifdef YUV_HAS_NEON
+
+// Narrow four Q13 sums of 4 lanes each to 16 saturated bytes.
+static inline uint8x16_t narrow(const int32x4_t sum[4]) {
+    uint8x8_t low = vqmovn_u16(vcombine_u16(vqrshrun_n_s32(sum[0], kShift), vqrshrun_n_s32(sum[1], kShift)));
+    uint8x8_t high = vqmovn_u16(vcombine_u16(vqrshrun_n_s32(sum[2], kShift), vqrshrun_n_s32(sum[3], kShift)));
+    return vcombine_u8(low, high);
+}
+
+// Convert 16 pixels of one row, sharing the duplicated chroma terms with the other row.
+static inline void rowToRgba16(const uint8_t *y, const int32x4_t rv[4], const int32x4_t guv[4],
+                               const int32x4_t bu[4], uint8_t *dst) {
+    uint8x16_t luma = vqsubq_u8(vld1q_u8(y), vdupq_n_u8(16));
+    int16x8_t low = vreinterpretq_s16_u16(vmovl_u8(vget_low_u8(luma)));
+    int16x8_t high = vreinterpretq_s16_u16(vmovl_u8(vget_high_u8(luma)));
+    int32x4_t yTerm[4] = {
+            vmull_n_s16(vget_low_s16(low), kY), vmull_n_s16(vget_high_s16(low), kY),
+            vmull_n_s16(vget_low_s16(high), kY), vmull_n_s16(vget_high_s16(high), kY),
+    };
+    int32x4_t sum[4];
+    uint8x16x4_t rgba;
+    for (int i = 0; i < 4; i++) {
+        sum[i] = vaddq_s32(yTerm[i], rv[i]);
+    }
+    rgba.val[0] = narrow(sum);
+    for (int i = 0; i < 4; i++) {
+        sum[i] = vaddq_s32(yTerm[i], guv[i]);
+    }
+    rgba.val[1] = narrow(sum);
+    for (int i = 0; i < 4; i++) {
+        sum[i] = vaddq_s32(yTerm[i], bu[i]);
+    }
+    rgba.val[2] = narrow(sum);
+    rgba.val[3] = vdupq_n_u8(0xff);
+    vst4q_u8(dst, rgba);
+}
+
+// Spread the terms of 8 chroma samples over the 16 pixels they cover.
+static inline void duplicate(int32x4_t low, int32x4_t high, int32x4_t out[4]) {
+    int32x4x2_t lowPairs = vzipq_s32(low, low);
+    int32x4x2_t highPairs = vzipq_s32(high, high);
+    out[0] = lowPairs.val[0];
+    out[1] = lowPairs.val[1];
+    out[2] = highPairs.val[0];
+    out[3] = highPairs.val[1];
+}
+
+void planesToRgba(const uint8_t *y, int yStride, const uint8_t *u, const uint8_t *v,
+                  int uvStride, int uvStep, uint8_t *dst, int dstStride, int width, int height) {
+    const int vectorWidth = width & ~15;
+    const uint8x8_t bias = vdup_n_u8(128);
+    for (int row = 0; row < height; row += 2) {
+        const uint8_t *y0 = y + row * yStride;
+        const uint8_t *uRow = u + (row >> 1) * uvStride;
+        const uint8_t *vRow = v + (row >> 1) * uvStride;
+        uint8_t *d0 = dst + row * dstStride;
+        for (int x = 0; x < vectorWidth; x += 16) {
+            uint8x8_t uValues;
+            uint8x8_t vValues;
+            if (uvStep == 2) {
+                // interleaved chroma, deinterleave 8 pairs starting at whichever channel is first
+                bool uFirst = uRow < vRow;
+                uint8x8x2_t pairs = vld2_u8((uFirst ? uRow : vRow) + x);
+                uValues = pairs.val[uFirst ? 0 : 1];
+                vValues = pairs.val[uFirst ? 1 : 0];
+            } else {
+                uValues = vld1_u8(uRow + (x >> 1));
+                vValues = vld1_u8(vRow + (x >> 1));
+            }
+            int16x8_t uTerm = vreinterpretq_s16_u16(vsubl_u8(uValues, bias));
+            int16x8_t vTerm = vreinterpretq_s16_u16(vsubl_u8(vValues, bias));
+
+            int32x4_t rv[4];
+            int32x4_t guv[4];
+            int32x4_t bu[4];
+            duplicate(vmull_n_s16(vget_low_s16(vTerm), kRV), vmull_n_s16(vget_high_s16(vTerm), kRV), rv);
+            duplicate(vmlal_n_s16(vmull_n_s16(vget_low_s16(uTerm), kGU), vget_low_s16(vTerm), kGV),
+                      vmlal_n_s16(vmull_n_s16(vget_high_s16(uTerm), kGU), vget_high_s16(vTerm), kGV), guv);
+            duplicate(vmull_n_s16(vget_low_s16(uTerm), kBU), vmull_n_s16(vget_high_s16(uTerm), kBU), bu);
+
+            rowToRgba16(y0 + x, rv, guv, bu, d0 + x * 4);
+            rowToRgba16(y0 + yStride + x, rv, guv, bu, d0 + dstStride + x * 4);
+        }
+    }
+    if (vectorWidth < width) {
+        planesToRgbaScalar(y + vectorWidth, yStride, u + (vectorWidth >> 1) * uvStep,
+                           v + (vectorWidth >> 1) * uvStep, uvStride, uvStep,
+                           dst + vectorWidth * 4, dstStride, width - vectorWidth, height);
+    }
+}
+
+#else
+
+void planesToRgba(const uint8_t *y, int yStride, const uint8_t *u, const uint8_t *v,
+                  int uvStride, int uvStep, uint8_t *dst, int dstStride, int width, int height) {
+    planesToRgbaScalar(y, yStride, u, v, uvStride, uvStep, dst, dstStride, width, height);
+}
+
+#endif
+
+// Full size frames go through the row pair kernel, downscaled ones through the point sampler.
+static void convertPlanes(const uint8_t *y, const uint8_t *u, const uint8_t *v, int uvStride,
+                          int uvStep, uint8_t *dst, int dstStride, int width, int height, int scale) {
+    if (scale == 1) {
+        planesToRgba(y, width, u, v, uvStride, uvStep, dst, dstStride, width, height);
+    } else {
+        planesToRgbaScaled(y, width, u, v, uvStride, uvStep, dst, dstStride, width, height, scale);
+    }
+}
+
+bool toRgba(const uint8_t *src, size_t srcLength, int format, int width, int height,
+            uint8_t *dst, int dstStride, int scale) {
+    if (src == nullptr || dst == nullptr || (width & 1) != 0 || (height & 1) != 0
+        || scale <= 0 || scale > width || scale > height || dstStride < (width / scale) * 4) {
+        return false;
+    }
+    size_t length = frameLength(format, width, height);
+    if (length == 0 || srcLength < length) {
+        return false;
+    }
+    const uint8_t *chroma = src + (size_t) width * height;
+    switch (format) {
+        case FORMAT_NV12:
+            convertPlanes(src, chroma, chroma + 1, width, 2, dst, dstStride, width, height, scale);
+            return true;
+        case FORMAT_NV21:
+            convertPlanes(src, chroma + 1, chroma, width, 2, dst, dstStride, width, height, scale);
+            return true;
+        case FORMAT_YV12: {
+            int chromaStride = yv12ChromaStride(width);
+            const uint8_t *u = chroma + (size_t) chromaStride * (height / 2);
+            convertPlanes(src, u, chroma, chromaStride, 1, dst, dstStride, width, height, scale);
+            return true;
+        }
+        default:
+            return false;
+    }
+}
+
+} // namespace yuv
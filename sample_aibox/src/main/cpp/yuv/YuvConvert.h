@@ -0,0 +1,47 @@
+//
+// Portable 4:2:0 YUV to RGBA conversion, shared by the JNI layer and the host tests.
+//
+
+#ifndef VISIONSERVICE_YUVCONVERT_H
+#define VISIONSERVICE_YUVCONVERT_H
+
+#include <cstddef>
+#include <cstdint>
+
+namespace yuv {
+
+// Same values as the FORMAT_* constants of com.segway.robot.sample.yuv.YuvConverter.
+enum Format {
+    FORMAT_NV12 = 0,
+    FORMAT_NV21 = 1,
+    FORMAT_YV12 = 2,
+};
+
+// Number of bytes of a width x height frame in the given format, 0 for unknown formats.
+size_t frameLength(int format, int width, int height);
+
+// Convert a packed frame to RGBA bytes (R first, as in an ARGB_8888 Bitmap) with BT.601 limited
+// range coefficients. width and height must be even; dstStride is in bytes.
+// With a scale above 1 only every scale-th pixel of every scale-th row is converted, giving a
+// (width / scale) x (height / scale) image.
+// Returns false if the format is unknown, the size is odd or srcLength is too short.
+bool toRgba(const uint8_t *src, size_t srcLength, int format, int width, int height,
+            uint8_t *dst, int dstStride, int scale = 1);
+
+// Convert explicit planes. uvStep is the distance in bytes between two samples of one chroma
+// channel: 2 for interleaved (NV12/NV21) and 1 for planar (YV12) chroma.
+void planesToRgba(const uint8_t *y, int yStride, const uint8_t *u, const uint8_t *v,
+                  int uvStride, int uvStep, uint8_t *dst, int dstStride, int width, int height);
+
+// Point-sampled variant of planesToRgba producing (width / scale) x (height / scale) pixels.
+void planesToRgbaScaled(const uint8_t *y, int yStride, const uint8_t *u, const uint8_t *v,
+                        int uvStride, int uvStep, uint8_t *dst, int dstStride, int width, int height,
+                        int scale);
+
+// The scalar reference of planesToRgba, used for the columns the vector path does not cover.
+void planesToRgbaScalar(const uint8_t *y, int yStride, const uint8_t *u, const uint8_t *v,
+                        int uvStride, int uvStep, uint8_t *dst, int dstStride, int width, int height);
+
+} // namespace yuv
+
+#endif //VISIONSERVICE_YUVCONVERT_H
@@ -5,11 +5,12 @@ import android.content.ContentValues
 import android.content.pm.PackageManager
 import android.graphics.Bitmap
 import android.graphics.BitmapFactory
-import android.graphics.RectF
+import android.graphics.Canvas
 import android.os.Build
 import android.os.Bundle
 import android.os.Environment
 import android.os.Environment.getExternalStoragePublicDirectory
+import android.os.FileObserver
 import android.provider.MediaStore
 import android.util.Log
 import android.view.ViewGroup
@@ -30,6 +31,7 @@ import androidx.core.content.ContextCompat
 import androidx.lifecycle.Observer
 import com.segway.robot.sample.aibox.tool.Event
 import com.segway.robot.sample.aibox.vision.OwnVision
+import com.segway.robot.sample.yuv.YuvConverter
 import com.segway.robot.sdk.vision.BindStateListener
 import com.segway.robot.sdk.vision.frame.Frame
 import com.segway.robot.sdk.vision.stream.PixelFormat
@@ -39,8 +41,9 @@ import java.io.File
 import java.nio.ByteBuffer
 import java.text.SimpleDateFormat
 import java.util.Locale
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
 import kotlin.concurrent.Volatile
-import kotlin.math.roundToInt
 
 class AIBoxActivity : AppCompatActivity() {
     private var mImageView: VisionImageView? = null
@@ -56,10 +59,13 @@ class AIBoxActivity : AppCompatActivity() {
 
     @Volatile
     private var mIsCameraStarted = false
-    private var mBitmap: Bitmap? = null
     private var mVisionWorkThread: Thread? = null
+
+    // camera frames are copied on the vision callback and detected on mDetectionThread
+    @Volatile
+    private var mFrameMailbox: FrameMailbox<FrameCopy>? = null
+    private var mDetectionThread: Thread? = null
     private var mImageWorkThread: Thread? = null
-    private val mBitmapLock = Any()
     private var mBtnOpenImage: Button? = null
     private var mBtnCloseImage: Button? = null
     private var mBtnOpenCamera: Button? = null
@@ -70,15 +76,43 @@ class AIBoxActivity : AppCompatActivity() {
     private var mBtnCamXPreview: Button? = null
     private var camXPreview: PreviewView? = null
     private var mTvLogs: TextView? = null
-    private var mData: ByteBuffer? = null
-    private var mDetectedResults: Array<DetectedResult>? = null
-    private val mRectList: MutableList<RectF> = ArrayList()
+    private val mBufferPool = DirectBufferPool(BUFFERS_PER_SIZE, TRACK_BUFFER_LEAKS)
+    private var mYuvData: ByteArray? = null
+    private val mYuvConverter = YuvConverter(YUV_CONVERTER_THREADS)
+
+    // the frame thread fills the back slot and publishes it, the UI thread shows the front slot
+    private val mSlots = TripleBuffer(Slot(), Slot(), Slot())
     private var mImageViewWidth = 0
     private var mImageViewHeight = 0
     private var imageCapture: ImageCapture? = null
 
+    // loaded and warmed up on mModelExecutor, frames are not detected until it is ready
+    @Volatile
+    private var mDetector: Detector? = null
+    private val mModelExecutor: ExecutorService = Executors.newSingleThreadExecutor()
+    private var mModelObserver: FileObserver? = null
+
     private val recordViewModel: RecordViewModel by viewModels<RecordViewModel>()
 
+    // compresses and writes the recorded frames, so neither frame thread waits for the disk
+    private val mRecorder = FrameRecorder("AIBoxRecorder", object : FrameRecorder.Writer<Bitmap> {
+        private val mPicturesDir = File(
+            getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES), "AIBoxFootage"
+        )
+
+        override fun copy(source: Bitmap, target: Bitmap?): Bitmap {
+            if (target == null || target.width != source.width || target.height != source.height) {
+                return source.copy(Bitmap.Config.ARGB_8888, true)
+            }
+            Canvas(target).drawBitmap(source, 0f, 0f, null)
+            return target
+        }
+
+        override fun write(frame: Bitmap) {
+            recordViewModel.saveImage(frame, mPicturesDir)
+        }
+    })
+
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
         setContentView(R.layout.activity_main)
@@ -118,6 +152,44 @@ class AIBoxActivity : AppCompatActivity() {
         }
 
         recordViewModel.getLogDisplay().observe(this, Observer(::onRecordLogDisplay))
+        if (DEBUG_DUMP_INTERVAL > 0) {
+            VisionNative.nativeSetDebugDump(DEBUG_DUMP_DIRECTORY, DEBUG_DUMP_INTERVAL)
+        }
+        loadModel()
+    }
+
+    private fun loadModel() {
+        mModelExecutor.execute { createDetector() }
+        // swap in the model whenever a new one is pushed, the running detection keeps going
+        val modelFile = File(MODEL_PATH)
+        mModelObserver = object : FileObserver(modelFile.parent, CLOSE_WRITE or MOVED_TO) {
+            override fun onEvent(event: Int, path: String?) {
+                if (path == modelFile.name) {
+                    mModelExecutor.execute {
+                        val detector = mDetector
+                        if (detector == null) {
+                            // the model was missing or broken at startup, this is the first one to load
+                            createDetector()
+                        } else {
+                            val reloaded = detector.reload(MODEL_PATH)
+                            Log.i(TAG, "Reloaded $MODEL_PATH: $reloaded")
+                        }
+                    }
+                }
+            }
+        }
+        mModelObserver?.startWatching()
+    }
+
+    // runs on mModelExecutor
+    private fun createDetector() {
+        val detector = Detector.create(MODEL_PATH, true)
+        if (detector == null) {
+            Log.e(TAG, "Cannot load the model $MODEL_PATH")
+            return
+        }
+        detector.warmUp(WARM_UP_WIDTH, WARM_UP_HEIGHT)
+        mDetector = detector
     }
 
     private fun onRecordLogDisplay(event: Event<String>?) {
@@ -130,6 +202,14 @@ class AIBoxActivity : AppCompatActivity() {
         super.onDestroy()
         closeImage()
         closeCamera()
+        mYuvConverter.close()
+        mRecorder.close()
+        mModelObserver?.stopWatching()
+        mModelExecutor.execute {
+            mDetector?.close()
+            mDetector = null
+        }
+        mModelExecutor.shutdown()
     }
 
     private fun resetUI() {
@@ -280,7 +360,7 @@ class AIBoxActivity : AppCompatActivity() {
             stopDetect()
         }
         mIsImageStarted = false
-        if (mVisionWorkThread != null) {
+        if (mImageWorkThread != null) {
             try {
                 mImageWorkThread?.interrupt()
                 mImageWorkThread?.join()
@@ -289,6 +369,7 @@ class AIBoxActivity : AppCompatActivity() {
             }
             mImageWorkThread = null
         }
+        checkBufferLeaks()
         resetUI()
     }
 
@@ -305,7 +386,8 @@ class AIBoxActivity : AppCompatActivity() {
         if (mIsDetecting) {
             stopDetect()
         }
-        unbindAndStopVision()
+        // stop using the frames before the service releases their memory files
+        stopDetectionThread()
         if (mVisionWorkThread != null) {
             try {
                 mVisionWorkThread?.interrupt()
@@ -315,6 +397,8 @@ class AIBoxActivity : AppCompatActivity() {
             }
             mVisionWorkThread = null
         }
+        unbindAndStopVision()
+        checkBufferLeaks()
         resetUI()
     }
 
@@ -351,24 +435,29 @@ class AIBoxActivity : AppCompatActivity() {
                     val intrinsics =
                         OwnVision.getInstance()?.getIntrinsics(VisionStreamType.FISH_EYE)
                     Log.d(TAG, "intrinsics: $intrinsics")
-//                    OwnVision.getInstance()?.startVision(VisionStreamType.FISH_EYE)
-                    OwnVision.getInstance()?.startVision(VisionStreamType.FISH_EYE,
-                        object : OwnVision.FrameListener {
-                            override fun onNewFrame(streamType: Int, frame: Frame?) {
-                                Log.d(TAG, "Got a new frame from the Vision service")
-                                if (frame != null) {
-                                    try {
-                                        onNewFrame(frame)
-                                    } catch (e: Exception) {
-                                        Log.d(TAG, "Exception $e")
-                                        e.printStackTrace()
+                    if (ZERO_COPY_DETECTION) {
+                        // detect on the service's frame buffers, each frame is returned after use
+                        OwnVision.getInstance()?.startVision(VisionStreamType.FISH_EYE)
+                        mVisionWorkThread = VisionWorkThread()
+                        mVisionWorkThread?.start()
+                        mTvLogs?.text = "Started Vision thread"
+                    } else {
+                        startDetectionThread()
+                        OwnVision.getInstance()?.startVision(VisionStreamType.FISH_EYE,
+                            object : OwnVision.FrameListener {
+                                override fun onNewFrame(streamType: Int, frame: Frame?) {
+                                    Log.d(TAG, "Got a new frame from the Vision service")
+                                    if (frame != null) {
+                                        try {
+                                            onNewFrame(frame)
+                                        } catch (e: Exception) {
+                                            Log.d(TAG, "Exception $e")
+                                            e.printStackTrace()
+                                        }
                                     }
                                 }
-                            }
-                        })
-                    mVisionWorkThread = VisionWorkThread()
-//                    mVisionWorkThread?.start()
-//                    mTvLogs?.text = "Started Vision thread"
+                            })
+                    }
                 } catch (e: Exception) {
                     Log.d(TAG, "error:", e)
                 }
@@ -386,6 +475,30 @@ class AIBoxActivity : AppCompatActivity() {
         }
     }
 
+    private fun startDetectionThread() {
+        val mailbox = FrameMailbox<FrameCopy>()
+        mFrameMailbox = mailbox
+        mDetectionThread = DetectionThread(mailbox)
+        mDetectionThread?.start()
+    }
+
+    private fun stopDetectionThread() {
+        mFrameMailbox?.close()?.release(mBufferPool)
+        mFrameMailbox = null
+        try {
+            mDetectionThread?.join()
+        } catch (e: InterruptedException) {
+            e.printStackTrace()
+        }
+        mDetectionThread = null
+    }
+
+    private fun checkBufferLeaks() {
+        for (leak in mBufferPool.leaks) {
+            Log.w(TAG, "Detection buffer not released", leak)
+        }
+    }
+
     private fun unbindAndStopVision() {
         try {
             OwnVision.getInstance()?.stopVision(VisionStreamType.FISH_EYE)
@@ -395,77 +508,83 @@ class AIBoxActivity : AppCompatActivity() {
         OwnVision.getInstance()?.unbindService()
     }
 
-    private fun showImage() {
-        runOnUiThread(Runnable {
-            mTvLogs?.text = "Attempting to show image"
-            synchronized(mBitmapLock) {
-                mRectList.clear()
-                val results = mDetectedResults
-                if (results != null) {
-                    for (result: DetectedResult in results) {
-                        mRectList.add(
-                            RectF(
-                                result.x1 / BITMAP_SCALE, result.y1 / BITMAP_SCALE,
-                                result.x2 / BITMAP_SCALE, result.y2 / BITMAP_SCALE
-                            )
-                        )
-                    }
-                }
-                if (mBitmap != null) {
-                    val width: Int? = mBitmap?.width?.div(BITMAP_SCALE)
-                    val height: Int? = mBitmap?.height?.div(BITMAP_SCALE)
-                    if (width != null && height != null && (width != mImageViewWidth || height != mImageViewHeight)) {
-                        mImageViewWidth = width
-                        mImageViewHeight = height
-                        val layoutParams: ViewGroup.LayoutParams? = mImageView?.layoutParams
-                        if (layoutParams != null) {
-                            layoutParams.width = mImageViewWidth
-                            layoutParams.height = mImageViewHeight
-                            mImageView?.layoutParams = layoutParams
-                        }
-                    }
+    /**
+     * Publish the back slot and show it on the UI thread.
+     */
+    private fun publishImage() {
+        mSlots.publish()
+        runOnUiThread(mShowImage)
+    }
+
+    private val mShowImage = Runnable {
+        // several frames may have been published since the last run, show only the newest
+        if (!mSlots.update()) {
+            return@Runnable
+        }
+        mTvLogs?.text = "Attempting to show image"
+        val slot = mSlots.front()
+        if (slot.bitmap != null) {
+            val width = slot.sourceWidth / BITMAP_SCALE
+            val height = slot.sourceHeight / BITMAP_SCALE
+            if (width != mImageViewWidth || height != mImageViewHeight) {
+                mImageViewWidth = width
+                mImageViewHeight = height
+                val layoutParams: ViewGroup.LayoutParams? = mImageView?.layoutParams
+                if (layoutParams != null) {
+                    layoutParams.width = mImageViewWidth
+                    layoutParams.height = mImageViewHeight
+                    mImageView?.layoutParams = layoutParams
                 }
-                mImageView?.mark(mRectList)
-                mImageView?.setImageBitmap(mBitmap)
             }
-        })
+        }
+        mImageView?.mark(slot.results, 1f / BITMAP_SCALE)
+        mImageView?.setImageBitmap(slot.bitmap)
     }
 
     internal inner class ImageWorkThread : Thread() {
         override fun run() {
+            // the still image never changes, decode it once and show the same bitmap in every slot
+            var image: Bitmap? = null
             while (mIsImageStarted) {
-                synchronized(mBitmapLock) {
-                    mBitmap = BitmapFactory.decodeFile(LOCAL_IMAGE_PATH)
-                    //                    mBitmap = BitmapFactory.decodeResource(getResources(), R.raw.fashion_sample);
-                    val currentBitmap = mBitmap
-                    if (currentBitmap == null) {
-                        runOnUiThread {
-                            Toast.makeText(
-                                this@AIBoxActivity,
-                                "The picture does not exist!",
-                                Toast.LENGTH_SHORT
-                            ).show()
-                        }
-                    } else if (mIsDetecting) {
-                        val size: Int = currentBitmap.byteCount
-                        if (mData == null || mData?.capacity() != size) {
-                            mData = ByteBuffer.allocateDirect(size)
-                        }
-                        mData?.rewind()
-                        val bitmap: Bitmap? = currentBitmap.copy(currentBitmap.config, true)
-                        mBitmap?.copyPixelsToBuffer(mData!!)
-                        mBitmap = bitmap
-                        mDetectedResults = VisionNative.nativeDetect(
-                            mData,
+                val detector = mDetector
+                if (image == null) {
+                    image = BitmapFactory.decodeFile(LOCAL_IMAGE_PATH)
+                    //                    image = BitmapFactory.decodeResource(getResources(), R.raw.fashion_sample);
+                }
+                val slot = mSlots.back()
+                slot.bitmap = image
+                val currentBitmap = image
+                slot.sourceWidth = currentBitmap?.width ?: 0
+                slot.sourceHeight = currentBitmap?.height ?: 0
+                if (currentBitmap == null) {
+                    runOnUiThread {
+                        Toast.makeText(
+                            this@AIBoxActivity,
+                            "The picture does not exist!",
+                            Toast.LENGTH_SHORT
+                        ).show()
+                    }
+                    slot.results.clear()
+                } else if (mIsDetecting && detector != null) {
+                    val data = mBufferPool.acquire(currentBitmap.byteCount)
+                    try {
+                        currentBitmap.copyPixelsToBuffer(data)
+                        data.rewind()
+                        detector.detect(
+                            data,
+                            0,
                             PixelFormat.RGBA8888,
-                            mBitmap!!.width,
-                            mBitmap!!.height
+                            currentBitmap.width,
+                            currentBitmap.height,
+                            slot.results
                         )
-                    } else {
-                        mDetectedResults = null
+                    } finally {
+                        mBufferPool.release(data)
                     }
+                } else {
+                    slot.results.clear()
                 }
-                showImage()
+                publishImage()
                 try {
                     sleep(100)
                 } catch (e: InterruptedException) {
@@ -477,11 +596,13 @@ class AIBoxActivity : AppCompatActivity() {
     }
 
     private fun clearBitmap() {
-        synchronized(mBitmapLock) {
-            mBitmap = null
-            mDetectedResults = null
+        // the still image sits in every slot, clear each one the producer gets back
+        repeat(3) {
+            val slot = mSlots.back()
+            slot.bitmap = null
+            slot.results.clear()
+            publishImage()
         }
-        showImage()
     }
 
     internal inner class VisionWorkThread : Thread() {
@@ -493,8 +614,12 @@ class AIBoxActivity : AppCompatActivity() {
                     val visionInstance = OwnVision.getInstance()
                     val frame = visionInstance?.getLatestFrame(VisionStreamType.FISH_EYE)
                     if (frame != null) {
-                        onNewFrame(frame)
-                        visionInstance.returnFrame(frame)
+                        try {
+                            processFrame(frame)
+                        } finally {
+                            // the service may reuse the memory file only after this
+                            visionInstance.returnFrame(frame)
+                        }
                     }
                 } catch (e: Exception) {
                     Log.d(TAG, "Exception $e")
@@ -514,89 +639,191 @@ class AIBoxActivity : AppCompatActivity() {
         }
     }
 
+    /**
+     * Detects the newest camera frame, frames arriving while a detection runs replace each other.
+     */
+    internal inner class DetectionThread(private val mailbox: FrameMailbox<FrameCopy>) :
+        Thread("AIBoxDetection") {
+        override fun run() {
+            var detected = 0L
+            try {
+                while (true) {
+                    val frame = mailbox.take() ?: break
+                    try {
+                        val data = frame.data
+                        if (data != null) {
+                            processFrame(data, 0, frame.pixelFormat, frame.width, frame.height)
+                        }
+                    } catch (e: Exception) {
+                        Log.d(TAG, "Exception $e")
+                        e.printStackTrace()
+                    } finally {
+                        frame.release(mBufferPool)
+                    }
+                    mailbox.recycle(frame)
+                    if (++detected % METRICS_INTERVAL == 0L) {
+                        Log.i(
+                            TAG, "dropped ${mailbox.droppedCount} of ${mailbox.postedCount} frames, " +
+                                    "queue age ${mailbox.lastQueueAge / 1000000} ms, " +
+                                    "max ${mailbox.maxQueueAge / 1000000} ms"
+                        )
+                    }
+                }
+            } catch (e: InterruptedException) {
+                e.printStackTrace()
+            }
+            clearBitmap()
+        }
+    }
+
+    /**
+     * Copy the frame and hand it to the detection thread. Runs on the vision callback thread,
+     * which holds the service's memory file until it returns, so it must not wait for detection.
+     */
     private fun onNewFrame(frame: Frame) {
         Log.d(
             TAG,
             "ts: " + frame.info.platformTimeStamp + "  " + frame.info.imuTimeStamp
         )
-        val resolution = frame.info.resolution
-        val width = Resolution.getWidth(resolution)
-        val height = Resolution.getHeight(resolution)
-        synchronized(mBitmapLock) {
-            if (mBitmap == null) {
-                mBitmap =
-                    Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888)
-            }
+        val mailbox = mFrameMailbox ?: return
+        val pixelFormat = frame.info.pixelFormat
+        if (pixelFormat != PixelFormat.YUV420 && pixelFormat != PixelFormat.YV12) {
+            Log.d(TAG, "An unsupported format")
+            return
         }
+        val copy = mailbox.obtain() ?: FrameCopy()
+        copy.set(frame, mBufferPool)
+        // a frame still waiting for detection, or any frame once the mailbox is closed, is stale
+        mailbox.post(copy)?.let {
+            it.release(mBufferPool)
+            mailbox.recycle(it)
+        }
+    }
+
+    /**
+     * Detect and show a frame held by the vision service without copying it.
+     */
+    private fun processFrame(frame: Frame) {
         val pixelFormat = frame.info.pixelFormat
-        if (pixelFormat == PixelFormat.YUV420 || pixelFormat == PixelFormat.YV12) {
-            val limit = frame.byteBuffer.limit()
-            if (mIsDetecting) {
-                if (mData == null || mData?.capacity() != limit) {
-                    mData = ByteBuffer.allocateDirect(limit)
-                }
-                frame.byteBuffer.position(0)
-                mData?.rewind()
-                mData?.put(frame.byteBuffer)
-                synchronized(mBitmapLock) {
-                    mDetectedResults =
-                        VisionNative.nativeDetect(mData, pixelFormat, width, height)
-                }
-            } else {
-                synchronized(mBitmapLock) { mDetectedResults = null }
-            }
-            val buff = ByteArray(limit)
-            frame.byteBuffer.position(0)
-            frame.byteBuffer[buff]
-            synchronized(mBitmapLock) {
-                yuv2RGBBitmap(
-                    buff,
-                    mBitmap,
-                    width,
-                    height
-                )
-            }
-        } else {
+        if (pixelFormat != PixelFormat.YUV420 && pixelFormat != PixelFormat.YV12) {
             Log.d(TAG, "An unsupported format")
+            return
         }
-        if (mBitmap != null) {
-            showImage()
-        }
-        synchronized(mBitmapLock) {
-            val devicesPicturesDir =
-                getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES)
-            val appPicturesDir = File(devicesPicturesDir, "AIBoxFootage")
-            recordViewModel.saveImage(mBitmap, appPicturesDir)
-        }
-    }
-
-    private fun yuv2RGBBitmap(data: ByteArray, bitmap: Bitmap?, width: Int, height: Int) {
-        val frameSize = width * height
-        val rgba = IntArray(frameSize)
-        for (i in 0 until height) {
-            for (j in 0 until width) {
-                var y = (0xff and (data[i * width + j].toInt()))
-                val v =
-                    (0xff and (data[frameSize + ((i shr 1) * width) + (j and 1.inv()) + 0].toInt()))
-                val u =
-                    (0xff and (data[frameSize + ((i shr 1) * width) + (j and 1.inv()) + 1].toInt()))
-                y = if (y < 16) 16 else y
-                var r: Int = (1.164f * (y - 16) + 1.596f * (v - 128)).roundToInt()
-                var g: Int =
-                    ((1.164f * (y - 16)) - (0.813f * (v - 128)) - (0.391f * (u - 128))).roundToInt()
-                var b: Int = (1.164f * (y - 16) + 2.018f * (u - 128)).roundToInt()
-                r = if (r < 0) 0 else (if (r > 255) 255 else r)
-                g = if (g < 0) 0 else (if (g > 255) 255 else g)
-                b = if (b < 0) 0 else (if (b > 255) 255 else b)
-                rgba[i * width + j] = -0x1000000 + (b shl 16) + (g shl 8) + r
-            }
+        // the frame starts at the beginning of the mapped memory file
+        processFrame(
+            frame.byteBuffer, 0, pixelFormat,
+            Resolution.getWidth(frame.info.resolution), Resolution.getHeight(frame.info.resolution)
+        )
+    }
+
+    private fun processFrame(data: ByteBuffer, offset: Int, pixelFormat: Int, width: Int, height: Int) {
+        // the preview only needs the displayed resolution, recordings keep the full frame
+        val scale = if (recordViewModel.isRecording()) 1 else BITMAP_SCALE
+        // everything below writes only the back slot, which neither the UI nor the recorder sees
+        val slot = mSlots.back()
+        slot.sourceWidth = width
+        slot.sourceHeight = height
+        val bitmapWidth = YuvConverter.scaledSize(width, scale)
+        val bitmapHeight = YuvConverter.scaledSize(height, scale)
+        var bitmap = slot.bitmap
+        // a slot may still hold the decoded still image, which cannot be written
+        if (bitmap == null || !bitmap.isMutable || bitmap.width != bitmapWidth || bitmap.height != bitmapHeight) {
+            bitmap = Bitmap.createBitmap(bitmapWidth, bitmapHeight, Bitmap.Config.ARGB_8888)
+            slot.bitmap = bitmap
+        }
+        val detector = mDetector
+        if (mIsDetecting && detector != null) {
+            detector.detect(data, offset, pixelFormat, width, height, slot.results)
+        } else {
+            slot.results.clear()
         }
-        bitmap?.setPixels(rgba, 0, width, 0, 0, width, height)
+        val frameData = if (offset == 0) data else data.duplicate().apply { position(offset) }.slice()
+        yuv2RGBBitmap(frameData, pixelFormat, bitmap, width, height, scale)
+        publishImage()
+        // the published slot is only read from now on, the next frame goes to another slot
+        if (recordViewModel.isRecording()) {
+            mRecorder.record(bitmap)
+        }
+    }
+
+    private fun yuv2RGBBitmap(
+        frameBuffer: ByteBuffer,
+        pixelFormat: Int,
+        bitmap: Bitmap?,
+        width: Int,
+        height: Int,
+        scale: Int
+    ) {
+        if (bitmap == null) {
+            return
+        }
+        val format =
+            if (pixelFormat == PixelFormat.YV12) YuvConverter.FORMAT_YV12 else YuvConverter.FORMAT_NV12
+        // convert straight into the bitmap pixels, copy through the Java converter only if the
+        // frame is not a direct buffer
+        if (VisionNative.nativeYuvToBitmap(frameBuffer, format, width, height, scale, bitmap)) {
+            return
+        }
+        val limit = frameBuffer.limit()
+        var buff = mYuvData
+        if (buff == null || buff.size != limit) {
+            buff = ByteArray(limit)
+            mYuvData = buff
+        }
+        frameBuffer.position(0)
+        frameBuffer[buff]
+        val pixels = mYuvConverter.convert(buff, format, width, height, scale)
+        bitmap.setPixels(pixels, 0, bitmap.width, 0, 0, bitmap.width, bitmap.height)
+    }
+
+    /**
+     * A camera frame copied out of the service's memory file into a pooled buffer.
+     */
+    private class FrameCopy {
+        var data: ByteBuffer? = null
+        var pixelFormat = 0
+        var width = 0
+        var height = 0
+
+        fun set(frame: Frame, pool: DirectBufferPool) {
+            val source = frame.byteBuffer
+            source.position(0)
+            val buffer = pool.acquire(source.limit())
+            data = buffer
+            buffer.put(source)
+            buffer.flip()
+            pixelFormat = frame.info.pixelFormat
+            width = Resolution.getWidth(frame.info.resolution)
+            height = Resolution.getHeight(frame.info.resolution)
+        }
+
+        fun release(pool: DirectBufferPool) {
+            data?.let { pool.release(it) }
+            data = null
+        }
+    }
+
+    /**
+     * A frame together with the detection results computed for it.
+     */
+    private class Slot {
+        var bitmap: Bitmap? = null
+        val results = DetectionResults(MAX_DETECTIONS)
+
+        // size of the image the results refer to; bitmap may be a downscaled preview of it
+        var sourceWidth = 0
+        var sourceHeight = 0
     }
 
     companion object {
         private val TAG = AIBoxActivity::class.java.simpleName
         private const val LOCAL_IMAGE_PATH = "sdcard/apple.jpeg"
+        private const val MODEL_PATH = "/sdcard/apple_model.tflite"
+        private const val WARM_UP_WIDTH = 640
+        private const val WARM_UP_HEIGHT = 480
+        // write every n-th detection input to DEBUG_DUMP_DIRECTORY, 0 disables the dump
+        private const val DEBUG_DUMP_INTERVAL = 0
+        private const val DEBUG_DUMP_DIRECTORY = "/sdcard"
         private const val REQUEST_CODE = 1
         private val PERMISSIONS_STORAGE = arrayOf(
             "android.permission.READ_EXTERNAL_STORAGE",
@@ -604,6 +831,15 @@ class AIBoxActivity : AppCompatActivity() {
         )
         private val PERMISSION_CAMERA = arrayOf("android.permission.CAMERA")
         private const val BITMAP_SCALE = 4
+        private const val YUV_CONVERTER_THREADS = 2
+        private const val METRICS_INTERVAL = 100L
+        private const val BUFFERS_PER_SIZE = 3
+        // records a stack trace on every acquire, only turn it on while hunting a leak
+        private const val TRACK_BUFFER_LEAKS = false
+        private const val MAX_DETECTIONS = 64
+
+        // detect on the shared memory frames instead of copying them on the vision callback
+        private const val ZERO_COPY_DETECTION = false
 
         init {
             System.loadLibrary("vision_aibox")
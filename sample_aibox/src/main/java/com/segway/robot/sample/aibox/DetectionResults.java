@@ -0,0 +1,90 @@
+package com.segway.robot.sample.aibox;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Reusable view over detection results packed into a direct float buffer by
+ * {@link VisionNative#nativeDetectInto}: the box count, then classId, x1, y1, x2, y2 and score
+ * per box, with the coordinates in source frame pixels.
+ */
+public class DetectionResults {
+    /**
+     * Number of floats per box.
+     */
+    public static final int BOX_SIZE = 6;
+
+    private static final int CLASS_ID = 0;
+    private static final int X1 = 1;
+    private static final int Y1 = 2;
+    private static final int X2 = 3;
+    private static final int Y2 = 4;
+    private static final int SCORE = 5;
+
+    private final FloatBuffer mBuffer;
+    private final int mMaxCount;
+
+    /**
+     * @param maxCount number of boxes the results have room for
+     */
+    public DetectionResults(int maxCount) {
+        if (maxCount <= 0) {
+            throw new IllegalArgumentException("The box count must be positive.");
+        }
+        mMaxCount = maxCount;
+        mBuffer = ByteBuffer.allocateDirect((1 + maxCount * BOX_SIZE) * 4)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+    }
+
+    /**
+     * @return the buffer to hand to the native code
+     */
+    public FloatBuffer getBuffer() {
+        return mBuffer;
+    }
+
+    public int getMaxCount() {
+        return mMaxCount;
+    }
+
+    public int size() {
+        return Math.min((int) mBuffer.get(0), mMaxCount);
+    }
+
+    public void clear() {
+        mBuffer.put(0, 0);
+    }
+
+    public int getClassId(int index) {
+        return (int) get(index, CLASS_ID);
+    }
+
+    public float getX1(int index) {
+        return get(index, X1);
+    }
+
+    public float getY1(int index) {
+        return get(index, Y1);
+    }
+
+    public float getX2(int index) {
+        return get(index, X2);
+    }
+
+    public float getY2(int index) {
+        return get(index, Y2);
+    }
+
+    public float getScore(int index) {
+        return get(index, SCORE);
+    }
+
+    private float get(int index, int field) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size());
+        }
+        return mBuffer.get(1 + index * BOX_SIZE + field);
+    }
+}
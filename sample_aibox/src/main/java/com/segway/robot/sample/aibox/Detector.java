@@ -0,0 +1,131 @@
+package com.segway.robot.sample.aibox;
+
+import android.content.res.AssetManager;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Owner of a native detector handle, see {@link VisionNative#nativeCreate}.
+ * <p>
+ * Creating, warming up and reloading load or run the model and take a while, call them off the
+ * frame loop. Detection and reloads may run concurrently; {@link #close()} waits for both.
+ */
+public class Detector implements Closeable {
+    private final ReadWriteLock mLock = new ReentrantReadWriteLock();
+    private long mHandle;
+
+    private Detector(long handle) {
+        mHandle = handle;
+    }
+
+    /**
+     * @return the detector, or null if the model cannot be loaded
+     */
+    public static Detector create(String modelPath, boolean gpu) {
+        if (modelPath == null) {
+            throw new IllegalArgumentException("modelPath is null");
+        }
+        long handle = VisionNative.nativeCreate(modelPath, gpu);
+        return handle == 0 ? null : new Detector(handle);
+    }
+
+    /**
+     * @return the detector, or null if the asset cannot be mapped or loaded
+     */
+    public static Detector createFromAsset(AssetManager assets, String assetName, boolean gpu) {
+        if (assets == null || assetName == null) {
+            throw new IllegalArgumentException("asset is null");
+        }
+        long handle = VisionNative.nativeCreateFromAsset(assets, assetName, gpu);
+        return handle == 0 ? null : new Detector(handle);
+    }
+
+    public boolean warmUp(int width, int height) {
+        mLock.readLock().lock();
+        try {
+            return mHandle != 0 && VisionNative.nativeWarmUp(mHandle, width, height);
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Swap in another model without stopping detection.
+     *
+     * @return false if the model cannot be loaded; the current model stays in use then
+     */
+    public boolean reload(String modelPath) {
+        if (modelPath == null) {
+            throw new IllegalArgumentException("modelPath is null");
+        }
+        mLock.readLock().lock();
+        try {
+            return mHandle != 0 && VisionNative.nativeReload(mHandle, modelPath);
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of boxes written into {@code results}, or -1 if the frame is invalid or
+     * the detector is closed
+     */
+    public int detect(ByteBuffer data, int offset, int format, int width, int height, DetectionResults results) {
+        mLock.readLock().lock();
+        try {
+            if (mHandle == 0) {
+                results.clear();
+                return -1;
+            }
+            return VisionNative.nativeDetectInto(mHandle, data, offset, format, width, height, results.getBuffer());
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Detect on equally sized YUV420 frames with one inference, see
+     * {@link VisionNative#nativeDetectBatch}.
+     *
+     * @return the number of frames processed, or -1 if the batch is invalid or the detector is
+     * closed
+     */
+    public int detectBatch(ByteBuffer[] frames, int format, int width, int height, DetectionResults[] results) {
+        if (frames == null || results == null) {
+            throw new IllegalArgumentException("frames or results is null");
+        }
+        if (results.length < frames.length) {
+            throw new IllegalArgumentException("Only " + results.length + " results for " + frames.length + " frames");
+        }
+        FloatBuffer[] buffers = new FloatBuffer[frames.length];
+        for (int i = 0; i < frames.length; i++) {
+            buffers[i] = results[i].getBuffer();
+        }
+        mLock.readLock().lock();
+        try {
+            if (mHandle == 0) {
+                return -1;
+            }
+            return VisionNative.nativeDetectBatch(mHandle, frames, format, width, height, buffers);
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        mLock.writeLock().lock();
+        try {
+            if (mHandle != 0) {
+                VisionNative.nativeDestroy(mHandle);
+                mHandle = 0;
+            }
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+}
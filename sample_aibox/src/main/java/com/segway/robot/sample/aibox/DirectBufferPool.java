@@ -0,0 +1,126 @@
+package com.segway.robot.sample.aibox;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Pool of direct buffers for the native detection input.
+ * <p>
+ * Requests are rounded up to a power of two size class, so frames of slightly different sizes
+ * share buffers and a steady stream of frames stops allocating after the first few. Every
+ * acquired buffer has to be released exactly once; with leak tracking enabled the pool remembers
+ * where each outstanding buffer was acquired, see {@link #getLeaks()}.
+ */
+public class DirectBufferPool {
+    private static final int MIN_CLASS_SHIFT = 12;
+    private static final int MAX_CLASS_SHIFT = 30;
+    private static final Object UNTRACKED = new Object();
+
+    private final int mMaxFreePerClass;
+    private final boolean mTrackLeaks;
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final ArrayDeque<ByteBuffer>[] mFree = new ArrayDeque[MAX_CLASS_SHIFT + 1];
+    private final IdentityHashMap<ByteBuffer, Object> mOutstanding = new IdentityHashMap<>();
+    private long mAllocationCount;
+
+    /**
+     * @param maxFreePerClass number of released buffers kept per size class
+     * @param trackLeaks      whether to record a stack trace for every acquired buffer
+     */
+    public DirectBufferPool(int maxFreePerClass, boolean trackLeaks) {
+        if (maxFreePerClass <= 0) {
+            throw new IllegalArgumentException("The free buffer count must be positive.");
+        }
+        mMaxFreePerClass = maxFreePerClass;
+        mTrackLeaks = trackLeaks;
+    }
+
+    /**
+     * @return a native order buffer with a capacity of at least {@code size} bytes, positioned at
+     * 0 with the limit set to {@code size}
+     */
+    public synchronized ByteBuffer acquire(int size) {
+        int shift = classShift(size);
+        ArrayDeque<ByteBuffer> free = mFree[shift];
+        ByteBuffer buffer = free != null ? free.pollLast() : null;
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(1 << shift).order(ByteOrder.nativeOrder());
+            mAllocationCount++;
+        }
+        buffer.clear();
+        buffer.limit(size);
+        mOutstanding.put(buffer, mTrackLeaks ? new Throwable("acquired " + size + " bytes") : UNTRACKED);
+        return buffer;
+    }
+
+    /**
+     * Give a buffer returned by {@link #acquire(int)} back to the pool.
+     */
+    public synchronized void release(ByteBuffer buffer) {
+        if (buffer == null) {
+            throw new IllegalArgumentException("buffer is null");
+        }
+        if (mOutstanding.remove(buffer) == null) {
+            throw new IllegalArgumentException("The buffer is not acquired from this pool.");
+        }
+        int shift = classShift(buffer.capacity());
+        ArrayDeque<ByteBuffer> free = mFree[shift];
+        if (free == null) {
+            free = new ArrayDeque<>(mMaxFreePerClass);
+            mFree[shift] = free;
+        }
+        if (free.size() < mMaxFreePerClass) {
+            free.addLast(buffer);
+        }
+    }
+
+    /**
+     * @return the number of buffers acquired and not released yet
+     */
+    public synchronized int getOutstandingCount() {
+        return mOutstanding.size();
+    }
+
+    /**
+     * @return the number of direct buffers allocated so far
+     */
+    public synchronized long getAllocationCount() {
+        return mAllocationCount;
+    }
+
+    /**
+     * @return where the outstanding buffers were acquired; empty without leak tracking
+     */
+    public synchronized List<Throwable> getLeaks() {
+        List<Throwable> leaks = new ArrayList<>();
+        for (Object trace : mOutstanding.values()) {
+            if (trace instanceof Throwable) {
+                leaks.add((Throwable) trace);
+            }
+        }
+        return leaks;
+    }
+
+    /**
+     * Drop the released buffers, outstanding buffers are still tracked.
+     */
+    public synchronized void trim() {
+        for (ArrayDeque<ByteBuffer> free : mFree) {
+            if (free != null) {
+                free.clear();
+            }
+        }
+    }
+
+    private static int classShift(int size) {
+        if (size < 0 || size > 1 << MAX_CLASS_SHIFT) {
+            throw new IllegalArgumentException("Unsupported buffer size " + size);
+        }
+        int shift = 32 - Integer.numberOfLeadingZeros(Math.max(size, 1) - 1);
+        return Math.max(shift, MIN_CLASS_SHIFT);
+    }
+}
@@ -0,0 +1,135 @@
+package com.segway.robot.sample.aibox;
+
+/**
+ * Hand-off of frames from a callback thread to a worker thread where the newest frame wins.
+ * <p>
+ * The mailbox holds at most one frame: posting while a frame is still waiting replaces it and
+ * counts it as dropped, so a slow worker always continues with the freshest frame and never
+ * works through a backlog. Frames that are done with can be recycled and obtained again, so the
+ * poster and the worker cycle through at most three buffers: one being filled, one waiting and one
+ * being worked on.
+ */
+public class FrameMailbox<T> {
+    private static final int RECYCLED_CAPACITY = 3;
+
+    private T mFrame;
+    private long mPostTime;
+    private final Object[] mRecycled = new Object[RECYCLED_CAPACITY];
+    private int mRecycledCount;
+    private boolean mClosed;
+
+    private long mPostedCount;
+    private long mDroppedCount;
+    private long mLastQueueAge;
+    private long mMaxQueueAge;
+
+    /**
+     * @return a recycled frame to fill and post, or null if there is none and a new one has to be
+     * created
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized T obtain() {
+        if (mRecycledCount == 0) {
+            return null;
+        }
+        T frame = (T) mRecycled[--mRecycledCount];
+        mRecycled[mRecycledCount] = null;
+        return frame;
+    }
+
+    /**
+     * Hand a frame to the worker; never blocks.
+     *
+     * @return the waiting frame this one replaced, which the caller may fill again, the frame
+     * itself if the mailbox is closed, or null
+     */
+    public synchronized T post(T frame) {
+        if (frame == null) {
+            throw new IllegalArgumentException("frame is null");
+        }
+        if (mClosed) {
+            return frame;
+        }
+        T dropped = mFrame;
+        if (dropped != null) {
+            mDroppedCount++;
+        }
+        mFrame = frame;
+        mPostTime = System.nanoTime();
+        mPostedCount++;
+        notifyAll();
+        return dropped;
+    }
+
+    /**
+     * Wait for the next frame.
+     *
+     * @return the newest posted frame, or null once the mailbox is closed
+     */
+    public synchronized T take() throws InterruptedException {
+        while (mFrame == null && !mClosed) {
+            wait();
+        }
+        if (mClosed) {
+            return null;
+        }
+        T frame = mFrame;
+        mFrame = null;
+        mLastQueueAge = System.nanoTime() - mPostTime;
+        mMaxQueueAge = Math.max(mMaxQueueAge, mLastQueueAge);
+        return frame;
+    }
+
+    /**
+     * Give a frame taken from the mailbox back for {@link #obtain()}.
+     */
+    public synchronized void recycle(T frame) {
+        if (frame != null && !mClosed && mRecycledCount < RECYCLED_CAPACITY) {
+            mRecycled[mRecycledCount++] = frame;
+        }
+    }
+
+    /**
+     * Wake up the worker, {@link #take()} returns null from now on.
+     *
+     * @return the frame that was still waiting, or null
+     */
+    public synchronized T close() {
+        T frame = mFrame;
+        mClosed = true;
+        mFrame = null;
+        while (mRecycledCount > 0) {
+            mRecycled[--mRecycledCount] = null;
+        }
+        notifyAll();
+        return frame;
+    }
+
+    /**
+     * @return the number of frames posted so far
+     */
+    public synchronized long getPostedCount() {
+        return mPostedCount;
+    }
+
+    /**
+     * @return the number of frames replaced by a newer one before the worker took them
+     */
+    public synchronized long getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    /**
+     * @return nanoseconds the last taken frame waited in the mailbox
+     */
+    public synchronized long getLastQueueAge() {
+        return mLastQueueAge;
+    }
+
+    /**
+     * @return the longest time in nanoseconds a taken frame waited in the mailbox
+     */
+    public synchronized long getMaxQueueAge() {
+        return mMaxQueueAge;
+    }
+}
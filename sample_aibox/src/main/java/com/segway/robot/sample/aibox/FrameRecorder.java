@@ -0,0 +1,93 @@
+package com.segway.robot.sample.aibox;
+
+import android.util.Log;
+
+/**
+ * Writes frames on its own thread, so the threads that detect and convert frames never wait for
+ * the disk.
+ * <p>
+ * {@link #record} copies the frame into a recorder owned buffer and posts it to a
+ * {@link FrameMailbox}; while a write is running only the newest frame waits, older ones are
+ * dropped. The copy is the only work left on the calling thread, the buffers are recycled.
+ */
+public class FrameRecorder<T> {
+    private static final String TAG = "FrameRecorder";
+
+    public interface Writer<T> {
+        /**
+         * Copy {@code source} into {@code target}. Runs on the thread calling {@link #record}.
+         *
+         * @param target a frame written before, or null
+         * @return the copy, {@code target} itself if it fits
+         */
+        T copy(T source, T target);
+
+        /**
+         * Write a copied frame. Runs on the recorder thread.
+         */
+        void write(T frame) throws Exception;
+    }
+
+    private final Writer<T> mWriter;
+    private final FrameMailbox<T> mMailbox = new FrameMailbox<>();
+    private final Thread mThread;
+
+    public FrameRecorder(String name, Writer<T> writer) {
+        if (writer == null) {
+            throw new IllegalArgumentException("writer is null");
+        }
+        mWriter = writer;
+        mThread = new Thread(name) {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        T frame = mMailbox.take();
+                        if (frame == null) {
+                            break;
+                        }
+                        try {
+                            mWriter.write(frame);
+                        } catch (Exception e) {
+                            Log.w(TAG, "Cannot record a frame", e);
+                        }
+                        mMailbox.recycle(frame);
+                    }
+                } catch (InterruptedException e) {
+                    Log.d(TAG, "Recorder interrupted");
+                }
+            }
+        };
+        mThread.start();
+    }
+
+    /**
+     * Hand a copy of {@code frame} to the recorder thread; never waits for a write.
+     */
+    public void record(T frame) {
+        T copy = mWriter.copy(frame, mMailbox.obtain());
+        T replaced = mMailbox.post(copy);
+        if (replaced != null && replaced != copy) {
+            mMailbox.recycle(replaced);
+        }
+    }
+
+    /**
+     * @return the number of frames replaced by a newer one before they were written
+     */
+    public long getDroppedCount() {
+        return mMailbox.getDroppedCount();
+    }
+
+    /**
+     * Stop the recorder thread after the running write; a frame still waiting is not written.
+     */
+    public void close() {
+        mMailbox.close();
+        try {
+            mThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
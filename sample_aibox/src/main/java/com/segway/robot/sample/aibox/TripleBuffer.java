@@ -0,0 +1,68 @@
+package com.segway.robot.sample.aibox;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free exchange of the latest value between one producer and one consumer thread.
+ * <p>
+ * The three slots are the back slot, which only the producer writes, the front slot, which only
+ * the consumer reads, and a middle slot handed between them with an atomic swap. The producer
+ * fills {@link #back()} and calls {@link #publish()}; the consumer calls {@link #update()} and
+ * reads {@link #front()}. Neither side ever waits for the other, a slot is never visible to both
+ * at once, and a consumer that falls behind simply skips to the newest published slot.
+ */
+public class TripleBuffer<T> {
+    private static final int INDEX_MASK = 3;
+    private static final int DIRTY = 4;
+
+    private final Object[] mSlots;
+    // index of the middle slot, with DIRTY set while it holds a value the consumer has not taken
+    private final AtomicInteger mMiddle = new AtomicInteger(1);
+    private int mBack = 0;
+    private int mFront = 2;
+
+    public TripleBuffer(T first, T second, T third) {
+        if (first == null || second == null || third == null) {
+            throw new IllegalArgumentException("slot is null");
+        }
+        mSlots = new Object[]{first, second, third};
+    }
+
+    /**
+     * @return the slot the producer may write; only call from the producer thread
+     */
+    @SuppressWarnings("unchecked")
+    public T back() {
+        return (T) mSlots[mBack];
+    }
+
+    /**
+     * Hand the back slot to the consumer and take the middle slot as the new back slot.
+     * Only call from the producer thread.
+     */
+    public void publish() {
+        mBack = mMiddle.getAndSet(mBack | DIRTY) & INDEX_MASK;
+    }
+
+    /**
+     * Take the most recently published slot as the front slot, if there is a new one.
+     * Only call from the consumer thread.
+     *
+     * @return true if {@link #front()} changed
+     */
+    public boolean update() {
+        if ((mMiddle.get() & DIRTY) == 0) {
+            return false;
+        }
+        mFront = mMiddle.getAndSet(mFront) & INDEX_MASK;
+        return true;
+    }
+
+    /**
+     * @return the slot the consumer may read; only call from the consumer thread
+     */
+    @SuppressWarnings("unchecked")
+    public T front() {
+        return (T) mSlots[mFront];
+    }
+}
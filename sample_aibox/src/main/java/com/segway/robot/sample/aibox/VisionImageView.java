@@ -14,7 +14,9 @@ import java.util.List;
 public class VisionImageView extends ImageView {
 
     private static final int LINE_SIZE = 20;
+    // pooled rectangles, the first mRectCount are marked
     private List<RectF> mRectList = new ArrayList<>();
+    private int mRectCount;
     private Paint mPaint;
 
     public VisionImageView(Context context) {
@@ -34,11 +36,35 @@ public class VisionImageView extends ImageView {
     }
 
     public void mark(List<RectF> list) {
-        mRectList.clear();
-        mRectList.addAll(list);
+        mRectCount = 0;
+        for (RectF rectF : list) {
+            obtainRect().set(rectF);
+        }
+        invalidate();
+    }
+
+    /**
+     * Mark the detected boxes with their coordinates multiplied by {@code scale}, reusing the
+     * rectangles of earlier frames.
+     */
+    public void mark(DetectionResults results, float scale) {
+        mRectCount = 0;
+        if (results != null) {
+            for (int i = 0; i < results.size(); i++) {
+                obtainRect().set(results.getX1(i) * scale, results.getY1(i) * scale,
+                        results.getX2(i) * scale, results.getY2(i) * scale);
+            }
+        }
         invalidate();
     }
 
+    private RectF obtainRect() {
+        if (mRectCount == mRectList.size()) {
+            mRectList.add(new RectF());
+        }
+        return mRectList.get(mRectCount++);
+    }
+
     @Override
     public void draw(Canvas canvas) {
         super.draw(canvas);
@@ -50,8 +76,8 @@ public class VisionImageView extends ImageView {
             mPaint.setTextSize(LINE_SIZE);
             mPaint.setStyle(Paint.Style.STROKE);
         }
-        for(RectF rectF : mRectList) {
-            canvas.drawRect(rectF, mPaint);
+        for(int i = 0; i < mRectCount; i++) {
+            canvas.drawRect(mRectList.get(i), mPaint);
         }
         canvas.restore();
     }
@@ -1,7 +1,100 @@
 package com.segway.robot.sample.aibox;
 
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+
 import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
 
 public class VisionNative {
     public static native DetectedResult[] nativeDetect(ByteBuffer data, int format, int width, int height);
+
+    /**
+     * Detect on a frame starting {@code offset} bytes into a direct buffer, e.g. the mapped memory
+     * file of a vision frame, without copying it first. The buffer is only read during the call.
+     *
+     * @return the detected objects, or null if the frame does not fit into the buffer or the
+     * format is unknown
+     */
+    public static native DetectedResult[] nativeDetectAt(ByteBuffer data, int offset, int format, int width,
+                                                         int height);
+
+    /**
+     * Detect like {@link #nativeDetectAt} and write the boxes into a direct float buffer without
+     * allocating: the count first, then classId, x1, y1, x2, y2 and score per box. Boxes that do
+     * not fit into the buffer are dropped.
+     *
+     * @param results usually {@link DetectionResults#getBuffer()}
+     * @return the number of boxes written, or -1 if the frame or the results buffer is invalid
+     */
+    public static native int nativeDetectInto(ByteBuffer data, int offset, int format, int width, int height,
+                                              FloatBuffer results);
+
+    /**
+     * {@link #nativeDetectInto(ByteBuffer, int, int, int, int, FloatBuffer)} with the detector of
+     * {@code handle} instead of the default one.
+     */
+    public static native int nativeDetectInto(long handle, ByteBuffer data, int offset, int format, int width,
+                                              int height, FloatBuffer results);
+
+    /**
+     * Detect on a batch of YUV420 frames of the same size with a single inference, for offline
+     * processing: the batch runs on a CPU interpreter resized to {@code frames.length} frames,
+     * which is kept until a batch of another size comes. The boxes of {@code frames[i]} are
+     * written into {@code results[i]} like {@link #nativeDetectInto}.
+     *
+     * @return the number of frames processed, or -1 if a frame or results buffer is invalid or
+     * the batch cannot be run
+     */
+    public static native int nativeDetectBatch(long handle, ByteBuffer[] frames, int format, int width, int height,
+                                               FloatBuffer[] results);
+
+    /**
+     * Load the model from a file.
+     *
+     * @return the detector handle, or 0 if the model cannot be loaded
+     */
+    public static native long nativeCreate(String modelPath, boolean gpu);
+
+    /**
+     * Load the model mapped from an asset, which has to be stored uncompressed.
+     *
+     * @return the detector handle, or 0 if the model cannot be loaded
+     */
+    public static native long nativeCreateFromAsset(AssetManager assets, String assetName, boolean gpu);
+
+    /**
+     * Run one inference on a blank frame of the given size, so the first frame is not slowed
+     * down by the delegate initialisation.
+     */
+    public static native boolean nativeWarmUp(long handle, int width, int height);
+
+    /**
+     * Load another model file and swap it in once it is warmed up; detections keep using the
+     * current model meanwhile.
+     *
+     * @return false if the model cannot be loaded, the current model stays in use then
+     */
+    public static native boolean nativeReload(long handle, String modelPath);
+
+    public static native void nativeDestroy(long handle);
+
+    /**
+     * Write every {@code interval}-th detection input, as the network sees it, into
+     * {@code directory} as a JPEG. The files are written on a background thread.
+     *
+     * @param interval 0 or a null directory disables the dump
+     */
+    public static native void nativeSetDebugDump(String directory, int interval);
+
+    /**
+     * Convert a YUV frame straight into the pixels of an ARGB_8888 bitmap.
+     *
+     * @param data   direct buffer holding the frame
+     * @param format one of the YuvConverter.FORMAT_* constants
+     * @param scale  downscale factor, the bitmap must be {@code width / scale} x {@code height / scale}
+     * @return false if the buffer is not direct, the bitmap does not match or the format is unknown
+     */
+    public static native boolean nativeYuvToBitmap(ByteBuffer data, int format, int width, int height, int scale,
+                                                   Bitmap bitmap);
 }
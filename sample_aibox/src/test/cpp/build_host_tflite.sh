@@ -0,0 +1,28 @@
+#!/bin/sh
+# Build a host TensorFlow Lite of the vendored version for perception_backend_test, laid out as
+# TFLITE_ROOT/include and TFLITE_ROOT/lib:
+#   sh sample_aibox/src/test/cpp/build_host_tflite.sh build/tflite
+#   cmake -S sample_aibox/src/test/cpp -B build/host-tests -DTFLITE_ROOT=$PWD/build/tflite
+#   cmake --build build/host-tests && ctest --test-dir build/host-tests --output-on-failure
+# Needs network access, git, bash and make; the test itself also needs a host OpenCV (libopencv-dev).
+# TFLITE_VERSION picks another tag, keep it in line with the headers under dependency/.
+set -e
+
+ROOT=${1:-build/tflite}
+VERSION=${TFLITE_VERSION:-v2.1.0}
+mkdir -p "$ROOT"
+ROOT=$(cd "$ROOT" && pwd)
+SRC=$ROOT/src
+
+if [ ! -d "$SRC" ]; then
+    git clone --depth 1 --branch "$VERSION" https://github.com/tensorflow/tensorflow.git "$SRC"
+fi
+cd "$SRC"
+bash tensorflow/lite/tools/make/download_dependencies.sh
+make -j"$(nproc)" -f tensorflow/lite/tools/make/Makefile lib
+
+mkdir -p "$ROOT/include" "$ROOT/lib"
+cp tensorflow/lite/tools/make/gen/linux_*/lib/libtensorflow-lite.a "$ROOT/lib/"
+find tensorflow/lite -name '*.h' -not -path '*/downloads/*' -exec cp --parents {} "$ROOT/include" \;
+cp -r tensorflow/lite/tools/make/downloads/flatbuffers/include/flatbuffers "$ROOT/include/"
+echo "TFLITE_ROOT=$ROOT"
@@ -0,0 +1,238 @@
+// Host test and benchmark of yolo/NonMaxSuppression against a straightforward reference and the
+// erase-based nms() it replaces. The timings need -O3 with GCC, see CMakeLists.txt.
+
+#include "yolo/NonMaxSuppression.h"
+#include "test_util.h"
+
+#include <algorithm>
+#include <chrono>
+#include <cmath>
+#include <cstdio>
+#include <cstdlib>
+#include <random>
+#include <vector>
+
+using ninebot_algo::cnn_ninebot::bbox;
+
+static bbox makeBox(int classId, float x1, float y1, float x2, float y2, float score) {
+    bbox box;
+    box.classId = classId;
+    box.x1 = x1;
+    box.y1 = y1;
+    box.x2 = x2;
+    box.y2 = y2;
+    box.score = score;
+    return box;
+}
+
+static float area(const bbox &box) {
+    return (box.x2 - box.x1) * (box.y2 - box.y1);
+}
+
+// greedy hard NMS written the obvious way
+static std::vector<bbox> reference(std::vector<bbox> boxes, int classes, float thresh) {
+    std::vector<bbox> kept;
+    for (int cls = 0; cls < classes; cls++) {
+        std::vector<bbox> remaining;
+        for (const bbox &box : boxes) {
+            if (box.classId == cls) {
+                remaining.push_back(box);
+            }
+        }
+        std::sort(remaining.begin(), remaining.end(), [](const bbox &a, const bbox &b) {
+            return a.score > b.score;
+        });
+        std::vector<bool> dropped(remaining.size(), false);
+        for (size_t i = 0; i < remaining.size(); i++) {
+            if (dropped[i]) {
+                continue;
+            }
+            kept.push_back(remaining[i]);
+            for (size_t j = i + 1; j < remaining.size(); j++) {
+                float w = std::min(remaining[i].x2, remaining[j].x2) - std::max(remaining[i].x1, remaining[j].x1);
+                float h = std::min(remaining[i].y2, remaining[j].y2) - std::max(remaining[i].y1, remaining[j].y1);
+                if (w > 0 && h > 0) {
+                    float inter = w * h;
+                    if (inter / (area(remaining[i]) + area(remaining[j]) - inter) > thresh) {
+                        dropped[j] = true;
+                    }
+                }
+            }
+        }
+    }
+    return kept;
+}
+
+// the former ApplePerception nms(), for the benchmark
+static bool comp(const bbox &a, const bbox &b) {
+    return a.score > b.score;
+}
+
+static std::vector<bbox> eraseNms(std::vector<bbox> boxes, int classes, float thresh) {
+    std::vector<bbox> res;
+    for (int i = 0; i < classes; i++) {
+        std::vector<bbox> res_one_cls;
+        for (size_t j = 0; j < boxes.size(); j++) {
+            if (boxes[j].classId == i)
+                res_one_cls.push_back(boxes[j]);
+        }
+        std::sort(res_one_cls.begin(), res_one_cls.end(), comp);
+        for (size_t j = 0; j < res_one_cls.size(); j++) {
+            float area = (res_one_cls[j].x2 - res_one_cls[j].x1 + 0.0001)
+                         * (res_one_cls[j].y2 - res_one_cls[j].y1 + 0.0001);
+            for (size_t k = res_one_cls.size() - 1; k > j; k--) {
+                float xx1 = std::max(res_one_cls[j].x1, res_one_cls[k].x1);
+                float xx2 = std::min(res_one_cls[j].x2, res_one_cls[k].x2);
+                float yy1 = std::max(res_one_cls[j].y1, res_one_cls[k].y1);
+                float yy2 = std::min(res_one_cls[j].y2, res_one_cls[k].y2);
+                float w = xx2 - xx1 + 0.0001;
+                float h = yy2 - yy1 + 0.0001;
+                if (w > 0 && h > 0) {
+                    float o = w * h / area;
+                    if (o > thresh) {
+                        res_one_cls.erase(res_one_cls.begin() + k);
+                    }
+                }
+            }
+        }
+        res.insert(res.end(), res_one_cls.begin(), res_one_cls.end());
+    }
+    return res;
+}
+
+// clusters of jittered boxes around a few objects, as a detector produces them
+static std::vector<bbox> clusters(int count, int classes, unsigned seed) {
+    std::mt19937 random(seed);
+    std::uniform_real_distribution<float> unit(0.f, 1.f);
+    std::normal_distribution<float> jitter(0.f, 0.02f);
+    std::vector<bbox> objects;
+    for (int i = 0; i < 20; i++) {
+        float x = unit(random) * 0.8f;
+        float y = unit(random) * 0.8f;
+        objects.push_back(makeBox(i % classes, x, y, x + 0.05f + unit(random) * 0.15f,
+                                  y + 0.05f + unit(random) * 0.15f, 0));
+    }
+    std::vector<bbox> boxes;
+    for (int i = 0; i < count; i++) {
+        const bbox &object = objects[random() % objects.size()];
+        boxes.push_back(makeBox(object.classId, object.x1 + jitter(random), object.y1 + jitter(random),
+                                object.x2 + jitter(random), object.y2 + jitter(random), unit(random)));
+    }
+    return boxes;
+}
+
+static bool sameBoxes(const std::vector<bbox> &a, const std::vector<bbox> &b) {
+    if (a.size() != b.size()) {
+        return false;
+    }
+    for (size_t i = 0; i < a.size(); i++) {
+        if (a[i].classId != b[i].classId || a[i].score != b[i].score || a[i].x1 != b[i].x1) {
+            return false;
+        }
+    }
+    return true;
+}
+
+static void testMatchesReference() {
+    for (unsigned seed = 1; seed <= 5; seed++) {
+        std::vector<bbox> boxes = clusters(500, 3, seed);
+        yolo::NmsConfig config;
+        config.classes = 3;
+        yolo::NonMaxSuppression nms(config);
+        std::vector<bbox> kept;
+        nms.run(boxes, kept);
+        CHECK(sameBoxes(kept, reference(boxes, 3, config.iouThresh)));
+    }
+}
+
+static void testTrueIou() {
+    // b lies inside a: it covers all of b but only a quarter of a's area, an IoU of 0.25
+    std::vector<bbox> boxes = {makeBox(0, 0, 0, 1, 1, 0.9f), makeBox(0, 0, 0, 0.5f, 0.5f, 0.8f)};
+    yolo::NmsConfig config;
+    config.iouThresh = 0.3f;
+    yolo::NonMaxSuppression nms(config);
+    std::vector<bbox> kept;
+    nms.run(boxes, kept);
+    CHECK(kept.size() == 2);
+    config.iouThresh = 0.2f;
+    yolo::NonMaxSuppression stricter(config);
+    stricter.run(boxes, kept);
+    CHECK(kept.size() == 1);
+    CHECK(std::fabs(yolo::NonMaxSuppression::iou(boxes[0], 1, boxes[1], 0.25f) - 0.25f) < 1e-6f);
+
+    // classes are suppressed independently, unknown classes are dropped
+    boxes = {makeBox(0, 0, 0, 1, 1, 0.9f), makeBox(1, 0, 0, 1, 1, 0.8f), makeBox(5, 0, 0, 1, 1, 0.7f)};
+    config.classes = 2;
+    yolo::NonMaxSuppression twoClasses(config);
+    twoClasses.run(boxes, kept);
+    CHECK(kept.size() == 2);
+}
+
+static void testTopK() {
+    std::vector<bbox> boxes;
+    for (int i = 0; i < 10; i++) {
+        // disjoint boxes, scores 0.0 .. 0.9
+        boxes.push_back(makeBox(0, i * 0.1f, 0, i * 0.1f + 0.05f, 0.05f, i * 0.1f));
+    }
+    yolo::NmsConfig config;
+    config.topK = 3;
+    yolo::NonMaxSuppression nms(config);
+    std::vector<bbox> kept;
+    nms.run(boxes, kept);
+    CHECK(kept.size() == 3);
+    CHECK(kept[0].score == boxes[9].score && kept[2].score == boxes[7].score);
+}
+
+static void testSoftNms() {
+    // b overlaps a with an IoU of 0.6: hard NMS drops it, Soft-NMS keeps it with a lower score
+    std::vector<bbox> boxes = {makeBox(0, 0, 0, 1, 1, 0.9f), makeBox(0, 0, 0, 0.6f, 1, 0.8f),
+                               makeBox(0, 2, 2, 3, 3, 0.5f)};
+    yolo::NmsConfig config;
+    config.soft = true;
+    config.softSigma = 0.5f;
+    yolo::NonMaxSuppression nms(config);
+    std::vector<bbox> kept;
+    nms.run(boxes, kept);
+    CHECK(kept.size() == 3);
+    CHECK(kept[0].score == 0.9f);
+    CHECK(kept[1].score == 0.5f);
+    CHECK(std::fabs(kept[2].score - 0.8f * std::exp(-0.36f / 0.5f)) < 1e-6f);
+
+    // a tight sigma pushes the overlapping box below the score threshold
+    config.softSigma = 0.05f;
+    config.softScoreThresh = 0.1f;
+    yolo::NonMaxSuppression tight(config);
+    tight.run(boxes, kept);
+    CHECK(kept.size() == 2);
+}
+
+static void benchmark(int count) {
+    const int runs = count > 2000 ? 5 : 50;
+    std::vector<bbox> boxes = clusters(count, 1, 42);
+    yolo::NmsConfig config;
+    yolo::NonMaxSuppression nms(config);
+    std::vector<bbox> kept;
+    nms.run(boxes, kept);
+    auto start = std::chrono::steady_clock::now();
+    for (int i = 0; i < runs; i++) {
+        nms.run(boxes, kept);
+    }
+    auto masked = std::chrono::steady_clock::now();
+    for (int i = 0; i < runs; i++) {
+        eraseNms(boxes, 1, config.iouThresh);
+    }
+    auto erase = std::chrono::steady_clock::now();
+    std::printf("%d boxes: mask %.3f ms, erase %.3f ms, %zu kept\n", count,
+                std::chrono::duration<double, std::milli>(masked - start).count() / runs,
+                std::chrono::duration<double, std::milli>(erase - masked).count() / runs, kept.size());
+}
+
+int main() {
+    testMatchesReference();
+    testTrueIou();
+    testTopK();
+    testSoftNms();
+    benchmark(500);
+    benchmark(5000);
+    return testResult();
+}
@@ -0,0 +1,100 @@
+// Host test of the backend selection of ApplePerception on a machine without a GPU: a one-op model
+// built in memory must end up on a working CPU interpreter whichever backend is asked for.
+// Needs a host TensorFlow Lite, build one with build_host_tflite.sh.
+
+#include "ApplePerception.h"
+#include "test_util.h"
+
+#include "tensorflow/lite/schema/schema_generated.h"
+
+#include <vector>
+
+using ninebot_algo::cnn_ninebot::ApplePerception;
+using ninebot_algo::cnn_ninebot::inference_backend;
+using ninebot_algo::cnn_ninebot::segmentor_config;
+
+static const int kSize = 16;
+
+// output = input + input, on a 1 x kSize x kSize x 3 float input
+static std::vector<char> addModel() {
+    flatbuffers::FlatBufferBuilder fbb;
+    std::vector<int32_t> shape{1, kSize, kSize, 3};
+    std::vector<flatbuffers::Offset<tflite::Tensor>> tensors{
+            tflite::CreateTensor(fbb, fbb.CreateVector(shape), tflite::TensorType_FLOAT32, 0, fbb.CreateString("input")),
+            tflite::CreateTensor(fbb, fbb.CreateVector(shape), tflite::TensorType_FLOAT32, 0, fbb.CreateString("output"))};
+    std::vector<int32_t> addInputs{0, 0};
+    std::vector<int32_t> inputs{0};
+    std::vector<int32_t> outputs{1};
+    std::vector<flatbuffers::Offset<tflite::Operator>> operators{
+            tflite::CreateOperator(fbb, 0, fbb.CreateVector(addInputs), fbb.CreateVector(outputs),
+                    tflite::BuiltinOptions_AddOptions, tflite::CreateAddOptions(fbb).Union())};
+    std::vector<flatbuffers::Offset<tflite::SubGraph>> subgraphs{
+            tflite::CreateSubGraph(fbb, fbb.CreateVector(tensors), fbb.CreateVector(inputs),
+                    fbb.CreateVector(outputs), fbb.CreateVector(operators))};
+    tflite::OperatorCodeBuilder code(fbb);
+    code.add_builtin_code(tflite::BuiltinOperator_ADD);
+    std::vector<flatbuffers::Offset<tflite::OperatorCode>> codes{code.Finish()};
+    // buffer 0 is the empty buffer of the tensors without data; 3 is the schema version
+    std::vector<flatbuffers::Offset<tflite::Buffer>> buffers{tflite::CreateBuffer(fbb)};
+    tflite::FinishModelBuffer(fbb, tflite::CreateModel(fbb, 3, fbb.CreateVector(codes),
+            fbb.CreateVector(subgraphs), fbb.CreateString("add"), fbb.CreateVector(buffers)));
+    const char *data = reinterpret_cast<const char *>(fbb.GetBufferPointer());
+    return std::vector<char>(data, data + fbb.GetSize());
+}
+
+static segmentor_config config(const std::vector<char> &model, inference_backend backend, int threads) {
+    segmentor_config cfg;
+    cfg.model_data = model.data();
+    cfg.model_size = model.size();
+    cfg.input_width = kSize;
+    cfg.input_height = kSize;
+    cfg.backend = backend;
+    cfg.num_threads = threads;
+    cfg.benchmark_runs = 1;
+    return cfg;
+}
+
+int main() {
+    std::vector<char> model = addModel();
+#ifdef HAS_XNNPACK_DELEGATE
+    const inference_backend cpuFallback = inference_backend::xnnpack;
+#else
+    const inference_backend cpuFallback = inference_backend::cpu;
+#endif
+
+    {
+        ApplePerception perception(config(model, inference_backend::cpu, 0));
+        CHECK(perception.is_ready());
+        CHECK(perception.active_backend() == inference_backend::cpu);
+    }
+    {
+        ApplePerception perception(config(model, inference_backend::cpu, 2));
+        CHECK(perception.is_ready());
+        CHECK(perception.active_backend() == inference_backend::cpu);
+    }
+    {
+        // there is no GPU delegate off Android
+        ApplePerception perception(config(model, inference_backend::gpu, 0));
+        CHECK(perception.is_ready());
+        CHECK(perception.active_backend() == cpuFallback);
+    }
+    {
+        ApplePerception perception(config(model, inference_backend::xnnpack, 0));
+        CHECK(perception.is_ready());
+        CHECK(perception.active_backend() == cpuFallback);
+    }
+    {
+        ApplePerception perception(config(model, inference_backend::fastest, 0));
+        CHECK(perception.is_ready());
+        CHECK(perception.active_backend() != inference_backend::gpu);
+    }
+    {
+        segmentor_config missing = config(model, inference_backend::cpu, 0);
+        missing.model_data = nullptr;
+        missing.frozen_net_path = "/nonexistent/model.tflite";
+        ApplePerception perception(missing);
+        CHECK(!perception.is_ready());
+    }
+
+    return testResult();
+}
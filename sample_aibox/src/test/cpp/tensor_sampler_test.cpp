@@ -0,0 +1,236 @@
+// Host test of yuv/TensorSampler against the OpenCV chain it replaces:
+//   cvtColor(COLOR_YUV2BGR_NV12) -> roi(crop) -> resize(INTER_NEAREST) -> convertTo(CV_32F)
+// The chain is reproduced step by step with OpenCV's scalar arithmetic; when OpenCV is available
+// on the host (TEST_WITH_OPENCV) the real calls are compared as well.
+
+#include "yuv/TensorSampler.h"
+#include "test_util.h"
+
+#include <algorithm>
+#include <chrono>
+#include <cmath>
+#include <cstdio>
+#include <cstdlib>
+#include <random>
+#include <vector>
+
+#ifdef TEST_WITH_OPENCV
+#include <opencv2/imgproc.hpp>
+#endif
+
+using ninebot_algo::cnn_ninebot::element_type;
+using ninebot_algo::cnn_ninebot::tensor_format;
+
+static uint8_t saturate(int value) {
+    return (uint8_t) (value < 0 ? 0 : (value > 255 ? 255 : value));
+}
+
+// cvtColor(COLOR_YUV2BGR_NV12), as in OpenCV's YUV420sp2RGB888Invoker
+static std::vector<uint8_t> nv12ToBgr(const std::vector<uint8_t> &frame, int width, int height) {
+    std::vector<uint8_t> bgr((size_t) width * height * 3);
+    const uint8_t *chroma = frame.data() + (size_t) width * height;
+    for (int row = 0; row < height; row++) {
+        for (int x = 0; x < width; x++) {
+            const uint8_t *uv = chroma + (size_t) (row / 2) * width + (x & ~1);
+            int u = uv[0] - 128;
+            int v = uv[1] - 128;
+            int ruv = (1 << 19) + 1673527 * v;
+            int guv = (1 << 19) - 852492 * v - 409993 * u;
+            int buv = (1 << 19) + 2116026 * u;
+            int y = std::max(0, frame[(size_t) row * width + x] - 16) * 1220542;
+            uint8_t *pixel = &bgr[((size_t) row * width + x) * 3];
+            pixel[0] = saturate((y + buv) >> 20);
+            pixel[1] = saturate((y + guv) >> 20);
+            pixel[2] = saturate((y + ruv) >> 20);
+        }
+    }
+    return bgr;
+}
+
+// roi(crop) -> resize(INTER_NEAREST) -> convertTo(CV_32F, 1 / 255.)
+static std::vector<float> referenceChain(const std::vector<uint8_t> &frame, int width, int height,
+                                         int cropX, int cropY, int cropWidth, int cropHeight,
+                                         int dstWidth, int dstHeight) {
+    std::vector<uint8_t> bgr = nv12ToBgr(frame, width, height);
+    std::vector<float> tensor((size_t) dstWidth * dstHeight * 3);
+    double ifx = 1. / ((double) dstWidth / cropWidth);
+    double ify = 1. / ((double) dstHeight / cropHeight);
+    float scale = (float) (1.0 / 255);
+    for (int row = 0; row < dstHeight; row++) {
+        int sy = std::min((int) std::floor(row * ify), cropHeight - 1) + cropY;
+        for (int x = 0; x < dstWidth; x++) {
+            int sx = std::min((int) std::floor(x * ifx), cropWidth - 1) + cropX;
+            for (int c = 0; c < 3; c++) {
+                tensor[((size_t) row * dstWidth + x) * 3 + c] = bgr[((size_t) sy * width + sx) * 3 + c] * scale;
+            }
+        }
+    }
+    return tensor;
+}
+
+static std::vector<uint8_t> randomFrame(int width, int height, unsigned seed) {
+    std::mt19937 random(seed);
+    std::vector<uint8_t> frame((size_t) width * height * 3 / 2);
+    for (auto &value : frame) {
+        value = (uint8_t) random();
+    }
+    return frame;
+}
+
+static float maxDifference(const std::vector<float> &a, const std::vector<float> &b) {
+    float worst = 0;
+    for (size_t i = 0; i < a.size(); i++) {
+        worst = std::max(worst, std::fabs(a[i] - b[i]));
+    }
+    return worst;
+}
+
+static void testMatchesChain(int width, int height, int cropX, int cropY, int cropWidth, int cropHeight,
+                             int dstWidth, int dstHeight) {
+    std::vector<uint8_t> frame = randomFrame(width, height, (unsigned) (width * 31 + cropX));
+    std::vector<float> tensor((size_t) dstWidth * dstHeight * 3);
+    yuv::TensorSampler sampler;
+    CHECK(sampler.nv12ToTensor(frame.data(), frame.size(), width, height, cropX, cropY, cropWidth, cropHeight,
+                               tensor.data(), dstWidth, dstHeight));
+    std::vector<float> expected = referenceChain(frame, width, height, cropX, cropY, cropWidth, cropHeight,
+                                                 dstWidth, dstHeight);
+    float worst = maxDifference(tensor, expected);
+    std::printf("%dx%d crop %d,%d %dx%d -> %dx%d: max difference %g\n", width, height, cropX, cropY,
+                cropWidth, cropHeight, dstWidth, dstHeight, worst);
+    CHECK(worst <= 1e-6f);
+
+#ifdef TEST_WITH_OPENCV
+    cv::Mat yuvFrame(height + height / 2, width, CV_8UC1, frame.data());
+    cv::Mat bgr, resized, normalized;
+    cv::cvtColor(yuvFrame, bgr, cv::COLOR_YUV2BGR_NV12);
+    cv::resize(bgr(cv::Rect(cropX, cropY, cropWidth, cropHeight)), resized, cv::Size(dstWidth, dstHeight),
+               0, 0, cv::INTER_NEAREST);
+    resized.convertTo(normalized, CV_32F, 1.0 / 255, 0);
+    std::vector<float> opencv((float *) normalized.data, (float *) normalized.data + tensor.size());
+    float opencvWorst = maxDifference(tensor, opencv);
+    std::printf("  against OpenCV: max difference %g\n", opencvWorst);
+    CHECK(opencvWorst <= 1e-6f);
+#endif
+}
+
+static void testMeanStd() {
+    const int width = 32;
+    const int height = 16;
+    std::vector<uint8_t> frame = randomFrame(width, height, 3);
+    const float mean[3] = {0.5f, 0.25f, 0.125f};
+    const float deviation[3] = {0.5f, 0.25f, 2.f};
+    std::vector<float> plain((size_t) width * height * 3);
+    std::vector<float> normalized(plain.size());
+    yuv::TensorSampler sampler;
+    CHECK(sampler.nv12ToTensor(frame.data(), frame.size(), width, height, 0, 0, width, height,
+                               plain.data(), width, height));
+    sampler.setMeanStd(mean, deviation);
+    CHECK(sampler.nv12ToTensor(frame.data(), frame.size(), width, height, 0, 0, width, height,
+                               normalized.data(), width, height));
+    float worst = 0;
+    for (size_t i = 0; i < plain.size(); i++) {
+        int c = (int) (i % 3);
+        worst = std::max(worst, std::fabs(normalized[i] - (plain[i] - mean[c]) / deviation[c]));
+    }
+    CHECK(worst <= 1e-5f);
+}
+
+// An 8 bit BGR image sampled with a row stride, as a cv::Mat roi, matches the NV12 path.
+static void testBgrMatchesNv12() {
+    const int width = 96;
+    const int height = 64;
+    const int cropX = 7, cropY = 3, cropWidth = 61, cropHeight = 53;
+    std::vector<uint8_t> frame = randomFrame(width, height, 11);
+    std::vector<uint8_t> bgr = nv12ToBgr(frame, width, height);
+    std::vector<float> fromNv12(40 * 24 * 3);
+    std::vector<float> fromBgr(fromNv12.size());
+    yuv::TensorSampler sampler;
+    CHECK(sampler.nv12ToTensor(frame.data(), frame.size(), width, height, cropX, cropY, cropWidth, cropHeight,
+                               fromNv12.data(), 40, 24));
+    CHECK(sampler.bgrToTensor(&bgr[((size_t) cropY * width + cropX) * 3], (size_t) width * 3, cropWidth, cropHeight,
+                              fromBgr.data(), 40, 24));
+    CHECK(maxDifference(fromNv12, fromBgr) == 0);
+    CHECK(!sampler.bgrToTensor(bgr.data(), (size_t) width * 3 - 1, width, height, fromBgr.data(), 40, 24));
+}
+
+// Quantised tensors hold round(v / scale) + zero_point of the float values, saturated.
+static void testQuantized(element_type type, float scale, int zeroPoint) {
+    const int width = 64;
+    const int height = 48;
+    std::vector<uint8_t> frame = randomFrame(width, height, 13);
+    std::vector<float> plain((size_t) width * height * 3);
+    std::vector<uint8_t> quantized(plain.size());
+    yuv::TensorSampler sampler;
+    CHECK(sampler.nv12ToTensor(frame.data(), frame.size(), width, height, 0, 0, width, height,
+                               plain.data(), width, height));
+    tensor_format format;
+    format.type = type;
+    format.scale = scale;
+    format.zero_point = zeroPoint;
+    sampler.setFormat(format);
+    CHECK(sampler.nv12ToTensor(frame.data(), frame.size(), width, height, 0, 0, width, height,
+                               quantized.data(), width, height));
+    const int low = type == element_type::int8 ? -128 : 0;
+    int mismatches = 0;
+    for (size_t i = 0; i < plain.size(); i++) {
+        int expected = std::min(low + 255, std::max(low, (int) std::lround(plain[i] / scale) + zeroPoint));
+        int actual = type == element_type::int8 ? (int) (int8_t) quantized[i] : (int) quantized[i];
+        mismatches += actual != expected;
+    }
+    CHECK(mismatches == 0);
+}
+
+static void testRejectsBadInput() {
+    std::vector<uint8_t> frame(64 * 48 * 3 / 2);
+    std::vector<float> tensor(16 * 16 * 3);
+    yuv::TensorSampler sampler;
+    CHECK(!sampler.nv12ToTensor(frame.data(), frame.size() - 1, 64, 48, 0, 0, 64, 48, tensor.data(), 16, 16));
+    CHECK(!sampler.nv12ToTensor(frame.data(), frame.size(), 63, 48, 0, 0, 63, 48, tensor.data(), 16, 16));
+    CHECK(!sampler.nv12ToTensor(frame.data(), frame.size(), 64, 48, 8, 0, 64, 48, tensor.data(), 16, 16));
+    CHECK(!sampler.nv12ToTensor(frame.data(), frame.size(), 64, 48, -1, 0, 32, 48, tensor.data(), 16, 16));
+    CHECK(!sampler.nv12ToTensor(frame.data(), frame.size(), 64, 48, 0, 0, 0, 48, tensor.data(), 16, 16));
+    CHECK(!sampler.nv12ToTensor(nullptr, frame.size(), 64, 48, 0, 0, 64, 48, tensor.data(), 16, 16));
+    CHECK(!sampler.nv12ToTensor(frame.data(), frame.size(), 64, 48, 0, 0, 64, 48, tensor.data(), 0, 16));
+}
+
+// Rough timing of the fused kernel against the multi-pass chain, for a 1920x1080 camera frame.
+static void benchmark() {
+    const int width = 1920;
+    const int height = 1080;
+    const int runs = 20;
+    std::vector<uint8_t> frame = randomFrame(width, height, 5);
+    std::vector<float> tensor(512 * 512 * 3);
+    yuv::TensorSampler sampler;
+    auto start = std::chrono::steady_clock::now();
+    for (int i = 0; i < runs; i++) {
+        sampler.nv12ToTensor(frame.data(), frame.size(), width, height, 240, 0, 1440, 1080,
+                             tensor.data(), 512, 512);
+    }
+    auto fused = std::chrono::steady_clock::now();
+    for (int i = 0; i < runs; i++) {
+        referenceChain(frame, width, height, 240, 0, 1440, 1080, 512, 512);
+    }
+    auto chain = std::chrono::steady_clock::now();
+    std::printf("1920x1080 -> 512x512: fused %.2f ms, multi-pass %.2f ms\n",
+                std::chrono::duration<double, std::milli>(fused - start).count() / runs,
+                std::chrono::duration<double, std::milli>(chain - fused).count() / runs);
+}
+
+int main() {
+    // the crops AlgoApplePerception uses, plus odd crop offsets and upscaling
+    testMatchesChain(1920, 1080, 240, 0, 1440, 1080, 512, 512);
+    testMatchesChain(1280, 720, 0, 0, 1280, 720, 512, 512);
+    testMatchesChain(640, 480, 0, 0, 640, 480, 512, 512);
+    testMatchesChain(96, 64, 7, 3, 61, 53, 40, 24);
+    testMatchesChain(64, 48, 0, 0, 64, 48, 100, 70);
+    testMeanStd();
+    testBgrMatchesNv12();
+    // the usual 8 bit input quantisations of v / 255: the bytes themselves, shifted for int8,
+    // and one that saturates
+    testQuantized(element_type::uint8, 1.f / 255, 0);
+    testQuantized(element_type::int8, 1.f / 255, -128);
+    testQuantized(element_type::int8, 1.f / 200, -100);
+    testRejectsBadInput();
+    benchmark();
+    return testResult();
+}
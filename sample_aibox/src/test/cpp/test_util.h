@@ -0,0 +1,30 @@
+#ifndef TEST_UTIL_H
+#define TEST_UTIL_H
+
+// Minimal check harness shared by the host tests, each of which is a single translation unit.
+
+#include <cstdio>
+#include <cstdlib>
+
+static int failures = 0;
+
+// record a failed condition and carry on, so one run reports every failing check
+#define CHECK(condition) \
+    do { \
+        if (!(condition)) { \
+            std::fprintf(stderr, "%s:%d: CHECK failed: %s\n", __FILE__, __LINE__, #condition); \
+            failures++; \
+        } \
+    } while (0)
+
+// print the summary; returned from main()
+static int testResult() {
+    if (failures != 0) {
+        std::fprintf(stderr, "%d check(s) failed\n", failures);
+        return EXIT_FAILURE;
+    }
+    std::printf("all checks passed\n");
+    return EXIT_SUCCESS;
+}
+
+#endif
@@ -0,0 +1,246 @@
+// Host test and benchmark of yolo/YoloDecoder against the per-cell sigmoid decoding it replaces.
+//
+// Without arguments the outputs are synthesised with a realistic objectness distribution: almost
+// every anchor is confidently empty. Recorded outputs can be given instead, as the raw float32
+// contents of the three output tensors of the default model:
+//   yolo_decoder_test output0.raw output1.raw output2.raw
+
+#include "yolo/YoloDecoder.h"
+#include "test_util.h"
+
+#include <algorithm>
+#include <chrono>
+#include <cmath>
+#include <cstdio>
+#include <cstdlib>
+#include <random>
+#include <vector>
+
+using ninebot_algo::cnn_ninebot::bbox;
+using ninebot_algo::cnn_ninebot::element_type;
+using ninebot_algo::cnn_ninebot::tensor_format;
+
+static yolo::DecoderConfig defaultConfig() {
+    // AlgoApplePerception::defaultConfig() and the anchors of segmentor_config
+    yolo::DecoderConfig config;
+    config.anchors = {169.54f, 131.54f, 228.0f, 289.38f, 545.15f, 476.46f, 43.85f, 89.15f, 90.62f,
+                      65.77f, 86.23f, 173.92f, 14.62f, 19.0f, 23.38f, 43.85f, 48.23f, 33.62f};
+    return config;
+}
+
+static float sigmoid(float x) {
+    return (1 / (1 + exp(-x)));
+}
+
+// the former ApplePerception::pedestrian_yolo_parse, without the NMS
+static void referenceDecode(const yolo::DecoderConfig &cfg, const std::vector<std::vector<float> > &outs,
+                            std::vector<bbox> &boxes) {
+    boxes.clear();
+    for (int s = 0; s < (int) outs.size(); ++s) {
+        const float *resdata = outs[s].data();
+        int scale = pow(2, s);
+        int outputwidth = cfg.gridWidth * scale;
+        int outputheight = cfg.gridHeight * scale;
+        int map_pixel_size = outputheight * outputwidth;
+        for (int i = 0; i < map_pixel_size; i++) {
+            int j = i * (cfg.numObject * (cfg.classes + 5));
+            for (int k = 0; k < cfg.numObject; k++) {
+                int obj = k * (cfg.classes + 5);
+                float conf = sigmoid(resdata[j + obj + 4]);
+                if (conf < cfg.confThresh)
+                    continue;
+                float cls_score;
+                int max_class = 0;
+                float class_conf = -10000.;
+                for (int cls = 0; cls < cfg.classes; cls++) {
+                    cls_score = sigmoid(resdata[j + obj + cls + 5]);
+                    if (cls_score > class_conf) {
+                        class_conf = cls_score;
+                        max_class = cls;
+                    }
+                }
+                float bw = exp(resdata[j + obj + 2]);
+                float bh = exp(resdata[j + obj + 3]);
+                float width = bw * (cfg.anchors[s * cfg.numObject * 2 + k * 2] / cfg.inputWidth);
+                float height = bh * (cfg.anchors[s * cfg.numObject * 2 + k * 2 + 1] / cfg.inputHeight);
+                float offset_x = sigmoid(resdata[j + obj]);
+                float offset_y = sigmoid(resdata[j + obj + 1]);
+                bbox box;
+                int y = i / outputwidth;
+                int x = i % outputwidth;
+                box.x1 = (x + offset_x) / outputwidth - width / 2;
+                box.y1 = (y + offset_y) / outputheight - height / 2;
+                box.x2 = (x + offset_x) / outputwidth + width / 2;
+                box.y2 = (y + offset_y) / outputheight + height / 2;
+                box.x1 = box.x1 > 0 ? box.x1 : 0;
+                box.y1 = box.y1 > 0 ? box.y1 : 0;
+                box.x2 = box.x2 < 1 ? box.x2 : 1;
+                box.y2 = box.y2 < 1 ? box.y2 : 1;
+                box.score = class_conf * conf;
+                box.classId = max_class;
+                boxes.push_back(box);
+            }
+        }
+    }
+}
+
+// objectness mostly far below the threshold, hotSpots anchors above it
+static std::vector<std::vector<float> > synthesise(const yolo::YoloDecoder &decoder,
+                                                   const yolo::DecoderConfig &config, int hotSpots,
+                                                   unsigned seed) {
+    std::mt19937 random(seed);
+    std::normal_distribution<float> values(0.f, 1.f);
+    std::normal_distribution<float> background(-7.f, 2.f);
+    std::vector<std::vector<float> > outs(config.scaleCount);
+    int stride = config.classes + 5;
+    for (int s = 0; s < config.scaleCount; s++) {
+        outs[s].resize(decoder.outputLength(s));
+        for (size_t i = 0; i < outs[s].size(); i++) {
+            outs[s][i] = (i % stride == 4) ? background(random) : values(random);
+        }
+        std::uniform_int_distribution<int> anchor(0, (int) outs[s].size() / stride - 1);
+        for (int h = 0; h < hotSpots; h++) {
+            outs[s][anchor(random) * stride + 4] = 2.f + values(random);
+        }
+    }
+    return outs;
+}
+
+static bool readRaw(const char *path, std::vector<float> &out, int expected) {
+    FILE *file = std::fopen(path, "rb");
+    if (file == nullptr) {
+        std::fprintf(stderr, "cannot open %s\n", path);
+        return false;
+    }
+    out.resize(expected);
+    size_t read = std::fread(out.data(), sizeof(float), out.size(), file);
+    std::fclose(file);
+    if ((int) read != expected) {
+        std::fprintf(stderr, "%s holds %zu floats, expected %d\n", path, read, expected);
+        return false;
+    }
+    return true;
+}
+
+static void compare(const yolo::DecoderConfig &config, const std::vector<std::vector<float> > &outs) {
+    yolo::YoloDecoder decoder(config);
+    const float *outputs[3] = {outs[0].data(), outs[1].data(), outs[2].data()};
+    std::vector<bbox> decoded;
+    std::vector<bbox> expected;
+    decoder.decode(outputs, decoded);
+    referenceDecode(config, outs, expected);
+    CHECK(decoded.size() == expected.size());
+    float worst = 0;
+    for (size_t i = 0; i < std::min(decoded.size(), expected.size()); i++) {
+        CHECK(decoded[i].classId == expected[i].classId);
+        worst = std::max(worst, std::fabs(decoded[i].x1 - expected[i].x1));
+        worst = std::max(worst, std::fabs(decoded[i].y1 - expected[i].y1));
+        worst = std::max(worst, std::fabs(decoded[i].x2 - expected[i].x2));
+        worst = std::max(worst, std::fabs(decoded[i].y2 - expected[i].y2));
+        worst = std::max(worst, std::fabs(decoded[i].score - expected[i].score));
+    }
+    std::printf("%zu candidates, max difference %g\n", decoded.size(), worst);
+    CHECK(worst <= 1e-5f);
+}
+
+static void testThresholdEdges() {
+    yolo::DecoderConfig config = defaultConfig();
+    config.gridWidth = 2;
+    config.gridHeight = 2;
+    config.classes = 3;
+    yolo::YoloDecoder probe(config);
+    std::vector<std::vector<float> > outs = synthesise(probe, config, 2, 9);
+    // logits right at the threshold, and multiple classes
+    float logit = std::log(config.confThresh / (1 - config.confThresh));
+    outs[1][4] = logit;
+    outs[1][8] = std::nextafter(logit, 0.f);
+    compare(config, outs);
+
+    config.confThresh = 0;
+    compare(config, outs);
+    config.confThresh = 1;
+    compare(config, outs);
+}
+
+// Quantised outputs decode like the float outputs they dequantise to.
+static void testQuantized(const yolo::DecoderConfig &config, const std::vector<std::vector<float> > &outs,
+                          element_type type, float scale, int zeroPoint) {
+    yolo::YoloDecoder decoder(config);
+    const int low = type == element_type::int8 ? -128 : 0;
+    std::vector<std::vector<uint8_t> > quantized(outs.size());
+    std::vector<std::vector<float> > dequantized(outs.size());
+    tensor_format formats[3];
+    const void *outputs[3];
+    const float *floatOutputs[3];
+    for (size_t s = 0; s < outs.size(); s++) {
+        for (float value : outs[s]) {
+            int q = std::min(low + 255, std::max(low, (int) std::lround(value / scale) + zeroPoint));
+            quantized[s].push_back((uint8_t) q);
+            dequantized[s].push_back((q - zeroPoint) * scale);
+        }
+        formats[s].type = type;
+        formats[s].scale = scale;
+        formats[s].zero_point = zeroPoint;
+        outputs[s] = quantized[s].data();
+        floatOutputs[s] = dequantized[s].data();
+    }
+    std::vector<bbox> decoded;
+    std::vector<bbox> expected;
+    decoder.decode(outputs, formats, decoded);
+    decoder.decode(floatOutputs, expected);
+    CHECK(decoded.size() == expected.size());
+    float worst = 0;
+    for (size_t i = 0; i < std::min(decoded.size(), expected.size()); i++) {
+        CHECK(decoded[i].classId == expected[i].classId);
+        worst = std::max(worst, std::fabs(decoded[i].x1 - expected[i].x1));
+        worst = std::max(worst, std::fabs(decoded[i].y2 - expected[i].y2));
+        worst = std::max(worst, std::fabs(decoded[i].score - expected[i].score));
+    }
+    std::printf("%s: %zu candidates, max difference %g\n", type == element_type::int8 ? "int8" : "uint8",
+                decoded.size(), worst);
+    CHECK(!decoded.empty());
+    CHECK(worst <= 1e-6f);
+}
+
+static void benchmark(const yolo::DecoderConfig &config, const std::vector<std::vector<float> > &outs) {
+    const int runs = 200;
+    yolo::YoloDecoder decoder(config);
+    const float *outputs[3] = {outs[0].data(), outs[1].data(), outs[2].data()};
+    std::vector<bbox> boxes;
+    boxes.reserve(decoder.maxCandidates());
+    auto start = std::chrono::steady_clock::now();
+    for (int i = 0; i < runs; i++) {
+        decoder.decode(outputs, boxes);
+    }
+    auto decoded = std::chrono::steady_clock::now();
+    std::vector<bbox> reference;
+    for (int i = 0; i < runs; i++) {
+        referenceDecode(config, outs, reference);
+    }
+    auto end = std::chrono::steady_clock::now();
+    std::printf("decode: %.1f us, per cell sigmoid: %.1f us\n",
+                std::chrono::duration<double, std::micro>(decoded - start).count() / runs,
+                std::chrono::duration<double, std::micro>(end - decoded).count() / runs);
+}
+
+int main(int argc, char **argv) {
+    yolo::DecoderConfig config = defaultConfig();
+    yolo::YoloDecoder decoder(config);
+    std::vector<std::vector<float> > outs;
+    if (argc == 4) {
+        outs.resize(3);
+        for (int s = 0; s < 3; s++) {
+            if (!readRaw(argv[s + 1], outs[s], decoder.outputLength(s))) {
+                return EXIT_FAILURE;
+            }
+        }
+    } else {
+        outs = synthesise(decoder, config, 10, 1);
+    }
+    compare(config, outs);
+    testThresholdEdges();
+    testQuantized(config, outs, element_type::uint8, 0.05f, 200);
+    testQuantized(config, outs, element_type::int8, 0.05f, 72);
+    benchmark(config, outs);
+    return testResult();
+}
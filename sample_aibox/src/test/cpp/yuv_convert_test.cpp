@@ -0,0 +1,137 @@
+// Host test of yuv/YuvConvert against a floating point BT.601 reference.
+
+#include "yuv/YuvConvert.h"
+#include "test_util.h"
+
+#include <cmath>
+#include <cstdio>
+#include <cstdlib>
+#include <random>
+#include <vector>
+
+static int clamp255(float value) {
+    int rounded = (int) std::lround(value);
+    return rounded < 0 ? 0 : (rounded > 255 ? 255 : rounded);
+}
+
+static void reference(int y, int u, int v, int rgb[3]) {
+    y = y < 16 ? 16 : y;
+    rgb[0] = clamp255(1.164f * (y - 16) + 1.596f * (v - 128));
+    rgb[1] = clamp255(1.164f * (y - 16) - 0.813f * (v - 128) - 0.391f * (u - 128));
+    rgb[2] = clamp255(1.164f * (y - 16) + 2.018f * (u - 128));
+}
+
+static void chromaAt(const std::vector<uint8_t> &frame, int format, int width, int height,
+                     int x, int row, int *u, int *v) {
+    size_t chroma = (size_t) width * height;
+    if (format == yuv::FORMAT_YV12) {
+        int stride = ((width / 2) + 15) & ~15;
+        *v = frame[chroma + (row / 2) * stride + x / 2];
+        *u = frame[chroma + (size_t) stride * (height / 2) + (row / 2) * stride + x / 2];
+    } else {
+        size_t pair = chroma + (row / 2) * width + (x & ~1);
+        *u = frame[format == yuv::FORMAT_NV12 ? pair : pair + 1];
+        *v = frame[format == yuv::FORMAT_NV12 ? pair + 1 : pair];
+    }
+}
+
+static void testFormat(int format, int width, int height) {
+    std::mt19937 random(format * 1000 + width);
+    std::vector<uint8_t> frame(yuv::frameLength(format, width, height));
+    for (auto &value : frame) {
+        value = (uint8_t) random();
+    }
+    // pad every row to check that the stride is honoured and the padding left alone
+    const int dstStride = width * 4 + 12;
+    std::vector<uint8_t> rgba((size_t) dstStride * height, 0x5a);
+    CHECK(yuv::toRgba(frame.data(), frame.size(), format, width, height, rgba.data(), dstStride));
+
+    int worst = 0;
+    for (int row = 0; row < height; row++) {
+        for (int x = 0; x < width; x++) {
+            int u;
+            int v;
+            chromaAt(frame, format, width, height, x, row, &u, &v);
+            int expected[3];
+            reference(frame[(size_t) row * width + x], u, v, expected);
+            const uint8_t *pixel = &rgba[(size_t) row * dstStride + x * 4];
+            for (int c = 0; c < 3; c++) {
+                int difference = std::abs(expected[c] - pixel[c]);
+                worst = difference > worst ? difference : worst;
+            }
+            CHECK(pixel[3] == 0xff);
+        }
+        for (int padding = width * 4; padding < dstStride; padding++) {
+            CHECK(rgba[(size_t) row * dstStride + padding] == 0x5a);
+        }
+    }
+    std::printf("format %d %dx%d: max difference %d\n", format, width, height, worst);
+    CHECK(worst <= 1);
+}
+
+static void testVectorMatchesScalar() {
+    const int width = 70;
+    const int height = 6;
+    std::mt19937 random(7);
+    std::vector<uint8_t> frame(yuv::frameLength(yuv::FORMAT_NV12, width, height));
+    for (auto &value : frame) {
+        value = (uint8_t) random();
+    }
+    std::vector<uint8_t> fast((size_t) width * height * 4);
+    std::vector<uint8_t> scalar((size_t) width * height * 4);
+    const uint8_t *chroma = frame.data() + width * height;
+    yuv::planesToRgba(frame.data(), width, chroma, chroma + 1, width, 2, fast.data(), width * 4, width, height);
+    yuv::planesToRgbaScalar(frame.data(), width, chroma, chroma + 1, width, 2, scalar.data(), width * 4, width, height);
+    CHECK(fast == scalar);
+}
+
+static void testScaledSamplesFullConversion(int format) {
+    const int width = 64;
+    const int height = 36;
+    std::mt19937 random(format + 11);
+    std::vector<uint8_t> frame(yuv::frameLength(format, width, height));
+    for (auto &value : frame) {
+        value = (uint8_t) random();
+    }
+    std::vector<uint8_t> full((size_t) width * height * 4);
+    CHECK(yuv::toRgba(frame.data(), frame.size(), format, width, height, full.data(), width * 4));
+    const int scales[] = {2, 3, 4};
+    for (int scale : scales) {
+        int outWidth = width / scale;
+        int outHeight = height / scale;
+        std::vector<uint8_t> scaled((size_t) outWidth * outHeight * 4);
+        CHECK(yuv::toRgba(frame.data(), frame.size(), format, width, height, scaled.data(), outWidth * 4, scale));
+        for (int row = 0; row < outHeight; row++) {
+            for (int x = 0; x < outWidth; x++) {
+                for (int c = 0; c < 4; c++) {
+                    CHECK(scaled[((size_t) row * outWidth + x) * 4 + c]
+                          == full[((size_t) row * scale * width + x * scale) * 4 + c]);
+                }
+            }
+        }
+    }
+}
+
+static void testRejectsBadInput() {
+    std::vector<uint8_t> frame(64 * 48 * 3 / 2);
+    std::vector<uint8_t> rgba(64 * 48 * 4);
+    CHECK(!yuv::toRgba(frame.data(), frame.size() - 1, yuv::FORMAT_NV12, 64, 48, rgba.data(), 64 * 4));
+    CHECK(!yuv::toRgba(frame.data(), frame.size(), yuv::FORMAT_NV12, 63, 48, rgba.data(), 64 * 4));
+    CHECK(!yuv::toRgba(frame.data(), frame.size(), yuv::FORMAT_NV12, 64, 48, rgba.data(), 63 * 4));
+    CHECK(!yuv::toRgba(frame.data(), frame.size(), 42, 64, 48, rgba.data(), 64 * 4));
+    CHECK(!yuv::toRgba(nullptr, frame.size(), yuv::FORMAT_NV12, 64, 48, rgba.data(), 64 * 4));
+    CHECK(!yuv::toRgba(frame.data(), frame.size(), yuv::FORMAT_NV12, 64, 48, rgba.data(), 64 * 4, 0));
+}
+
+int main() {
+    const int formats[] = {yuv::FORMAT_NV12, yuv::FORMAT_NV21, yuv::FORMAT_YV12};
+    for (int format : formats) {
+        testFormat(format, 64, 48);
+        // a width that is not a multiple of the vector width exercises the scalar tail
+        testFormat(format, 38, 10);
+        testScaledSamplesFullConversion(format);
+    }
+    testVectorMatchesScalar();
+    testRejectsBadInput();
+    return testResult();
+}
@@ -0,0 +1,45 @@
+package com.segway.robot.sample.aibox;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link DetectionResults}.
+ */
+public class DetectionResultsTest {
+
+    @Test
+    public void readPackedBoxes() {
+        DetectionResults results = new DetectionResults(4);
+        assertEquals(0, results.size());
+        FloatBuffer buffer = results.getBuffer();
+        assertTrue(buffer.isDirect());
+        assertEquals(1 + 4 * DetectionResults.BOX_SIZE, buffer.capacity());
+        // what nativeDetectInto writes for two boxes
+        buffer.put(new float[]{2, 0, 10, 20, 110, 220, 0.9f, 1, 30, 40, 50, 60, 0.5f});
+
+        assertEquals(2, results.size());
+        assertEquals(0, results.getClassId(0));
+        assertEquals(10, results.getX1(0), 0);
+        assertEquals(20, results.getY1(0), 0);
+        assertEquals(110, results.getX2(0), 0);
+        assertEquals(220, results.getY2(0), 0);
+        assertEquals(0.9f, results.getScore(0), 0);
+        assertEquals(1, results.getClassId(1));
+        assertEquals(60, results.getY2(1), 0);
+        assertEquals(0.5f, results.getScore(1), 0);
+
+        results.clear();
+        assertEquals(0, results.size());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rejectIndexBeyondCount() {
+        DetectionResults results = new DetectionResults(4);
+        results.getBuffer().put(0, 1);
+        results.getX1(1);
+    }
+}
@@ -0,0 +1,81 @@
+package com.segway.robot.sample.aibox;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link DirectBufferPool}.
+ */
+public class DirectBufferPoolTest {
+    // NV12 and RGBA sizes of the fish eye frames and the still image
+    private static final int[] FRAME_SIZES = {640 * 480 * 3 / 2, 640 * 480 * 4, 1920 * 1080 * 3 / 2};
+
+    @Test
+    public void sizeClasses() {
+        DirectBufferPool pool = new DirectBufferPool(2, false);
+        ByteBuffer small = pool.acquire(1);
+        assertEquals(4096, small.capacity());
+        assertEquals(1, small.limit());
+        assertTrue(small.isDirect());
+        ByteBuffer frame = pool.acquire(640 * 480 * 3 / 2);
+        assertEquals(512 * 1024, frame.capacity());
+        assertEquals(0, frame.position());
+        pool.release(frame);
+        // a slightly larger frame of the same class reuses the buffer
+        ByteBuffer larger = pool.acquire(500 * 1024);
+        assertSame(frame, larger);
+        assertEquals(500 * 1024, larger.limit());
+        assertEquals(2, pool.getAllocationCount());
+    }
+
+    @Test
+    public void steadyStateDoesNotAllocate() {
+        DirectBufferPool pool = new DirectBufferPool(2, false);
+        for (int i = 0; i < 10000; i++) {
+            if (i == FRAME_SIZES.length) {
+                // every size class has been used once
+                assertEquals(2 * FRAME_SIZES.length, pool.getAllocationCount());
+            }
+            // two frames in flight, like the mailbox and the detection thread
+            int size = FRAME_SIZES[i % FRAME_SIZES.length] - (i % 7);
+            ByteBuffer first = pool.acquire(size);
+            ByteBuffer second = pool.acquire(size);
+            first.put(0, (byte) i);
+            pool.release(first);
+            pool.release(second);
+        }
+        assertEquals(2 * FRAME_SIZES.length, pool.getAllocationCount());
+    }
+
+    @Test
+    public void leakTracking() {
+        DirectBufferPool pool = new DirectBufferPool(2, true);
+        ByteBuffer released = pool.acquire(100);
+        pool.acquire(200);
+        pool.release(released);
+        assertEquals(1, pool.getOutstandingCount());
+        assertEquals(1, pool.getLeaks().size());
+        assertEquals("acquired 200 bytes", pool.getLeaks().get(0).getMessage());
+
+        DirectBufferPool untracked = new DirectBufferPool(2, false);
+        untracked.acquire(100);
+        assertEquals(1, untracked.getOutstandingCount());
+        assertTrue(untracked.getLeaks().isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectDoubleRelease() {
+        DirectBufferPool pool = new DirectBufferPool(2, false);
+        ByteBuffer buffer = pool.acquire(100);
+        pool.release(buffer);
+        pool.release(buffer);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectForeignBuffer() {
+        new DirectBufferPool(2, false).release(ByteBuffer.allocateDirect(100));
+    }
+}
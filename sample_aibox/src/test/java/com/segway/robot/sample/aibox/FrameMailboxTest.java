@@ -0,0 +1,127 @@
+package com.segway.robot.sample.aibox;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link FrameMailbox}.
+ */
+public class FrameMailboxTest {
+    private static final int FRAME_COUNT = 20000;
+
+    @Test
+    public void newestFrameWins() throws Exception {
+        FrameMailbox<long[]> mailbox = new FrameMailbox<>();
+        long[] first = {1};
+        long[] second = {2};
+        assertNull(mailbox.post(first));
+        assertSame(first, mailbox.post(second));
+        assertSame(second, mailbox.take());
+        assertEquals(2, mailbox.getPostedCount());
+        assertEquals(1, mailbox.getDroppedCount());
+
+        assertNull(mailbox.obtain());
+        mailbox.recycle(second);
+        assertSame(second, mailbox.obtain());
+        assertNull(mailbox.obtain());
+    }
+
+    @Test
+    public void closeReturnsWaitingFrame() {
+        FrameMailbox<long[]> mailbox = new FrameMailbox<>();
+        long[] frame = new long[1];
+        mailbox.post(frame);
+        assertSame(frame, mailbox.close());
+    }
+
+    @Test
+    public void queueAge() throws Exception {
+        FrameMailbox<long[]> mailbox = new FrameMailbox<>();
+        mailbox.post(new long[1]);
+        Thread.sleep(20);
+        mailbox.take();
+        assertTrue(mailbox.getLastQueueAge() >= 20000000L);
+        assertEquals(mailbox.getLastQueueAge(), mailbox.getMaxQueueAge());
+        mailbox.post(new long[1]);
+        mailbox.take();
+        assertTrue(mailbox.getLastQueueAge() < mailbox.getMaxQueueAge());
+    }
+
+    @Test(timeout = 10000)
+    public void closeWakesWorker() throws Exception {
+        final FrameMailbox<long[]> mailbox = new FrameMailbox<>();
+        final AtomicReference<Object> taken = new AtomicReference<>(new Object());
+        Thread worker = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    taken.set(mailbox.take());
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        worker.start();
+        Thread.sleep(20);
+        assertNull(mailbox.close());
+        worker.join();
+        assertNull(taken.get());
+        long[] late = new long[1];
+        assertSame(late, mailbox.post(late));
+        assertNull(mailbox.take());
+    }
+
+    @Test(timeout = 60000)
+    public void slowWorkerSeesNewestFrames() throws Exception {
+        final FrameMailbox<long[]> mailbox = new FrameMailbox<>();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final AtomicLong last = new AtomicLong();
+        Thread worker = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    long[] frame;
+                    int taken = 0;
+                    while ((frame = mailbox.take()) != null) {
+                        assertTrue(frame[0] > last.get());
+                        last.set(frame[0]);
+                        if (++taken % 16 == 0) {
+                            Thread.sleep(1);
+                        }
+                        mailbox.recycle(frame);
+                    }
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            }
+        };
+        worker.start();
+        int allocated = 0;
+        long[] spare = null;
+        for (int i = 1; i <= FRAME_COUNT; i++) {
+            long[] frame = spare != null ? spare : mailbox.obtain();
+            if (frame == null) {
+                frame = new long[1];
+                allocated++;
+            }
+            frame[0] = i;
+            spare = mailbox.post(frame);
+        }
+        // the last frame is never dropped
+        while (last.get() != FRAME_COUNT && failure.get() == null) {
+            Thread.sleep(1);
+        }
+        mailbox.close();
+        worker.join();
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertEquals(FRAME_COUNT, mailbox.getPostedCount());
+        // one frame being filled, one waiting and one at the worker at most
+        assertTrue("allocated " + allocated, allocated <= 3);
+    }
+}
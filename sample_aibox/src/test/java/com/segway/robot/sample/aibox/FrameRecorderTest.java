@@ -0,0 +1,85 @@
+package com.segway.robot.sample.aibox;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link FrameRecorder}.
+ */
+public class FrameRecorderTest {
+    private static final long WRITE_MS = 200;
+    private static final int FRAME_COUNT = 100;
+
+    private static class SlowWriter implements FrameRecorder.Writer<long[]> {
+        final AtomicInteger copies = new AtomicInteger();
+        final AtomicInteger allocations = new AtomicInteger();
+        final AtomicLong lastWritten = new AtomicLong(-1);
+        final CountDownLatch firstWrite = new CountDownLatch(1);
+        volatile int writes;
+
+        @Override
+        public long[] copy(long[] source, long[] target) {
+            copies.incrementAndGet();
+            if (target == null) {
+                allocations.incrementAndGet();
+                target = new long[source.length];
+            }
+            System.arraycopy(source, 0, target, 0, source.length);
+            return target;
+        }
+
+        @Override
+        public void write(long[] frame) throws Exception {
+            firstWrite.countDown();
+            Thread.sleep(WRITE_MS);
+            lastWritten.set(frame[0]);
+            writes++;
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void slowWriterDoesNotBlockTheProducer() throws Exception {
+        SlowWriter writer = new SlowWriter();
+        FrameRecorder<long[]> recorder = new FrameRecorder<>("test-recorder", writer);
+        long[] frame = new long[1024];
+
+        frame[0] = 0;
+        recorder.record(frame);
+        assertTrue(writer.firstWrite.await(5, TimeUnit.SECONDS));
+        // the recorder is now busy for WRITE_MS, recording must not wait for it
+        long start = System.nanoTime();
+        for (int i = 1; i <= FRAME_COUNT; i++) {
+            frame[0] = i;
+            recorder.record(frame);
+        }
+        long elapsedMs = (System.nanoTime() - start) / 1000000;
+        assertTrue("recording took " + elapsedMs + " ms", elapsedMs < WRITE_MS / 2);
+        assertEquals(FRAME_COUNT + 1, writer.copies.get());
+        assertEquals(FRAME_COUNT - 1, recorder.getDroppedCount());
+
+        // the newest frame is written after the running write, then the recorder stops
+        while (writer.writes < 2) {
+            Thread.sleep(10);
+        }
+        recorder.close();
+        assertEquals(FRAME_COUNT, writer.lastWritten.get());
+        assertEquals(2, writer.writes);
+        // the writing, the waiting and the frame being filled: at most three copies exist
+        assertTrue(writer.allocations.get() <= 3);
+    }
+
+    @Test(timeout = 10000)
+    public void closeStopsTheRecorder() throws Exception {
+        SlowWriter writer = new SlowWriter();
+        FrameRecorder<long[]> recorder = new FrameRecorder<>("test-recorder", writer);
+        recorder.close();
+        recorder.record(new long[1]);
+        assertEquals(0, writer.writes);
+    }
+}
@@ -0,0 +1,113 @@
+package com.segway.robot.sample.aibox;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link TripleBuffer}.
+ */
+public class TripleBufferTest {
+    private static final int FRAME_COUNT = 200000;
+    private static final int PAYLOAD_LENGTH = 64;
+
+    /**
+     * A frame and the results computed for it, written field by field like the activity does.
+     */
+    private static class Slot {
+        long sequence;
+        final long[] pixels = new long[PAYLOAD_LENGTH];
+        long result;
+    }
+
+    @Test
+    public void publishesLatestSlot() {
+        TripleBuffer<Slot> buffer = new TripleBuffer<>(new Slot(), new Slot(), new Slot());
+        assertFalse(buffer.update());
+        for (int i = 1; i <= 3; i++) {
+            buffer.back().sequence = i;
+            buffer.publish();
+        }
+        assertTrue(buffer.update());
+        assertEquals(3, buffer.front().sequence);
+        assertFalse(buffer.update());
+        assertEquals(3, buffer.front().sequence);
+    }
+
+    @Test
+    public void producerAndConsumerNeverShareSlot() {
+        Slot a = new Slot();
+        Slot b = new Slot();
+        Slot c = new Slot();
+        TripleBuffer<Slot> buffer = new TripleBuffer<>(a, b, c);
+        for (int i = 0; i < 100; i++) {
+            if (i % 3 != 0) {
+                buffer.publish();
+            }
+            if (i % 2 == 0) {
+                buffer.update();
+            }
+            assertNotSame(buffer.back(), buffer.front());
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void stressNoTornFrames() throws Exception {
+        final TripleBuffer<Slot> buffer = new TripleBuffer<>(new Slot(), new Slot(), new Slot());
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                for (long sequence = 1; sequence <= FRAME_COUNT; sequence++) {
+                    Slot slot = buffer.back();
+                    slot.sequence = sequence;
+                    for (int i = 0; i < PAYLOAD_LENGTH; i++) {
+                        slot.pixels[i] = sequence * 31 + i;
+                    }
+                    slot.result = sequence * 7;
+                    buffer.publish();
+                }
+            }
+        };
+        Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    long last = 0;
+                    int frames = 0;
+                    while (last < FRAME_COUNT) {
+                        if (!buffer.update()) {
+                            Thread.yield();
+                            continue;
+                        }
+                        Slot slot = buffer.front();
+                        long sequence = slot.sequence;
+                        assertTrue("went back from " + last + " to " + sequence, sequence > last);
+                        for (int i = 0; i < PAYLOAD_LENGTH; i++) {
+                            assertEquals(sequence * 31 + i, slot.pixels[i]);
+                        }
+                        assertEquals(sequence * 7, slot.result);
+                        // the producer must not touch the front slot while it is being read
+                        Thread.yield();
+                        assertEquals(sequence, slot.sequence);
+                        assertEquals(sequence * 7, slot.result);
+                        last = sequence;
+                        frames++;
+                    }
+                    assertTrue(frames > 0);
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            }
+        };
+        consumer.start();
+        producer.start();
+        producer.join();
+        consumer.join();
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.segway.robot.sample.uart;
+
+import android.os.Parcel;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented benchmark comparing per-object and columnar marshalling of telemetry samples.
+ * Run it on the device and compare the timings in logcat under the tag of this class.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ParcelBatchBenchmark {
+    private static final String TAG = "ParcelBatchBenchmark";
+    private static final int SAMPLE_COUNT = 10000;
+    private static final int WARM_UP_ROUNDS = 5;
+    private static final int ROUNDS = 20;
+
+    private static WheelData[] createWheelData() {
+        WheelData[] samples = new WheelData[SAMPLE_COUNT];
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            samples[i] = new WheelData(i * 20L, i % 26);
+        }
+        return samples;
+    }
+
+    private static LocationData[] createLocationData() {
+        LocationData[] samples = new LocationData[SAMPLE_COUNT];
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            samples[i] = new LocationData((1700000000L + i) * 1000000L, -114123922 - i, 22631426 + i,
+                    100, i % 3600, 50, 90);
+        }
+        return samples;
+    }
+
+    @Test
+    public void wheelData() {
+        WheelData[] samples = createWheelData();
+        WheelDataBatch batch = new WheelDataBatch(SAMPLE_COUNT);
+        for (WheelData sample : samples) {
+            batch.add(sample);
+        }
+
+        long perObjectNs = 0;
+        long columnarNs = 0;
+        for (int round = 0; round < WARM_UP_ROUNDS + ROUNDS; round++) {
+            Parcel parcel = Parcel.obtain();
+            long start = System.nanoTime();
+            parcel.writeTypedArray(samples, 0);
+            parcel.setDataPosition(0);
+            WheelData[] objects = parcel.createTypedArray(WheelData.CREATOR);
+            long perObject = System.nanoTime() - start;
+            parcel.recycle();
+
+            parcel = Parcel.obtain();
+            start = System.nanoTime();
+            batch.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            WheelDataBatch columns = WheelDataBatch.CREATOR.createFromParcel(parcel);
+            long columnar = System.nanoTime() - start;
+            parcel.recycle();
+
+            assertEquals(SAMPLE_COUNT, objects.length);
+            assertEquals(SAMPLE_COUNT, columns.size());
+            if (round >= WARM_UP_ROUNDS) {
+                perObjectNs += perObject;
+                columnarNs += columnar;
+            }
+        }
+
+        WheelData out = new WheelData();
+        Parcel parcel = Parcel.obtain();
+        batch.writeToParcel(parcel, 0);
+        parcel.setDataPosition(0);
+        WheelDataBatch copy = WheelDataBatch.CREATOR.createFromParcel(parcel);
+        parcel.recycle();
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            copy.get(i, out);
+            assertEquals(samples[i].getTimestamp(), out.getTimestamp());
+            assertEquals(samples[i].getWheelSpeed(), out.getWheelSpeed());
+        }
+        report("WheelData", perObjectNs, columnarNs);
+    }
+
+    @Test
+    public void reusedBatchWritesItsSize() {
+        LocationData[] samples = createLocationData();
+        LocationDataBatch batch = new LocationDataBatch(64);
+        for (int count : new int[]{10, 64, 3}) {
+            batch.clear();
+            for (int i = 0; i < count; i++) {
+                batch.add(samples[i]);
+            }
+            Parcel parcel = Parcel.obtain();
+            batch.writeToParcel(parcel, 0);
+            batch.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            LocationDataBatch first = LocationDataBatch.CREATOR.createFromParcel(parcel);
+            LocationDataBatch second = LocationDataBatch.CREATOR.createFromParcel(parcel);
+            parcel.recycle();
+
+            assertEquals(count, batch.size());
+            for (LocationDataBatch copy : new LocationDataBatch[]{first, second}) {
+                assertEquals(count, copy.size());
+                for (int i = 0; i < count; i++) {
+                    assertEquals(samples[i].getTimestamp(), copy.getTimestamp(i));
+                    assertEquals(samples[i].getAttitude(), copy.getAttitude(i));
+                    assertEquals(samples[i].getDirection(), copy.getDirection(i));
+                    assertEquals(samples[i].getHdop(), copy.getHdop(i));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void locationData() {
+        LocationData[] samples = createLocationData();
+        LocationDataBatch batch = new LocationDataBatch(SAMPLE_COUNT);
+        for (LocationData sample : samples) {
+            batch.add(sample);
+        }
+
+        long perObjectNs = 0;
+        long columnarNs = 0;
+        for (int round = 0; round < WARM_UP_ROUNDS + ROUNDS; round++) {
+            Parcel parcel = Parcel.obtain();
+            long start = System.nanoTime();
+            parcel.writeTypedArray(samples, 0);
+            parcel.setDataPosition(0);
+            LocationData[] objects = parcel.createTypedArray(LocationData.CREATOR);
+            long perObject = System.nanoTime() - start;
+            parcel.recycle();
+
+            parcel = Parcel.obtain();
+            start = System.nanoTime();
+            batch.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            LocationDataBatch columns = LocationDataBatch.CREATOR.createFromParcel(parcel);
+            long columnar = System.nanoTime() - start;
+            parcel.recycle();
+
+            assertEquals(SAMPLE_COUNT, objects.length);
+            assertEquals(SAMPLE_COUNT, columns.size());
+            if (round >= WARM_UP_ROUNDS) {
+                perObjectNs += perObject;
+                columnarNs += columnar;
+            }
+        }
+
+        LocationData out = new LocationData();
+        Parcel parcel = Parcel.obtain();
+        batch.writeToParcel(parcel, 0);
+        parcel.setDataPosition(0);
+        LocationDataBatch copy = LocationDataBatch.CREATOR.createFromParcel(parcel);
+        parcel.recycle();
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            copy.get(i, out);
+            assertEquals(samples[i].getTimestamp(), out.getTimestamp());
+            assertEquals(samples[i].getLongitude(), out.getLongitude());
+            assertEquals(samples[i].getLatitude(), out.getLatitude());
+            assertEquals(samples[i].getDirection(), out.getDirection());
+            assertEquals(samples[i].getHdop(), out.getHdop());
+        }
+        report("LocationData", perObjectNs, columnarNs);
+    }
+
+    private static void report(String name, long perObjectNs, long columnarNs) {
+        Log.i(TAG, name + " x" + SAMPLE_COUNT + ": per-object " + perObjectNs / ROUNDS / 1000
+                + " us, columnar " + columnarNs / ROUNDS / 1000 + " us");
+    }
+}
@@ -0,0 +1,211 @@
+package com.segway.robot.sample.uart;
+
+import android.util.Log;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous uplink for the AI result.
+ * <p>
+ * {@link #submit(int, int)} never blocks: it only records the latest value and wakes the uplink
+ * thread, which sends it with {@link ProtocolV1Util#sendAiResult(int, int)}. Consecutive identical
+ * values are coalesced, at most one message is sent per {@code minIntervalMs}, and the last value
+ * is repeated every {@code heartbeatMs} while nothing new is submitted. A value that is replaced
+ * by a different one before it could be sent is counted as dropped.
+ */
+public class AiResultUplink {
+    private static final String TAG = "AiResultUplink";
+    private static final int NONE = -1;
+    // mState packs the pending value and the value last handed to the sender, each stored plus
+    // one in a byte so that 0 means none; updating both in one step keeps a value that is taken
+    // for sending from being queued again by a concurrent submit
+    private static final int PENDING_MASK = 0xff;
+    private static final int LAST_SENT_SHIFT = 8;
+
+    /**
+     * Definition of the transport used by the uplink thread.
+     */
+    public interface Sender {
+        void send(int aiInferenceResult, int pedestrianDetected) throws Exception;
+    }
+
+    private final Sender mSender;
+    private final long mMinIntervalNs;
+    private final long mHeartbeatNs;
+
+    private final AtomicInteger mState = new AtomicInteger();
+    private final AtomicLong mSentCount = new AtomicLong();
+    private final AtomicLong mCoalescedCount = new AtomicLong();
+    private final AtomicLong mDroppedCount = new AtomicLong();
+
+    private volatile boolean mIsRunning;
+    private volatile Thread mUplinkThread;
+
+    /**
+     * @param minIntervalMs minimum time between two messages
+     * @param heartbeatMs   the last value is repeated after this much silence, 0 disables it
+     */
+    public AiResultUplink(long minIntervalMs, long heartbeatMs) {
+        this(minIntervalMs, heartbeatMs, ProtocolV1Util::sendAiResult);
+    }
+
+    public AiResultUplink(long minIntervalMs, long heartbeatMs, Sender sender) {
+        if (minIntervalMs < 0 || heartbeatMs < 0) {
+            throw new IllegalArgumentException("The intervals cannot be negative.");
+        }
+        if (sender == null) {
+            throw new IllegalArgumentException("Sender is null");
+        }
+        mSender = sender;
+        mMinIntervalNs = TimeUnit.MILLISECONDS.toNanos(minIntervalMs);
+        mHeartbeatNs = TimeUnit.MILLISECONDS.toNanos(heartbeatMs);
+    }
+
+    public synchronized void start() {
+        if (mIsRunning) {
+            return;
+        }
+        mIsRunning = true;
+        mUplinkThread = new UplinkThread();
+        mUplinkThread.start();
+    }
+
+    public synchronized void stop() {
+        mIsRunning = false;
+        if (mUplinkThread != null) {
+            mUplinkThread.interrupt();
+            try {
+                mUplinkThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            mUplinkThread = null;
+        }
+    }
+
+    /**
+     * Queue the AI result for sending. Safe to call from any thread at any rate.
+     */
+    public void submit(int aiInferenceResult, int pedestrianDetected) {
+        int value = (aiInferenceResult & 0xf) | (pedestrianDetected & 0x1) << 4;
+        while (true) {
+            int state = mState.get();
+            int pending = pending(state);
+            if (pending == value || (pending == NONE && lastSent(state) == value)) {
+                // already waiting or on the link, the heartbeat keeps it fresh
+                mCoalescedCount.incrementAndGet();
+                return;
+            }
+            if (mState.compareAndSet(state, state & ~PENDING_MASK | (value + 1))) {
+                if (pending != NONE) {
+                    mDroppedCount.incrementAndGet();
+                }
+                break;
+            }
+        }
+        Thread uplinkThread = mUplinkThread;
+        if (uplinkThread != null) {
+            LockSupport.unpark(uplinkThread);
+        }
+    }
+
+    private static int pending(int state) {
+        return (state & PENDING_MASK) - 1;
+    }
+
+    private static int lastSent(int state) {
+        return (state >>> LAST_SENT_SHIFT) - 1;
+    }
+
+    /**
+     * Take the pending value and make it the last sent one in the same step.
+     *
+     * @return the pending value, or {@link #NONE}
+     */
+    private int takePending() {
+        while (true) {
+            int state = mState.get();
+            int pending = pending(state);
+            if (pending == NONE) {
+                return NONE;
+            }
+            if (mState.compareAndSet(state, (pending + 1) << LAST_SENT_SHIFT)) {
+                return pending;
+            }
+        }
+    }
+
+    /**
+     * Forget a value that could not be sent, so that submitting it again queues it.
+     */
+    private void clearLastSent(int value) {
+        while (true) {
+            int state = mState.get();
+            if (lastSent(state) != value || mState.compareAndSet(state, state & PENDING_MASK)) {
+                return;
+            }
+        }
+    }
+
+    public long getSentCount() {
+        return mSentCount.get();
+    }
+
+    public long getCoalescedCount() {
+        return mCoalescedCount.get();
+    }
+
+    public long getDroppedCount() {
+        return mDroppedCount.get();
+    }
+
+    private class UplinkThread extends Thread {
+        private long mLastSendNs;
+
+        UplinkThread() {
+            super(TAG);
+        }
+
+        @Override
+        public void run() {
+            mLastSendNs = System.nanoTime() - mMinIntervalNs;
+            while (mIsRunning && !isInterrupted()) {
+                long now = System.nanoTime();
+                long wait = mLastSendNs + mMinIntervalNs - now;
+                if (wait > 0) {
+                    LockSupport.parkNanos(this, wait);
+                    continue;
+                }
+                int value = takePending();
+                if (value == NONE) {
+                    int lastSent = lastSent(mState.get());
+                    long heartbeatWait = mLastSendNs + mHeartbeatNs - now;
+                    if (mHeartbeatNs == 0 || lastSent == NONE) {
+                        LockSupport.park(this);
+                        continue;
+                    } else if (heartbeatWait > 0) {
+                        LockSupport.parkNanos(this, heartbeatWait);
+                        continue;
+                    }
+                    value = lastSent;
+                }
+                send(value, now);
+            }
+        }
+
+        private void send(int value, long now) {
+            mLastSendNs = now;
+            try {
+                mSender.send(value & 0xf, value >> 4 & 0x1);
+                mSentCount.incrementAndGet();
+            } catch (Exception e) {
+                clearLastSent(value);
+                mDroppedCount.incrementAndGet();
+                Log.w(TAG, "send ai result error", e);
+            }
+        }
+    }
+}
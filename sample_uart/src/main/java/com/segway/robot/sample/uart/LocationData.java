@@ -122,6 +122,16 @@ public class LocationData implements Parcelable {
         this.hdop = hdop;
     }
 
+    public void set(LocationData other) {
+        this.timestamp = other.timestamp;
+        this.longitude = other.longitude;
+        this.latitude = other.latitude;
+        this.attitude = other.attitude;
+        this.direction = other.direction;
+        this.speed = other.speed;
+        this.hdop = other.hdop;
+    }
+
     @Override
     public String toString() {
         return "LocationData{" +
@@ -0,0 +1,173 @@
+package com.segway.robot.sample.uart;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import java.util.Arrays;
+
+/**
+ * A batch of {@link LocationData}, stored and parcelled column by column.
+ * <p>
+ * Writing the batch costs one primitive array per field instead of one object per sample, and
+ * the receiving side only builds {@link LocationData} objects for the samples it asks for. Like
+ * {@link WheelDataBatch}, only the first {@link #size()} samples are written.
+ */
+public class LocationDataBatch implements Parcelable {
+    private long[] timestamps;
+    private int[] longitudes;
+    private int[] latitudes;
+    private int[] attitudes;
+    private int[] directions;
+    private int[] speeds;
+    private int[] hdops;
+    private int size;
+
+    public LocationDataBatch() {
+        this(16);
+    }
+
+    public LocationDataBatch(int capacity) {
+        timestamps = new long[capacity];
+        longitudes = new int[capacity];
+        latitudes = new int[capacity];
+        attitudes = new int[capacity];
+        directions = new int[capacity];
+        speeds = new int[capacity];
+        hdops = new int[capacity];
+    }
+
+    protected LocationDataBatch(Parcel in) {
+        timestamps = in.createLongArray();
+        longitudes = in.createIntArray();
+        latitudes = in.createIntArray();
+        attitudes = in.createIntArray();
+        directions = in.createIntArray();
+        speeds = in.createIntArray();
+        hdops = in.createIntArray();
+        size = timestamps.length;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        WheelDataBatch.writeLongs(dest, timestamps, size);
+        WheelDataBatch.writeInts(dest, longitudes, size);
+        WheelDataBatch.writeInts(dest, latitudes, size);
+        WheelDataBatch.writeInts(dest, attitudes, size);
+        WheelDataBatch.writeInts(dest, directions, size);
+        WheelDataBatch.writeInts(dest, speeds, size);
+        WheelDataBatch.writeInts(dest, hdops, size);
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    public static final Creator<LocationDataBatch> CREATOR = new Creator<LocationDataBatch>() {
+        @Override
+        public LocationDataBatch createFromParcel(Parcel in) {
+            return new LocationDataBatch(in);
+        }
+
+        @Override
+        public LocationDataBatch[] newArray(int size) {
+            return new LocationDataBatch[size];
+        }
+    };
+
+    public void add(LocationData locationData) {
+        if (size == timestamps.length) {
+            grow(Math.max(16, size * 2));
+        }
+        timestamps[size] = locationData.getTimestamp();
+        longitudes[size] = locationData.getLongitude();
+        latitudes[size] = locationData.getLatitude();
+        attitudes[size] = locationData.getAttitude();
+        directions[size] = locationData.getDirection();
+        speeds[size] = locationData.getSpeed();
+        hdops[size] = locationData.getHdop();
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public long getTimestamp(int index) {
+        checkIndex(index);
+        return timestamps[index];
+    }
+
+    public int getLongitude(int index) {
+        checkIndex(index);
+        return longitudes[index];
+    }
+
+    public int getLatitude(int index) {
+        checkIndex(index);
+        return latitudes[index];
+    }
+
+    public int getAttitude(int index) {
+        checkIndex(index);
+        return attitudes[index];
+    }
+
+    public int getDirection(int index) {
+        checkIndex(index);
+        return directions[index];
+    }
+
+    public int getSpeed(int index) {
+        checkIndex(index);
+        return speeds[index];
+    }
+
+    public int getHdop(int index) {
+        checkIndex(index);
+        return hdops[index];
+    }
+
+    public LocationData get(int index) {
+        return get(index, new LocationData());
+    }
+
+    public LocationData get(int index, LocationData out) {
+        checkIndex(index);
+        out.setTimestamp(timestamps[index]);
+        out.setLongitude(longitudes[index]);
+        out.setLatitude(latitudes[index]);
+        out.setAttitude(attitudes[index]);
+        out.setDirection(directions[index]);
+        out.setSpeed(speeds[index]);
+        out.setHdop(hdops[index]);
+        return out;
+    }
+
+    private void grow(int capacity) {
+        timestamps = Arrays.copyOf(timestamps, capacity);
+        longitudes = Arrays.copyOf(longitudes, capacity);
+        latitudes = Arrays.copyOf(latitudes, capacity);
+        attitudes = Arrays.copyOf(attitudes, capacity);
+        directions = Arrays.copyOf(directions, capacity);
+        speeds = Arrays.copyOf(speeds, capacity);
+        hdops = Arrays.copyOf(hdops, capacity);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + " size " + size);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LocationDataBatch{" +
+                "size=" + size +
+                '}';
+    }
+}
@@ -13,7 +13,21 @@ import com.segway.robot.service.AiBoxServiceManager;
 import com.segway.robot.service.BindStateListener;
 import com.segway.robot.service.execption.ServiceUnbindException;
 
+import java.io.File;
+import java.io.IOException;
+
 public class MainActivity extends Activity {
+    private static final long TELEMETRY_INTERVAL_MS = 100;
+    private static final long AI_RESULT_MIN_INTERVAL_MS = 100;
+    private static final long AI_RESULT_HEARTBEAT_MS = 1000;
+    private static final int TELEMETRY_HISTORY_CAPACITY = 600;
+    private static final int TELEMETRY_INDEX_CAPACITY = 600;
+    // the unit of the received timestamp is not documented, so the newest samples are used
+    // however old they are
+    private static final long TELEMETRY_INDEX_MAX_GAP = Long.MAX_VALUE;
+    private static final long TELEMETRY_LOG_SEGMENT_SIZE = 4 * 1024 * 1024;
+    private static final long TELEMETRY_LOG_SYNC_INTERVAL_MS = 5000;
+    private static final long TELEMETRY_LOG_MAX_SIZE = 64 * 1024 * 1024;
 
     private EditText mEtAiResult;
     private TextView mTvResult;
@@ -23,6 +37,47 @@ public class MainActivity extends Activity {
     private Button mBtnGetLocation;
     private Button mBtnGetSpeed;
 
+    private final AiResultUplink mAiResultUplink = new AiResultUplink(AI_RESULT_MIN_INTERVAL_MS, AI_RESULT_HEARTBEAT_MS);
+    private final TelemetryStream mTelemetryStream = new TelemetryStream(TELEMETRY_INTERVAL_MS);
+    private final TelemetryHistory mTelemetryHistory = new TelemetryHistory(TELEMETRY_HISTORY_CAPACITY);
+    // wheel and GPS samples keyed on the timestamp the UART received them at, the one clock both
+    // frames carry; the GPS time only has a one second resolution
+    private final TelemetryTimeIndex mTelemetryIndex = new TelemetryTimeIndex(TELEMETRY_INDEX_CAPACITY);
+    private volatile long mNewestReceivedTimestamp = Long.MIN_VALUE;
+    private final LocationData mTaggedLocation = new LocationData();
+    private TelemetryLogWriter mTelemetryLogWriter;
+    private final Object mTelemetryLock = new Object();
+    private final WheelData mWheelData = new WheelData();
+    private final LocationData mLocationData = new LocationData();
+    private boolean mHasWheelData;
+    private boolean mHasLocationData;
+
+    private final TelemetryStream.Listener mTelemetryListener = new TelemetryStream.Listener() {
+        @Override
+        public void onWheelData(WheelData wheelData) {
+            // the wheel timestamp is the received timestamp
+            mTelemetryIndex.appendWheel(wheelData.getTimestamp(), wheelData.getWheelSpeed());
+            mNewestReceivedTimestamp = Math.max(mNewestReceivedTimestamp, wheelData.getTimestamp());
+            synchronized (mTelemetryLock) {
+                mWheelData.set(wheelData);
+                mHasWheelData = true;
+            }
+        }
+
+        @Override
+        public void onLocationData(LocationData locationData) {
+            mTelemetryHistory.append(locationData);
+            long receivedTimestamp = mTelemetryStream.getLocationReceivedTimestamp();
+            mTelemetryIndex.appendLocation(receivedTimestamp, locationData.getLatitude(),
+                    locationData.getLongitude(), locationData.getSpeed());
+            mNewestReceivedTimestamp = Math.max(mNewestReceivedTimestamp, receivedTimestamp);
+            synchronized (mTelemetryLock) {
+                mLocationData.set(locationData);
+                mHasLocationData = true;
+            }
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -45,7 +100,8 @@ public class MainActivity extends Activity {
                         String[] aiResultArr = mEtAiResult.getText().toString().trim().split(" ");
                         int aiInference = Integer.parseInt(aiResultArr[0]);
                         int aiPedestrian = Integer.parseInt(aiResultArr[1]);
-                        ProtocolV1Util.sendAiResult(aiInference, aiPedestrian);
+                        mAiResultUplink.submit(aiInference, aiPedestrian);
+                        mTvResult.setText(describeVehicleState(mNewestReceivedTimestamp));
                     } catch (Exception e) {
                         Toast.makeText(this, "An Error Occurred", Toast.LENGTH_SHORT).show();
                     }
@@ -58,11 +114,8 @@ public class MainActivity extends Activity {
                         Toast.makeText(this, "Service Unbind!", Toast.LENGTH_SHORT).show();
                         return;
                     }
-                    try {
-                        LocationData locationData = ProtocolV1Util.getLocationData();
-                        mTvResult.setText(locationData != null ? locationData.toString() : "no location");
-                    } catch (Exception e) {
-                        Toast.makeText(this, "An Error Occurred", Toast.LENGTH_SHORT).show();
+                    synchronized (mTelemetryLock) {
+                        mTvResult.setText(mHasLocationData ? mLocationData.toString() : "no location");
                     }
                 }
         );
@@ -73,15 +126,17 @@ public class MainActivity extends Activity {
                         Toast.makeText(this, "Service Unbind!", Toast.LENGTH_SHORT).show();
                         return;
                     }
-                    try {
-                        WheelData wheelData = ProtocolV1Util.getWheelData();
-                        mTvResult.setText(wheelData != null ? wheelData.toString() : "no speed");
-                    } catch (Exception e) {
-                        Toast.makeText(this, "An Error Occurred", Toast.LENGTH_SHORT).show();
+                    synchronized (mTelemetryLock) {
+                        mTvResult.setText(mHasWheelData ? mWheelData.toString() : "no speed");
                     }
                 }
         );
 
+        mTelemetryStream.addListener(mTelemetryListener);
+        mTelemetryLogWriter = new TelemetryLogWriter(new File(getFilesDir(), "telemetry"),
+                TELEMETRY_LOG_SEGMENT_SIZE, TELEMETRY_LOG_SYNC_INTERVAL_MS, TELEMETRY_LOG_MAX_SIZE);
+        mTelemetryStream.setLogWriter(mTelemetryLogWriter);
+
         //bind service
         AiBoxServiceManager.getInstance().bindService(this, new BindStateListener() {
             @Override
@@ -92,13 +147,49 @@ public class MainActivity extends Activity {
                 } catch (RemoteException | ServiceUnbindException e) {
                     e.printStackTrace();
                 }
+                mTelemetryStream.start();
+                mAiResultUplink.start();
             }
 
             @Override
             public void onUnbind(String reason) {
                 mIsBind = false;
+                mTelemetryStream.stop();
+                mAiResultUplink.stop();
             }
         });
 
     }
+
+    /**
+     * The wheel speed and GPS fix interpolated at {@code receivedTimestamp}, as an AI result is
+     * tagged with them.
+     */
+    private String describeVehicleState(long receivedTimestamp) {
+        float wheelSpeed = mTelemetryIndex.interpolatedWheelSpeed(receivedTimestamp, TELEMETRY_INDEX_MAX_GAP);
+        StringBuilder builder = new StringBuilder("wheel speed: ")
+                .append(Float.isNaN(wheelSpeed) ? "unknown" : String.valueOf(wheelSpeed));
+        if (mTelemetryIndex.interpolatedLocation(receivedTimestamp, TELEMETRY_INDEX_MAX_GAP, mTaggedLocation)) {
+            builder.append(", latitude: ").append(mTaggedLocation.getLatitude())
+                    .append(", longitude: ").append(mTaggedLocation.getLongitude())
+                    .append(", speed: ").append(mTaggedLocation.getSpeed());
+        } else {
+            builder.append(", no location");
+        }
+        return builder.toString();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mTelemetryStream.stop();
+        mTelemetryStream.removeListener(mTelemetryListener);
+        mTelemetryStream.setLogWriter(null);
+        try {
+            mTelemetryLogWriter.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        mAiResultUplink.stop();
+    }
 }
@@ -70,9 +70,18 @@ public class ProtocolV1Util {
     public static final int TYPE_IOT = 2;
 
     private static final int[] WHEEL_PARAM = new int[]{TYPE_WHEEL};
-    private static final int[] WHEEL_LEN_PARAM = new int[]{2};
+    private static final int[] WHEEL_LEN_PARAM = new int[]{TelemetryDecoder.WHEEL_CONTENT_LENGTH};
     private static final int[] IOT_PARAM = new int[]{TYPE_IOT};
-    private static final int[] IOT_LEN_PARAM = new int[]{22};
+    private static final int[] IOT_LEN_PARAM = new int[]{TelemetryDecoder.IOT_CONTENT_LENGTH};
+    private static final int[] TELEMETRY_PARAM = new int[]{TYPE_WHEEL, TYPE_IOT};
+    private static final int[] TELEMETRY_LEN_PARAM = new int[]{TelemetryDecoder.WHEEL_CONTENT_LENGTH, TelemetryDecoder.IOT_CONTENT_LENGTH};
+
+    private static final ThreadLocal<TelemetryDecoder> DECODER = new ThreadLocal<TelemetryDecoder>() {
+        @Override
+        protected TelemetryDecoder initialValue() {
+            return new TelemetryDecoder();
+        }
+    };
 
     public static void sendAiResult(int aiInferenceResult, int pedestrianDetected) throws RemoteException, ServiceUnbindException {
         NativeByteBuffer nativeData = NativeByteBuffer.obtain(1);
@@ -83,42 +92,59 @@ public class ProtocolV1Util {
     }
 
     public static WheelData getWheelData() throws RemoteException, ServiceUnbindException {
-        byte[] data = AiBoxServiceManager.getInstance().getDataTransmit().getData(WHEEL_PARAM, WHEEL_LEN_PARAM);
-        if (data != null && data.length > 0) {
-            NativeByteBuffer nativeData = NativeByteBuffer.obtain().wrap(data);
-            int type = nativeData.getByte();
-            long timestamp = nativeData.getLong();
-            int size = nativeData.getByte();
-            int power = nativeData.getByte();
-            int speed = nativeData.getByte();
-            nativeData.recycle();
-            if (type == TYPE_WHEEL) {
-                return new WheelData(timestamp, speed);
-            }
-        }
-        return null;
+        WheelData wheelData = new WheelData();
+        return getWheelData(wheelData) ? wheelData : null;
+    }
+
+    /**
+     * Poll the wheel data into a caller-owned record.
+     *
+     * @return false if no wheel data was available; {@code out} is untouched in that case
+     */
+    public static boolean getWheelData(WheelData out) throws RemoteException, ServiceUnbindException {
+        TelemetryDecoder decoder = DECODER.get().wrap(getWheelFrame());
+        return decoder.next() && decoder.decodeWheel(out);
     }
 
     public static LocationData getLocationData() throws RemoteException, ServiceUnbindException {
-        byte[] data = AiBoxServiceManager.getInstance().getDataTransmit().getData(IOT_PARAM, IOT_LEN_PARAM);
-        if (data != null && data.length > 0) {
-            NativeByteBuffer nativeData = NativeByteBuffer.obtain().wrap(data);
-            int type = nativeData.getByte();
-            long timestamp = nativeData.getLong();
-            int size = nativeData.getByte();
-            int longitude = nativeData.getInt();
-            int latitude = nativeData.getInt();
-            int gpsAt = nativeData.getInt();
-            int gpsHeading = nativeData.getShort();
-            int gpsSpeed = nativeData.getShort();
-            int gpsHdop = nativeData.getShort();
-            long locTimestamp = nativeData.getInt() * 1000000L;
-            nativeData.recycle();
-            if (type == TYPE_IOT) {
-                return new LocationData(locTimestamp, longitude, latitude, gpsAt, gpsHeading, gpsSpeed, gpsHdop);
-            }
-        }
-        return null;
+        LocationData locationData = new LocationData();
+        return getLocationData(locationData) ? locationData : null;
+    }
+
+    /**
+     * Poll the GPS data into a caller-owned record.
+     *
+     * @return false if no GPS data was available; {@code out} is untouched in that case
+     */
+    public static boolean getLocationData(LocationData out) throws RemoteException, ServiceUnbindException {
+        TelemetryDecoder decoder = DECODER.get().wrap(getLocationFrame());
+        return decoder.next() && decoder.decodeLocation(out);
+    }
+
+    public static TelemetrySnapshot getTelemetrySnapshot() throws RemoteException, ServiceUnbindException {
+        TelemetrySnapshot snapshot = new TelemetrySnapshot();
+        return getTelemetrySnapshot(snapshot) ? snapshot : null;
+    }
+
+    /**
+     * Read the wheel and GPS data with a single getData() call.
+     *
+     * @return false if neither wheel nor GPS data was available
+     */
+    public static boolean getTelemetrySnapshot(TelemetrySnapshot out) throws RemoteException, ServiceUnbindException {
+        return out.parse(DECODER.get(), getTelemetryFrames());
+    }
+
+    static byte[] getTelemetryFrames() throws RemoteException, ServiceUnbindException {
+        return AiBoxServiceManager.getInstance().getDataTransmit().getData(TELEMETRY_PARAM, TELEMETRY_LEN_PARAM);
+    }
+
+    static byte[] getWheelFrame() throws RemoteException, ServiceUnbindException {
+        return AiBoxServiceManager.getInstance().getDataTransmit().getData(WHEEL_PARAM, WHEEL_LEN_PARAM);
+    }
+
+    static byte[] getLocationFrame() throws RemoteException, ServiceUnbindException {
+        return AiBoxServiceManager.getInstance().getDataTransmit().getData(IOT_PARAM, IOT_LEN_PARAM);
     }
 
 }
@@ -0,0 +1,143 @@
+package com.segway.robot.sample.uart;
+
+/**
+ * Reusable decoder for the frames returned by DataTransmit.getData().
+ * <p>
+ * Each frame has the layout described in {@link ProtocolV1Util}:
+ * -------------------------------------------------------------------------------------------
+ * Data Type(1byte) | Received timestamp(8byte) | Data length(1byte) | Data content(N byte)
+ * -------------------------------------------------------------------------------------------
+ * Multi-byte fields are packed little-endian, like the #pragma pack(1) structs they come from.
+ * <p>
+ * The decoder works as a cursor over a caller-owned byte array: {@link #wrap(byte[], int, int)}
+ * it once, then call {@link #next()} for every frame and decode the content straight into
+ * mutable {@link WheelData} / {@link LocationData} records. No objects are allocated while
+ * decoding, so one instance can be kept per polling thread. Not thread-safe.
+ */
+public class TelemetryDecoder {
+
+    public static final int HEADER_LENGTH = 10;
+    public static final int WHEEL_CONTENT_LENGTH = 2;
+    public static final int IOT_CONTENT_LENGTH = 22;
+
+    private byte[] data;
+    private int position;
+    private int limit;
+
+    private int frameOffset = -1;
+    private int type;
+    private long receivedTimestamp;
+    private int contentLength;
+
+    public TelemetryDecoder wrap(byte[] data) {
+        return wrap(data, 0, data != null ? data.length : 0);
+    }
+
+    public TelemetryDecoder wrap(byte[] data, int offset, int length) {
+        this.data = data;
+        this.position = offset;
+        this.limit = offset + length;
+        this.frameOffset = -1;
+        return this;
+    }
+
+    /**
+     * Advance to the next complete frame.
+     *
+     * @return false if there is no further complete frame in the wrapped range
+     */
+    public boolean next() {
+        if (data == null || limit - position < HEADER_LENGTH) {
+            frameOffset = -1;
+            return false;
+        }
+        int length = data[position + 9] & 0xff;
+        if (limit - position - HEADER_LENGTH < length) {
+            frameOffset = -1;
+            return false;
+        }
+        frameOffset = position;
+        type = data[position];
+        receivedTimestamp = getLong(position + 1);
+        contentLength = length;
+        position += HEADER_LENGTH + length;
+        return true;
+    }
+
+    public int type() {
+        return type;
+    }
+
+    public long receivedTimestamp() {
+        return receivedTimestamp;
+    }
+
+    public int contentLength() {
+        return contentLength;
+    }
+
+    /**
+     * @return offset of the current frame header in the wrapped array, or -1 before the first frame
+     */
+    public int frameOffset() {
+        return frameOffset;
+    }
+
+    /**
+     * @return total length of the current frame, header included
+     */
+    public int frameLength() {
+        return HEADER_LENGTH + contentLength;
+    }
+
+    /**
+     * Decode the current frame into {@code out}.
+     *
+     * @return false if the current frame is not a complete wheel frame; {@code out} is untouched
+     */
+    public boolean decodeWheel(WheelData out) {
+        if (frameOffset < 0 || type != ProtocolV1Util.TYPE_WHEEL || contentLength < WHEEL_CONTENT_LENGTH) {
+            return false;
+        }
+        int content = frameOffset + HEADER_LENGTH;
+        // content[0] is the battery power, which WheelData does not carry
+        out.setTimestamp(receivedTimestamp);
+        out.setWheelSpeed(data[content + 1]);
+        return true;
+    }
+
+    /**
+     * Decode the current frame into {@code out}.
+     *
+     * @return false if the current frame is not a complete GPS frame; {@code out} is untouched
+     */
+    public boolean decodeLocation(LocationData out) {
+        if (frameOffset < 0 || type != ProtocolV1Util.TYPE_IOT || contentLength < IOT_CONTENT_LENGTH) {
+            return false;
+        }
+        int content = frameOffset + HEADER_LENGTH;
+        out.setLongitude(getInt(content));
+        out.setLatitude(getInt(content + 4));
+        out.setAttitude(getInt(content + 8));
+        out.setDirection(getShort(content + 12));
+        out.setSpeed(getShort(content + 14));
+        out.setHdop(getShort(content + 16));
+        out.setTimestamp(getInt(content + 18) * 1000000L);
+        return true;
+    }
+
+    private short getShort(int offset) {
+        return (short) ((data[offset] & 0xff) | (data[offset + 1] << 8));
+    }
+
+    private int getInt(int offset) {
+        return (data[offset] & 0xff)
+                | (data[offset + 1] & 0xff) << 8
+                | (data[offset + 2] & 0xff) << 16
+                | data[offset + 3] << 24;
+    }
+
+    private long getLong(int offset) {
+        return (getInt(offset) & 0xffffffffL) | (long) getInt(offset + 4) << 32;
+    }
+}
@@ -0,0 +1,178 @@
+package com.segway.robot.sample.uart;
+
+/**
+ * Fixed-capacity history of GPS samples, stored column by column in primitive arrays.
+ * <p>
+ * Samples are appended in timestamp order; once the capacity is reached the oldest sample is
+ * overwritten. Every sample stores the running speed total and distance travelled since the
+ * last {@link #clear()}, so the mean speed and distance over any range are two binary searches
+ * of the timestamp column and a difference of prefix sums, and nothing is allocated after
+ * construction.
+ * <p>
+ * Indexes passed to the accessors are logical: 0 is the oldest retained sample and
+ * {@code size() - 1} the newest. Units are those of {@link LocationData}.
+ */
+public class TelemetryHistory {
+    private static final double EARTH_RADIUS_METERS = 6371008.8;
+    private static final double MICRO_DEGREES_TO_RADIANS = Math.PI / 180 / 1000000.0;
+
+    private final TimestampRing ring;
+    private final int[] speeds;
+    private final int[] latitudes;
+    private final int[] longitudes;
+    private final int[] headings;
+    private final int[] hdops;
+    // prefix sums since clear(); only ever added to, so nothing drifts as samples are evicted. The
+    // distance keeps well under a micrometer of precision for the first thousand kilometers.
+    private final long[] speedTotals;
+    private final double[] distanceTotals;
+
+    public TelemetryHistory(int capacity) {
+        ring = new TimestampRing(capacity);
+        speeds = new int[capacity];
+        latitudes = new int[capacity];
+        longitudes = new int[capacity];
+        headings = new int[capacity];
+        hdops = new int[capacity];
+        speedTotals = new long[capacity];
+        distanceTotals = new double[capacity];
+    }
+
+    public synchronized boolean append(LocationData locationData) {
+        return append(locationData.getTimestamp(), locationData.getSpeed(), locationData.getLatitude(),
+                locationData.getLongitude(), locationData.getDirection(), locationData.getHdop());
+    }
+
+    /**
+     * @return false if the sample is older than the newest retained sample and was ignored
+     */
+    public synchronized boolean append(long timestamp, int speed, int latitude, int longitude, int heading, int hdop) {
+        if (!ring.accepts(timestamp)) {
+            return false;
+        }
+        long speedTotal = speed;
+        double distanceTotal = 0;
+        if (ring.size() > 0) {
+            int newest = ring.physical(ring.size() - 1);
+            speedTotal += speedTotals[newest];
+            distanceTotal = distanceTotals[newest]
+                    + distanceMeters(latitudes[newest], longitudes[newest], latitude, longitude);
+        }
+        int index = ring.append(timestamp);
+        speeds[index] = speed;
+        latitudes[index] = latitude;
+        longitudes[index] = longitude;
+        headings[index] = heading;
+        hdops[index] = hdop;
+        speedTotals[index] = speedTotal;
+        distanceTotals[index] = distanceTotal;
+        return true;
+    }
+
+    public synchronized void clear() {
+        ring.clear();
+    }
+
+    public int capacity() {
+        return ring.capacity();
+    }
+
+    public synchronized int size() {
+        return ring.size();
+    }
+
+    public synchronized long timestamp(int index) {
+        return ring.at(ring.checkedPhysical(index));
+    }
+
+    public synchronized int speed(int index) {
+        return speeds[ring.checkedPhysical(index)];
+    }
+
+    public synchronized int latitude(int index) {
+        return latitudes[ring.checkedPhysical(index)];
+    }
+
+    public synchronized int longitude(int index) {
+        return longitudes[ring.checkedPhysical(index)];
+    }
+
+    public synchronized int heading(int index) {
+        return headings[ring.checkedPhysical(index)];
+    }
+
+    public synchronized int hdop(int index) {
+        return hdops[ring.checkedPhysical(index)];
+    }
+
+    /**
+     * @return the index of the first sample with a timestamp {@code >= timestamp}, or
+     * {@code size()} if there is none
+     */
+    public synchronized int firstIndexAtOrAfter(long timestamp) {
+        return ring.firstIndexAtOrAfter(timestamp);
+    }
+
+    /**
+     * @return the index of the last sample with a timestamp {@code <= timestamp}, or -1 if
+     * there is none
+     */
+    public synchronized int lastIndexAtOrBefore(long timestamp) {
+        return ring.lastIndexAtOrBefore(timestamp);
+    }
+
+    /**
+     * @return the mean speed over the whole window, or 0 if it is empty
+     */
+    public synchronized double meanSpeed() {
+        return meanSpeed(0, ring.size() - 1);
+    }
+
+    /**
+     * @return the distance travelled over the whole window, in meters
+     */
+    public synchronized double distanceMeters() {
+        return distanceMeters(0, ring.size() - 1);
+    }
+
+    /**
+     * @return the mean speed of the samples within [fromTimestamp, toTimestamp], or 0 if there are none
+     */
+    public synchronized double meanSpeed(long fromTimestamp, long toTimestamp) {
+        return meanSpeed(ring.firstIndexAtOrAfter(fromTimestamp), ring.lastIndexAtOrBefore(toTimestamp));
+    }
+
+    /**
+     * @return the distance travelled between the samples within [fromTimestamp, toTimestamp], in meters
+     */
+    public synchronized double distanceMeters(long fromTimestamp, long toTimestamp) {
+        return distanceMeters(ring.firstIndexAtOrAfter(fromTimestamp), ring.lastIndexAtOrBefore(toTimestamp));
+    }
+
+    private double meanSpeed(int from, int to) {
+        if (from > to) {
+            return 0;
+        }
+        int first = ring.physical(from);
+        long sum = speedTotals[ring.physical(to)] - speedTotals[first] + speeds[first];
+        return (double) sum / (to - from + 1);
+    }
+
+    private double distanceMeters(int from, int to) {
+        if (from >= to) {
+            return 0;
+        }
+        return distanceTotals[ring.physical(to)] - distanceTotals[ring.physical(from)];
+    }
+
+    /**
+     * Equirectangular approximation, accurate to well under 1% for the few meters between two fixes.
+     */
+    static double distanceMeters(int latitude1, int longitude1, int latitude2, int longitude2) {
+        double phi1 = latitude1 * MICRO_DEGREES_TO_RADIANS;
+        double phi2 = latitude2 * MICRO_DEGREES_TO_RADIANS;
+        double x = (longitude2 - longitude1) * MICRO_DEGREES_TO_RADIANS * Math.cos((phi1 + phi2) / 2);
+        double y = phi2 - phi1;
+        return Math.sqrt(x * x + y * y) * EARTH_RADIUS_METERS;
+    }
+}
@@ -0,0 +1,115 @@
+package com.segway.robot.sample.uart;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a segment written by {@link TelemetryLogWriter} through {@link TelemetryDecoder}.
+ * <p>
+ * The segment is read into memory once; replaying it decodes into the same reusable records as
+ * {@link TelemetryStream} and calls the listener for every frame, either as fast as possible or
+ * paced by the received timestamps. A frame cut short by a crash ends the replay.
+ */
+public class TelemetryLogReader {
+    private final byte[] data;
+    private final TelemetryDecoder decoder = new TelemetryDecoder();
+    private final WheelData wheelData = new WheelData();
+    private final LocationData locationData = new LocationData();
+
+    public TelemetryLogReader(File segment) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(segment, "r");
+        try {
+            long length = file.length();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("Segment too large: " + segment);
+            }
+            data = new byte[(int) length];
+            file.readFully(data);
+        } finally {
+            file.close();
+        }
+        if (data.length < TelemetryLogWriter.SEGMENT_HEADER_LENGTH
+                || readInt(0) != TelemetryLogWriter.MAGIC
+                || readInt(4) != TelemetryLogWriter.VERSION) {
+            throw new IOException("Not a telemetry segment: " + segment);
+        }
+    }
+
+    /**
+     * Replay all frames as fast as possible.
+     *
+     * @return the number of wheel and GPS frames replayed
+     */
+    public int replay(TelemetryStream.Listener listener) throws InterruptedException {
+        return replay(listener, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Replay all frames, sleeping between them according to their received timestamps.
+     *
+     * @param speed         replay speed relative to real time, 0 or less replays without pauses
+     * @param timestampUnit unit of the received timestamps
+     * @return the number of wheel and GPS frames replayed
+     */
+    public int replay(TelemetryStream.Listener listener, double speed, TimeUnit timestampUnit)
+            throws InterruptedException {
+        int count = 0;
+        long firstTimestamp = 0;
+        long startNs = System.nanoTime();
+        decoder.wrap(data, TelemetryLogWriter.SEGMENT_HEADER_LENGTH, data.length - TelemetryLogWriter.SEGMENT_HEADER_LENGTH);
+        while (decoder.next()) {
+            boolean isWheel = decoder.decodeWheel(wheelData);
+            boolean isLocation = !isWheel && decoder.decodeLocation(locationData);
+            if (!isWheel && !isLocation) {
+                continue;
+            }
+            if (speed > 0) {
+                if (count == 0) {
+                    firstTimestamp = decoder.receivedTimestamp();
+                }
+                long dueNs = startNs + (long) (timestampUnit.toNanos(decoder.receivedTimestamp() - firstTimestamp) / speed);
+                long waitNs = dueNs - System.nanoTime();
+                if (waitNs > 0) {
+                    TimeUnit.NANOSECONDS.sleep(waitNs);
+                }
+            }
+            if (isWheel) {
+                listener.onWheelData(wheelData);
+            } else {
+                listener.onLocationData(locationData);
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return the segments in {@code directory}, oldest first
+     */
+    public static File[] listSegments(File directory) {
+        File[] segments = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                String name = file.getName();
+                return file.isFile() && name.startsWith(TelemetryLogWriter.SEGMENT_PREFIX)
+                        && name.endsWith(TelemetryLogWriter.SEGMENT_SUFFIX);
+            }
+        });
+        if (segments == null) {
+            return new File[0];
+        }
+        Arrays.sort(segments);
+        return segments;
+    }
+
+    private int readInt(int offset) {
+        return (data[offset] & 0xff)
+                | (data[offset + 1] & 0xff) << 8
+                | (data[offset + 2] & 0xff) << 16
+                | data[offset + 3] << 24;
+    }
+}
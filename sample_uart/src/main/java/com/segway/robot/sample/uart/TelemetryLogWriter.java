@@ -0,0 +1,275 @@
+package com.segway.robot.sample.uart;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Appends raw telemetry frames, exactly as returned by getData(), to segment files.
+ * <p>
+ * Each segment starts with {@link #MAGIC} and {@link #VERSION} followed by the frames back to
+ * back; the frames are self-delimiting, so no extra framing is written. Frames are staged in a
+ * direct buffer and written through a {@link FileChannel}, which is forced to storage at most
+ * every {@code syncIntervalMs} and on {@link #close()}. The periodic fsyncs, and those of finished
+ * segments, run on a sync thread of the writer, so {@link #append} never waits for the storage; a
+ * failed one is thrown by the next append. A new segment is started once the current
+ * one would exceed {@code segmentSizeBytes}; the oldest segments are then deleted so that all
+ * segments, the new one counted at its full size, stay within {@code maxTotalBytes}. Read segments
+ * back with {@link TelemetryLogReader}.
+ */
+public class TelemetryLogWriter implements Closeable {
+    public static final int MAGIC = 0x474f4c54; // "TLOG"
+    public static final int VERSION = 1;
+    public static final int SEGMENT_HEADER_LENGTH = 8;
+    static final String SEGMENT_PREFIX = "telemetry_";
+    static final String SEGMENT_SUFFIX = ".tlog";
+
+    private static final int STAGING_SIZE = 64 * 1024;
+
+    private final File directory;
+    private final long segmentSizeBytes;
+    private final long maxTotalBytes;
+    private final long syncIntervalNs;
+    private final ByteBuffer staging = ByteBuffer.allocateDirect(STAGING_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private int sequence = -1;
+    private long segmentLength;
+    private long lastSyncNs;
+
+    private ExecutorService syncExecutor;
+    // a periodic fsync is queued or running, further ones are skipped until it is done
+    private final AtomicBoolean isSyncPending = new AtomicBoolean();
+    private volatile IOException syncError;
+
+    /**
+     * Create a writer that never deletes segments.
+     *
+     * @param directory        where the segments are created
+     * @param segmentSizeBytes size at which a new segment is started
+     * @param syncIntervalMs   maximum time between two fsyncs while frames are appended
+     */
+    public TelemetryLogWriter(File directory, long segmentSizeBytes, long syncIntervalMs) {
+        this(directory, segmentSizeBytes, syncIntervalMs, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param directory        where the segments are created
+     * @param segmentSizeBytes size at which a new segment is started
+     * @param syncIntervalMs   maximum time between two fsyncs while frames are appended
+     * @param maxTotalBytes    size all segments in {@code directory} are kept within, at least
+     *                         {@code segmentSizeBytes}
+     */
+    public TelemetryLogWriter(File directory, long segmentSizeBytes, long syncIntervalMs, long maxTotalBytes) {
+        if (segmentSizeBytes <= SEGMENT_HEADER_LENGTH + TelemetryDecoder.HEADER_LENGTH + 255) {
+            throw new IllegalArgumentException("The segment size is too small.");
+        }
+        if (maxTotalBytes < segmentSizeBytes) {
+            throw new IllegalArgumentException("The retained size is smaller than a segment.");
+        }
+        this.directory = directory;
+        this.segmentSizeBytes = segmentSizeBytes;
+        this.maxTotalBytes = maxTotalBytes;
+        this.syncIntervalNs = syncIntervalMs * 1000000L;
+    }
+
+    /**
+     * Append every complete frame of a getData() response.
+     */
+    public synchronized void append(byte[] frames) throws IOException {
+        if (frames != null) {
+            append(frames, 0, frames.length);
+        }
+    }
+
+    /**
+     * Append the frames in {@code data[offset, offset + length)}; the range must hold whole frames.
+     */
+    public synchronized void append(byte[] data, int offset, int length) throws IOException {
+        if (length <= 0) {
+            return;
+        }
+        IOException error = syncError;
+        if (error != null) {
+            syncError = null;
+            throw error;
+        }
+        if (channel == null || segmentLength + length > segmentSizeBytes) {
+            openNextSegment();
+        }
+        while (length > 0) {
+            if (!staging.hasRemaining()) {
+                drain();
+            }
+            int chunk = Math.min(length, staging.remaining());
+            staging.put(data, offset, chunk);
+            offset += chunk;
+            length -= chunk;
+            segmentLength += chunk;
+        }
+        long now = System.nanoTime();
+        if (now - lastSyncNs >= syncIntervalNs) {
+            drain();
+            lastSyncNs = now;
+            if (isSyncPending.compareAndSet(false, true)) {
+                final FileChannel syncChannel = channel;
+                syncExecutor.execute(() -> {
+                    try {
+                        force(syncChannel);
+                    } catch (IOException e) {
+                        syncError = e;
+                    } finally {
+                        isSyncPending.set(false);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Write out the staged frames and force them to storage, on the calling thread.
+     */
+    public synchronized void sync() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        drain();
+        force(channel);
+        lastSyncNs = System.nanoTime();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (syncExecutor != null) {
+            // let the queued fsyncs finish before their channels are closed
+            syncExecutor.shutdown();
+            try {
+                syncExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            syncExecutor = null;
+        }
+        if (channel == null) {
+            return;
+        }
+        try {
+            sync();
+        } finally {
+            file.close();
+            file = null;
+            channel = null;
+        }
+    }
+
+    /**
+     * Force {@code channel} to storage; runs on the sync thread except from {@link #sync()}.
+     */
+    void force(FileChannel channel) throws IOException {
+        channel.force(false);
+    }
+
+    /**
+     * @return the segment currently written to, or null before the first append
+     */
+    public synchronized File currentSegment() {
+        return channel != null ? segmentFile(directory, sequence) : null;
+    }
+
+    private void openNextSegment() throws IOException {
+        if (syncExecutor == null) {
+            syncExecutor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "TelemetryLogSync"));
+        }
+        if (channel != null) {
+            // the finished segment is forced and closed on the sync thread, after its queued fsync
+            drain();
+            final RandomAccessFile finished = file;
+            syncExecutor.execute(() -> {
+                try {
+                    try {
+                        force(finished.getChannel());
+                    } finally {
+                        finished.close();
+                    }
+                } catch (IOException e) {
+                    syncError = e;
+                }
+            });
+            file = null;
+            channel = null;
+        }
+        if (sequence < 0) {
+            // continue after the newest segment, files whose names do not parse are left alone
+            for (File segment : TelemetryLogReader.listSegments(directory)) {
+                sequence = Math.max(sequence, parseSequence(segment));
+            }
+        }
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        sequence++;
+        deleteOldSegments();
+        file = new RandomAccessFile(segmentFile(directory, sequence), "rw");
+        file.setLength(0);
+        channel = file.getChannel();
+        staging.clear();
+        staging.putInt(MAGIC);
+        staging.putInt(VERSION);
+        segmentLength = SEGMENT_HEADER_LENGTH;
+        lastSyncNs = System.nanoTime();
+    }
+
+    /**
+     * Delete the oldest segments before {@link #sequence} that do not fit into
+     * {@link #maxTotalBytes} next to a full new segment.
+     */
+    private void deleteOldSegments() {
+        if (maxTotalBytes == Long.MAX_VALUE) {
+            return;
+        }
+        File[] segments = TelemetryLogReader.listSegments(directory);
+        long total = segmentSizeBytes;
+        for (int i = segments.length - 1; i >= 0; i--) {
+            int segmentSequence = parseSequence(segments[i]);
+            if (segmentSequence < 0 || segmentSequence >= sequence) {
+                continue;
+            }
+            total += segments[i].length();
+            if (total > maxTotalBytes) {
+                // a segment that cannot be deleted still counts, older ones go instead
+                segments[i].delete();
+            }
+        }
+    }
+
+    private void drain() throws IOException {
+        staging.flip();
+        while (staging.hasRemaining()) {
+            channel.write(staging);
+        }
+        staging.clear();
+    }
+
+    static File segmentFile(File directory, int sequence) {
+        return new File(directory, String.format(Locale.US, "%s%08d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX));
+    }
+
+    private static int parseSequence(File segment) {
+        String name = segment.getName();
+        try {
+            return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
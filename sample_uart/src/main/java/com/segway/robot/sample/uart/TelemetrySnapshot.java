@@ -0,0 +1,71 @@
+package com.segway.robot.sample.uart;
+
+/**
+ * Wheel and GPS data read by the same getData() call.
+ * <p>
+ * The service answers a multi-type request with the frames concatenated one after another;
+ * {@link #parse(TelemetryDecoder, byte[])} splits them by their type/length header. A type that
+ * was not present in the response is reported through {@link #hasWheelData()} /
+ * {@link #hasLocationData()}, and its record keeps the previous values.
+ */
+public class TelemetrySnapshot {
+    private final WheelData wheelData = new WheelData();
+    private final LocationData locationData = new LocationData();
+    private boolean hasWheelData;
+    private boolean hasLocationData;
+    private long wheelReceivedTimestamp;
+    private long locationReceivedTimestamp;
+
+    /**
+     * Demultiplex the frames of a getData() response into this snapshot.
+     *
+     * @return true if at least one known frame was decoded
+     */
+    public boolean parse(TelemetryDecoder decoder, byte[] frames) {
+        hasWheelData = false;
+        hasLocationData = false;
+        decoder.wrap(frames);
+        while (decoder.next()) {
+            if (decoder.decodeWheel(wheelData)) {
+                hasWheelData = true;
+                wheelReceivedTimestamp = decoder.receivedTimestamp();
+            } else if (decoder.decodeLocation(locationData)) {
+                hasLocationData = true;
+                locationReceivedTimestamp = decoder.receivedTimestamp();
+            }
+        }
+        return hasWheelData || hasLocationData;
+    }
+
+    public WheelData getWheelData() {
+        return wheelData;
+    }
+
+    public LocationData getLocationData() {
+        return locationData;
+    }
+
+    public boolean hasWheelData() {
+        return hasWheelData;
+    }
+
+    public boolean hasLocationData() {
+        return hasLocationData;
+    }
+
+    public long getWheelReceivedTimestamp() {
+        return wheelReceivedTimestamp;
+    }
+
+    public long getLocationReceivedTimestamp() {
+        return locationReceivedTimestamp;
+    }
+
+    @Override
+    public String toString() {
+        return "TelemetrySnapshot{" +
+                "wheelData=" + (hasWheelData ? wheelData : null) +
+                ", locationData=" + (hasLocationData ? locationData : null) +
+                '}';
+    }
+}
@@ -0,0 +1,182 @@
+package com.segway.robot.sample.uart;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Polls the wheel and GPS data on one background thread, with a single getData() call per
+ * tick, and pushes every new frame to the registered listeners.
+ * <p>
+ * Frames are de-duplicated by their received timestamp, so listeners are only called when the
+ * scooter actually reported something new. Listeners are called on the reader thread with
+ * records owned by the stream; copy the values if you need them after the callback returns.
+ * <p>
+ * New frames are recorded to the log writer after the listeners were called. A writer that fails
+ * is detached, so a full or broken storage stops the recording but never the stream.
+ */
+public class TelemetryStream {
+    private static final String TAG = "TelemetryStream";
+
+    /**
+     * Definition of the telemetry listener.
+     */
+    public interface Listener {
+        void onWheelData(WheelData wheelData);
+
+        void onLocationData(LocationData locationData);
+    }
+
+    private final long mIntervalMs;
+    private final CopyOnWriteArrayList<Listener> mListeners = new CopyOnWriteArrayList<>();
+    private final TelemetryDecoder mDecoder = new TelemetryDecoder();
+    private final TelemetrySnapshot mSnapshot = new TelemetrySnapshot();
+    private long mLastWheelTimestamp = Long.MIN_VALUE;
+    private long mLastLocationTimestamp = Long.MIN_VALUE;
+
+    private final AtomicReference<TelemetryLogWriter> mLogWriter = new AtomicReference<>();
+
+    private volatile boolean mIsRunning;
+    private Thread mReaderThread;
+
+    /**
+     * @param intervalMs the polling interval of the reader thread
+     */
+    public TelemetryStream(long intervalMs) {
+        if (intervalMs <= 0) {
+            throw new IllegalArgumentException("The polling interval must be positive.");
+        }
+        mIntervalMs = intervalMs;
+    }
+
+    public void addListener(Listener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener is null");
+        }
+        mListeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Record every new frame to {@code logWriter}, or stop recording if it is null. The caller
+     * keeps ownership of the writer and closes it, also after it was detached by an error.
+     */
+    public void setLogWriter(TelemetryLogWriter logWriter) {
+        mLogWriter.set(logWriter);
+    }
+
+    public synchronized void start() {
+        if (mIsRunning) {
+            return;
+        }
+        mIsRunning = true;
+        mLastWheelTimestamp = Long.MIN_VALUE;
+        mLastLocationTimestamp = Long.MIN_VALUE;
+        mReaderThread = new ReaderThread();
+        mReaderThread.start();
+    }
+
+    public synchronized void stop() {
+        mIsRunning = false;
+        if (mReaderThread != null) {
+            mReaderThread.interrupt();
+            try {
+                mReaderThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            mReaderThread = null;
+        }
+    }
+
+    public boolean isRunning() {
+        return mIsRunning;
+    }
+
+    /**
+     * @return the received timestamp of the newest GPS frame. Call it from
+     * {@link Listener#onLocationData}, where it belongs to the frame being dispatched.
+     */
+    public long getLocationReceivedTimestamp() {
+        return mLastLocationTimestamp;
+    }
+
+    private void poll() throws Exception {
+        dispatch(ProtocolV1Util.getTelemetryFrames());
+    }
+
+    /**
+     * Call the listeners for, then record, the frames of a getData() response that are new.
+     */
+    void dispatch(byte[] frames) {
+        if (!mSnapshot.parse(mDecoder, frames)) {
+            return;
+        }
+        boolean isNewWheel = mSnapshot.hasWheelData() && mSnapshot.getWheelReceivedTimestamp() != mLastWheelTimestamp;
+        boolean isNewLocation = mSnapshot.hasLocationData() && mSnapshot.getLocationReceivedTimestamp() != mLastLocationTimestamp;
+        if (isNewWheel) {
+            mLastWheelTimestamp = mSnapshot.getWheelReceivedTimestamp();
+            for (Listener listener : mListeners) {
+                listener.onWheelData(mSnapshot.getWheelData());
+            }
+        }
+        if (isNewLocation) {
+            mLastLocationTimestamp = mSnapshot.getLocationReceivedTimestamp();
+            for (Listener listener : mListeners) {
+                listener.onLocationData(mSnapshot.getLocationData());
+            }
+        }
+        TelemetryLogWriter logWriter = mLogWriter.get();
+        if (logWriter != null && (isNewWheel || isNewLocation)) {
+            record(logWriter, frames, isNewWheel, isNewLocation);
+        }
+    }
+
+    private void record(TelemetryLogWriter logWriter, byte[] frames, boolean isNewWheel, boolean isNewLocation) {
+        try {
+            mDecoder.wrap(frames);
+            while (mDecoder.next()) {
+                if ((isNewWheel && mDecoder.type() == ProtocolV1Util.TYPE_WHEEL)
+                        || (isNewLocation && mDecoder.type() == ProtocolV1Util.TYPE_IOT)) {
+                    logWriter.append(frames, mDecoder.frameOffset(), mDecoder.frameLength());
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "record telemetry error, recording stopped", e);
+            // unless another writer was set meanwhile
+            mLogWriter.compareAndSet(logWriter, null);
+        }
+    }
+
+    private class ReaderThread extends Thread {
+        ReaderThread() {
+            super(TAG);
+        }
+
+        @Override
+        public void run() {
+            while (mIsRunning) {
+                long startTs = SystemClock.elapsedRealtime();
+                try {
+                    poll();
+                } catch (Exception e) {
+                    Log.w(TAG, "poll telemetry error", e);
+                }
+                long interval = mIntervalMs - (SystemClock.elapsedRealtime() - startTs);
+                if (interval > 0) {
+                    try {
+                        sleep(interval);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.segway.robot.sample.uart;
+
+/**
+ * Time index joining wheel speed and GPS fixes to arbitrary timestamps, e.g. the
+ * platformTimeStamp of a vision frame.
+ * <p>
+ * Each series keeps its most recent samples in a {@link TimestampRing} with primitive columns,
+ * and every lookup is a single O(log n) binary search without allocating. All timestamps handed
+ * to one index must come from the same clock, e.g. the received timestamp of the UART frames;
+ * convert the others first. Samples older than the newest one of their series are ignored.
+ */
+public class TelemetryTimeIndex {
+    // columns of the wheel series
+    private static final int WHEEL_SPEED = 0;
+    private static final int WHEEL_COLUMNS = 1;
+    // columns of the location series
+    private static final int LATITUDE = 0;
+    private static final int LONGITUDE = 1;
+    private static final int SPEED = 2;
+    private static final int LOCATION_COLUMNS = 3;
+
+    private final Series wheel;
+    private final Series location;
+
+    /**
+     * @param capacity number of samples kept per series
+     */
+    public TelemetryTimeIndex(int capacity) {
+        wheel = new Series(capacity, WHEEL_COLUMNS);
+        location = new Series(capacity, LOCATION_COLUMNS);
+    }
+
+    public synchronized boolean appendWheel(long timestamp, int wheelSpeed) {
+        int index = wheel.ring.append(timestamp);
+        if (index < 0) {
+            return false;
+        }
+        wheel.columns[WHEEL_SPEED][index] = wheelSpeed;
+        return true;
+    }
+
+    public synchronized boolean appendLocation(long timestamp, int latitude, int longitude, int speed) {
+        int index = location.ring.append(timestamp);
+        if (index < 0) {
+            return false;
+        }
+        location.columns[LATITUDE][index] = latitude;
+        location.columns[LONGITUDE][index] = longitude;
+        location.columns[SPEED][index] = speed;
+        return true;
+    }
+
+    /**
+     * @return the speed of the wheel sample closest to {@code timestamp}, or {@link Float#NaN} if
+     * there is none within {@code maxDistance}
+     */
+    public synchronized float nearestWheelSpeed(long timestamp, long maxDistance) {
+        int upper = wheel.search(timestamp, maxDistance);
+        return upper < 0 ? Float.NaN : wheel.columns[WHEEL_SPEED][wheel.nearest(upper, timestamp)];
+    }
+
+    /**
+     * @return the wheel speed linearly interpolated between the samples around {@code timestamp},
+     * the nearest sample outside of the recorded range, or {@link Float#NaN} if there is none
+     * within {@code maxDistance}
+     */
+    public synchronized float interpolatedWheelSpeed(long timestamp, long maxDistance) {
+        int upper = wheel.search(timestamp, maxDistance);
+        return upper < 0 ? Float.NaN : (float) wheel.interpolate(WHEEL_SPEED, upper, timestamp);
+    }
+
+    /**
+     * Write the GPS fix closest to {@code timestamp} into {@code out}.
+     *
+     * @return false if there is no fix within {@code maxDistance}; {@code out} is untouched then
+     */
+    public synchronized boolean nearestLocation(long timestamp, long maxDistance, LocationData out) {
+        int upper = location.search(timestamp, maxDistance);
+        if (upper < 0) {
+            return false;
+        }
+        int index = location.nearest(upper, timestamp);
+        out.setTimestamp(location.ring.at(index));
+        out.setLatitude(location.columns[LATITUDE][index]);
+        out.setLongitude(location.columns[LONGITUDE][index]);
+        out.setSpeed(location.columns[SPEED][index]);
+        return true;
+    }
+
+    /**
+     * Write the GPS position and speed interpolated at {@code timestamp} into {@code out}.
+     *
+     * @return false if there is no fix within {@code maxDistance}; {@code out} is untouched then
+     */
+    public synchronized boolean interpolatedLocation(long timestamp, long maxDistance, LocationData out) {
+        int upper = location.search(timestamp, maxDistance);
+        if (upper < 0) {
+            return false;
+        }
+        // interpolate in double, float cannot hold micro-degrees exactly
+        out.setTimestamp(timestamp);
+        out.setLatitude((int) Math.round(location.interpolate(LATITUDE, upper, timestamp)));
+        out.setLongitude((int) Math.round(location.interpolate(LONGITUDE, upper, timestamp)));
+        out.setSpeed((int) Math.round(location.interpolate(SPEED, upper, timestamp)));
+        return true;
+    }
+
+    public synchronized void clear() {
+        wheel.ring.clear();
+        location.ring.clear();
+    }
+
+    private static class Series {
+        final TimestampRing ring;
+        final int[][] columns;
+
+        Series(int capacity, int columnCount) {
+            ring = new TimestampRing(capacity);
+            columns = new int[columnCount][capacity];
+        }
+
+        /**
+         * @return the logical index of the first sample at or after {@code timestamp}, which
+         * {@link #nearest} and {@link #interpolate} take, or -1 if no sample is within
+         * {@code maxDistance}
+         */
+        int search(long timestamp, long maxDistance) {
+            if (ring.size() == 0) {
+                return -1;
+            }
+            int upper = ring.firstIndexAtOrAfter(timestamp);
+            return Math.abs(ring.at(nearest(upper, timestamp)) - timestamp) <= maxDistance ? upper : -1;
+        }
+
+        /**
+         * @return the physical index of the sample nearest to {@code timestamp}
+         */
+        int nearest(int upper, long timestamp) {
+            if (upper == 0) {
+                return ring.physical(0);
+            } else if (upper == ring.size()) {
+                return ring.physical(ring.size() - 1);
+            }
+            int after = ring.physical(upper);
+            int before = ring.physical(upper - 1);
+            return ring.at(after) - timestamp < timestamp - ring.at(before) ? after : before;
+        }
+
+        double interpolate(int column, int upper, long timestamp) {
+            if (upper == 0) {
+                return columns[column][ring.physical(0)];
+            } else if (upper == ring.size()) {
+                return columns[column][ring.physical(ring.size() - 1)];
+            }
+            int after = ring.physical(upper);
+            int before = ring.physical(upper - 1);
+            long span = ring.at(after) - ring.at(before);
+            if (span == 0) {
+                return columns[column][after];
+            }
+            double ratio = (double) (timestamp - ring.at(before)) / span;
+            return columns[column][before] + (columns[column][after] - (double) columns[column][before]) * ratio;
+        }
+    }
+}
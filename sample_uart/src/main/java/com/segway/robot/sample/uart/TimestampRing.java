@@ -0,0 +1,123 @@
+package com.segway.robot.sample.uart;
+
+/**
+ * Timestamps of a fixed-capacity ring of samples in append order, shared by the columnar
+ * telemetry stores which keep their other fields in parallel arrays indexed by
+ * {@link #physical(int)}.
+ * <p>
+ * Logical index 0 is the oldest retained sample and {@code size() - 1} the newest. Not thread
+ * safe, the owners synchronize.
+ */
+final class TimestampRing {
+    private final int capacity;
+    private final long[] timestamps;
+    private int head;
+    private int size;
+
+    TimestampRing(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity must be positive.");
+        }
+        this.capacity = capacity;
+        timestamps = new long[capacity];
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isFull() {
+        return size == capacity;
+    }
+
+    /**
+     * @return true if a sample with {@code timestamp} would be appended
+     */
+    boolean accepts(long timestamp) {
+        return size == 0 || timestamp >= timestamps[physical(size - 1)];
+    }
+
+    /**
+     * Append a sample, overwriting the oldest one when the ring is full; owners read the
+     * overwritten sample at {@code physical(0)} before appending.
+     *
+     * @return the physical index to fill, or -1 if the sample is older than the newest one
+     */
+    int append(long timestamp) {
+        if (!accepts(timestamp)) {
+            return -1;
+        }
+        if (size == capacity) {
+            head = physical(1);
+            size--;
+        }
+        int index = physical(size);
+        timestamps[index] = timestamp;
+        size++;
+        return index;
+    }
+
+    void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    int physical(int index) {
+        int i = head + index;
+        return i < capacity ? i : i - capacity;
+    }
+
+    int checkedPhysical(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + " size " + size);
+        }
+        return physical(index);
+    }
+
+    /**
+     * @return the timestamp at a physical index
+     */
+    long at(int physicalIndex) {
+        return timestamps[physicalIndex];
+    }
+
+    /**
+     * @return the index of the first sample with a timestamp {@code >= timestamp}, or
+     * {@code size()} if there is none
+     */
+    int firstIndexAtOrAfter(long timestamp) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[physical(mid)] < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the index of the last sample with a timestamp {@code <= timestamp}, or -1 if
+     * there is none
+     */
+    int lastIndexAtOrBefore(long timestamp) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[physical(mid)] <= timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low - 1;
+    }
+}
@@ -62,6 +62,11 @@ public class WheelData implements Parcelable {
         this.timestamp = timestamp;
     }
 
+    public void set(WheelData other) {
+        this.timestamp = other.timestamp;
+        this.wheelSpeed = other.wheelSpeed;
+    }
+
     @Override
     public String toString() {
         return "WheelData{" +
@@ -0,0 +1,139 @@
+package com.segway.robot.sample.uart;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import java.util.Arrays;
+
+/**
+ * A batch of {@link WheelData}, stored and parcelled column by column.
+ * <p>
+ * Writing the batch costs one primitive array per field instead of one object per sample, and
+ * the receiving side only builds {@link WheelData} objects for the samples it asks for. Only the
+ * first {@link #size()} samples are written and the batch is left untouched, so a batch can be
+ * cleared, refilled and written again without reallocating.
+ */
+public class WheelDataBatch implements Parcelable {
+    private long[] timestamps;
+    private int[] wheelSpeeds;
+    private int size;
+
+    public WheelDataBatch() {
+        this(16);
+    }
+
+    public WheelDataBatch(int capacity) {
+        timestamps = new long[capacity];
+        wheelSpeeds = new int[capacity];
+    }
+
+    protected WheelDataBatch(Parcel in) {
+        timestamps = in.createLongArray();
+        wheelSpeeds = in.createIntArray();
+        size = timestamps.length;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        writeLongs(dest, timestamps, size);
+        writeInts(dest, wheelSpeeds, size);
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    public static final Creator<WheelDataBatch> CREATOR = new Creator<WheelDataBatch>() {
+        @Override
+        public WheelDataBatch createFromParcel(Parcel in) {
+            return new WheelDataBatch(in);
+        }
+
+        @Override
+        public WheelDataBatch[] newArray(int size) {
+            return new WheelDataBatch[size];
+        }
+    };
+
+    public void add(WheelData wheelData) {
+        add(wheelData.getTimestamp(), wheelData.getWheelSpeed());
+    }
+
+    public void add(long timestamp, int wheelSpeed) {
+        if (size == timestamps.length) {
+            grow(Math.max(16, size * 2));
+        }
+        timestamps[size] = timestamp;
+        wheelSpeeds[size] = wheelSpeed;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public long getTimestamp(int index) {
+        checkIndex(index);
+        return timestamps[index];
+    }
+
+    public int getWheelSpeed(int index) {
+        checkIndex(index);
+        return wheelSpeeds[index];
+    }
+
+    public WheelData get(int index) {
+        return get(index, new WheelData());
+    }
+
+    public WheelData get(int index, WheelData out) {
+        checkIndex(index);
+        out.setTimestamp(timestamps[index]);
+        out.setWheelSpeed(wheelSpeeds[index]);
+        return out;
+    }
+
+    private void grow(int capacity) {
+        timestamps = Arrays.copyOf(timestamps, capacity);
+        wheelSpeeds = Arrays.copyOf(wheelSpeeds, capacity);
+    }
+
+    /**
+     * Write {@code values[0, count)} in the layout of {@link Parcel#writeLongArray(long[])}, so the
+     * column is read back with {@link Parcel#createLongArray()}.
+     */
+    static void writeLongs(Parcel dest, long[] values, int count) {
+        dest.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            dest.writeLong(values[i]);
+        }
+    }
+
+    /**
+     * Write {@code values[0, count)} in the layout of {@link Parcel#writeIntArray(int[])}.
+     */
+    static void writeInts(Parcel dest, int[] values, int count) {
+        dest.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            dest.writeInt(values[i]);
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + " size " + size);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "WheelDataBatch{" +
+                "size=" + size +
+                '}';
+    }
+}
@@ -0,0 +1,128 @@
+package com.segway.robot.sample.uart;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link AiResultUplink}, using an in-memory sender.
+ */
+public class AiResultUplinkTest {
+
+    private static class RecordingSender implements AiResultUplink.Sender {
+        final List<Integer> sent = new ArrayList<>();
+
+        @Override
+        public synchronized void send(int aiInferenceResult, int pedestrianDetected) {
+            sent.add(aiInferenceResult | pedestrianDetected << 4);
+        }
+
+        synchronized int count() {
+            return sent.size();
+        }
+
+        synchronized int last() {
+            return sent.get(sent.size() - 1);
+        }
+    }
+
+    @Test
+    public void coalesceIdenticalResults() throws InterruptedException {
+        RecordingSender sender = new RecordingSender();
+        AiResultUplink uplink = new AiResultUplink(20, 0, sender);
+        uplink.start();
+        for (int i = 0; i < 1000; i++) {
+            uplink.submit(3, 1);
+        }
+        Thread.sleep(100);
+        uplink.stop();
+
+        assertEquals(1, sender.count());
+        assertEquals(3 | 1 << 4, sender.last());
+        assertEquals(1, uplink.getSentCount());
+        assertEquals(999, uplink.getCoalescedCount());
+        assertEquals(0, uplink.getDroppedCount());
+    }
+
+    @Test(timeout = 10000)
+    public void resultBeingSentIsNotQueuedAgain() throws InterruptedException {
+        final CountDownLatch sending = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        RecordingSender sender = new RecordingSender() {
+            @Override
+            public void send(int aiInferenceResult, int pedestrianDetected) {
+                sending.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.send(aiInferenceResult, pedestrianDetected);
+            }
+        };
+        AiResultUplink uplink = new AiResultUplink(0, 0, sender);
+        uplink.start();
+        uplink.submit(3, 1);
+        assertTrue(sending.await(5, TimeUnit.SECONDS));
+        // the value is taken but the send has not returned yet
+        uplink.submit(3, 1);
+        release.countDown();
+        Thread.sleep(50);
+        uplink.stop();
+
+        assertEquals(1, sender.count());
+        assertEquals(1, uplink.getCoalescedCount());
+    }
+
+    @Test
+    public void rateLimitKeepsLatestResult() throws InterruptedException {
+        RecordingSender sender = new RecordingSender();
+        AiResultUplink uplink = new AiResultUplink(100, 0, sender);
+        uplink.start();
+        int submitted = 0;
+        long end = System.currentTimeMillis() + 250;
+        while (System.currentTimeMillis() < end) {
+            uplink.submit(submitted % 10, 0);
+            submitted++;
+        }
+        uplink.submit(9, 1);
+        submitted++;
+        Thread.sleep(250);
+        uplink.stop();
+
+        assertTrue("sent " + sender.count(), sender.count() <= 5);
+        assertEquals(9 | 1 << 4, sender.last());
+        assertEquals(submitted, uplink.getSentCount() + uplink.getCoalescedCount() + uplink.getDroppedCount());
+    }
+
+    @Test
+    public void heartbeatRepeatsLastResult() throws InterruptedException {
+        RecordingSender sender = new RecordingSender();
+        AiResultUplink uplink = new AiResultUplink(0, 20, sender);
+        uplink.start();
+        uplink.submit(1, 0);
+        Thread.sleep(200);
+        uplink.stop();
+
+        assertTrue("sent " + sender.count(), sender.count() >= 3);
+        assertEquals(1, sender.last());
+    }
+
+    @Test
+    public void submitBeforeStartIsSentOnStart() throws InterruptedException {
+        RecordingSender sender = new RecordingSender();
+        AiResultUplink uplink = new AiResultUplink(0, 0, sender);
+        uplink.submit(2, 1);
+        uplink.start();
+        Thread.sleep(50);
+        uplink.stop();
+
+        assertEquals(1, sender.count());
+        assertEquals(2 | 1 << 4, sender.last());
+    }
+}
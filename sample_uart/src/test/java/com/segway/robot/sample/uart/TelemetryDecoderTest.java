@@ -0,0 +1,127 @@
+package com.segway.robot.sample.uart;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link TelemetryDecoder}, using synthetic wire frames.
+ */
+public class TelemetryDecoderTest {
+
+    static void putWheelFrame(ByteBuffer buffer, long receivedTimestamp, int power, int speed) {
+        buffer.put((byte) ProtocolV1Util.TYPE_WHEEL);
+        buffer.putLong(receivedTimestamp);
+        buffer.put((byte) TelemetryDecoder.WHEEL_CONTENT_LENGTH);
+        buffer.put((byte) power);
+        buffer.put((byte) speed);
+    }
+
+    static void putLocationFrame(ByteBuffer buffer, long receivedTimestamp, int longitude, int latitude,
+                                 int attitude, int heading, int speed, int hdop, int seconds) {
+        buffer.put((byte) ProtocolV1Util.TYPE_IOT);
+        buffer.putLong(receivedTimestamp);
+        buffer.put((byte) TelemetryDecoder.IOT_CONTENT_LENGTH);
+        buffer.putInt(longitude);
+        buffer.putInt(latitude);
+        buffer.putInt(attitude);
+        buffer.putShort((short) heading);
+        buffer.putShort((short) speed);
+        buffer.putShort((short) hdop);
+        buffer.putInt(seconds);
+    }
+
+    static ByteBuffer frameBuffer(int capacity) {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Test
+    public void decodeWheel() {
+        ByteBuffer buffer = frameBuffer(12);
+        putWheelFrame(buffer, 1234567890123L, 80, 17);
+
+        TelemetryDecoder decoder = new TelemetryDecoder().wrap(buffer.array());
+        WheelData wheelData = new WheelData();
+        assertTrue(decoder.next());
+        assertEquals(ProtocolV1Util.TYPE_WHEEL, decoder.type());
+        assertTrue(decoder.decodeWheel(wheelData));
+        assertFalse(decoder.decodeLocation(new LocationData()));
+        assertEquals(1234567890123L, wheelData.getTimestamp());
+        assertEquals(17, wheelData.getWheelSpeed());
+        assertFalse(decoder.next());
+    }
+
+    @Test
+    public void decodeLocation() {
+        ByteBuffer buffer = frameBuffer(32);
+        putLocationFrame(buffer, 42L, -114123922, 22631426, 12345, 456, 123, 150, 1700000000);
+
+        TelemetryDecoder decoder = new TelemetryDecoder().wrap(buffer.array());
+        LocationData locationData = new LocationData();
+        assertTrue(decoder.next());
+        assertEquals(42L, decoder.receivedTimestamp());
+        assertTrue(decoder.decodeLocation(locationData));
+        assertEquals(-114123922, locationData.getLongitude());
+        assertEquals(22631426, locationData.getLatitude());
+        assertEquals(12345, locationData.getAttitude());
+        assertEquals(456, locationData.getDirection());
+        assertEquals(123, locationData.getSpeed());
+        assertEquals(150, locationData.getHdop());
+        assertEquals(1700000000L * 1000000L, locationData.getTimestamp());
+    }
+
+    @Test
+    public void truncatedFrameIsRejected() {
+        ByteBuffer buffer = frameBuffer(32);
+        putLocationFrame(buffer, 42L, 1, 2, 3, 4, 5, 6, 7);
+
+        TelemetryDecoder decoder = new TelemetryDecoder().wrap(buffer.array(), 0, 20);
+        assertFalse(decoder.next());
+        assertFalse(decoder.decodeLocation(new LocationData()));
+        assertFalse(new TelemetryDecoder().wrap(null).next());
+    }
+
+    @Test
+    public void decodeDoesNotAllocate() {
+        ByteBuffer buffer = frameBuffer(44);
+        putWheelFrame(buffer, 1L, 50, 12);
+        putLocationFrame(buffer, 2L, 3, 4, 5, 6, 7, 8, 9);
+        byte[] data = buffer.array();
+
+        TelemetryDecoder decoder = new TelemetryDecoder();
+        WheelData wheelData = new WheelData();
+        LocationData locationData = new LocationData();
+        com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        // warm up so that the measured loop runs compiled code
+        long checksum = decodeAll(decoder, data, wheelData, locationData, 20000);
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        checksum += decodeAll(decoder, data, wheelData, locationData, 100000);
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+
+        assertEquals(120000L * (12 + 9), checksum);
+        assertEquals(0L, allocated);
+    }
+
+    private static long decodeAll(TelemetryDecoder decoder, byte[] data, WheelData wheelData,
+                                  LocationData locationData, int iterations) {
+        long checksum = 0;
+        for (int i = 0; i < iterations; i++) {
+            decoder.wrap(data);
+            while (decoder.next()) {
+                if (decoder.decodeWheel(wheelData)) {
+                    checksum += wheelData.getWheelSpeed();
+                } else if (decoder.decodeLocation(locationData)) {
+                    checksum += locationData.getTimestamp() / 1000000L;
+                }
+            }
+        }
+        return checksum;
+    }
+}
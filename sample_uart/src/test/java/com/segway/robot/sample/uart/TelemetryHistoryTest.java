@@ -0,0 +1,110 @@
+package com.segway.robot.sample.uart;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link TelemetryHistory}.
+ */
+public class TelemetryHistoryTest {
+
+    // about 1.11 meters of latitude
+    private static final int STEP = 10;
+
+    @Test
+    public void aggregatesFollowEviction() {
+        TelemetryHistory history = new TelemetryHistory(4);
+        assertEquals(0, history.meanSpeed(), 0);
+        assertEquals(0, history.distanceMeters(), 0);
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(history.append(i * 1000L, i * 10, 22000000 + i * STEP, 114000000, 900, 120));
+        }
+        assertEquals(4, history.size());
+        assertEquals(6000L, history.timestamp(0));
+        assertEquals(9000L, history.timestamp(3));
+        assertEquals((60 + 70 + 80 + 90) / 4.0, history.meanSpeed(), 1e-9);
+
+        double step = TelemetryHistory.distanceMeters(22000000, 114000000, 22000000 + STEP, 114000000);
+        assertEquals(1.11, step, 0.01);
+        assertEquals(3 * step, history.distanceMeters(), 1e-6);
+    }
+
+    @Test
+    public void aggregatesMatchRecomputation() {
+        TelemetryHistory history = new TelemetryHistory(50);
+        java.util.Random random = new java.util.Random(7);
+        int latitude = 22631426;
+        int longitude = -114123922;
+        for (int i = 0; i < 1000; i++) {
+            latitude += random.nextInt(40) - 20;
+            longitude += random.nextInt(40) - 20;
+            history.append(i, random.nextInt(250), latitude, longitude, 0, 0);
+
+            long speedSum = 0;
+            double distance = 0;
+            for (int j = 0; j < history.size(); j++) {
+                speedSum += history.speed(j);
+                if (j > 0) {
+                    distance += TelemetryHistory.distanceMeters(history.latitude(j - 1), history.longitude(j - 1),
+                            history.latitude(j), history.longitude(j));
+                }
+            }
+            assertEquals((double) speedSum / history.size(), history.meanSpeed(), 1e-9);
+            assertEquals(distance, history.distanceMeters(), 1e-6);
+        }
+    }
+
+    @Test
+    public void longSessionDoesNotDrift() {
+        TelemetryHistory history = new TelemetryHistory(16);
+        java.util.Random random = new java.util.Random(11);
+        int latitude = 22631426;
+        int longitude = -114123922;
+        // a day of fixes at 10 Hz
+        for (int i = 0; i < 864000; i++) {
+            latitude += random.nextInt(200) - 100;
+            longitude += random.nextInt(200) - 100;
+            history.append(i * 100L, random.nextInt(250), latitude, longitude, 0, 0);
+        }
+        double distance = 0;
+        for (int j = 1; j < history.size(); j++) {
+            distance += TelemetryHistory.distanceMeters(history.latitude(j - 1), history.longitude(j - 1),
+                    history.latitude(j), history.longitude(j));
+        }
+        assertEquals(distance, history.distanceMeters(), 1e-6);
+        assertEquals(distance, history.distanceMeters(0, Long.MAX_VALUE), 1e-6);
+    }
+
+    @Test
+    public void rangeQueries() {
+        TelemetryHistory history = new TelemetryHistory(8);
+        for (int i = 0; i < 12; i++) {
+            history.append(i * 100L, i, 22000000 + i * STEP, 114000000, 0, 0);
+        }
+        // retained timestamps: 400 .. 1100
+        assertEquals(0, history.firstIndexAtOrAfter(0));
+        assertEquals(2, history.firstIndexAtOrAfter(550));
+        assertEquals(2, history.firstIndexAtOrAfter(600));
+        assertEquals(8, history.firstIndexAtOrAfter(1200));
+        assertEquals(-1, history.lastIndexAtOrBefore(399));
+        assertEquals(1, history.lastIndexAtOrBefore(550));
+        assertEquals(7, history.lastIndexAtOrBefore(5000));
+
+        assertEquals((6 + 7 + 8) / 3.0, history.meanSpeed(550, 800), 1e-9);
+        assertEquals(0, history.meanSpeed(2000, 3000), 0);
+        assertEquals(history.distanceMeters(), history.distanceMeters(0, 5000), 1e-9);
+        assertEquals(0, history.distanceMeters(700, 700), 0);
+    }
+
+    @Test
+    public void outOfOrderSampleIsIgnored() {
+        TelemetryHistory history = new TelemetryHistory(4);
+        assertTrue(history.append(1000L, 10, 0, 0, 0, 0));
+        assertFalse(history.append(999L, 20, 0, 0, 0, 0));
+        assertTrue(history.append(1000L, 30, 0, 0, 0, 0));
+        assertEquals(2, history.size());
+        assertEquals(20, history.meanSpeed(), 1e-9);
+    }
+}
@@ -0,0 +1,198 @@
+package com.segway.robot.sample.uart;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.segway.robot.sample.uart.TelemetryDecoderTest.frameBuffer;
+import static com.segway.robot.sample.uart.TelemetryDecoderTest.putLocationFrame;
+import static com.segway.robot.sample.uart.TelemetryDecoderTest.putWheelFrame;
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test round-tripping frames through {@link TelemetryLogWriter} and {@link TelemetryLogReader}.
+ */
+public class TelemetryLogTest {
+
+    private static final int FRAME_COUNT = 5000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static class CheckingListener implements TelemetryStream.Listener {
+        int wheelCount;
+        int locationCount;
+
+        @Override
+        public void onWheelData(WheelData wheelData) {
+            assertEquals(wheelCount * 20L, wheelData.getTimestamp());
+            assertEquals(wheelCount % 26, wheelData.getWheelSpeed());
+            wheelCount++;
+        }
+
+        @Override
+        public void onLocationData(LocationData locationData) {
+            assertEquals(22631426 + locationCount, locationData.getLatitude());
+            assertEquals(-114123922 - locationCount, locationData.getLongitude());
+            assertEquals(locationCount % 3600, locationData.getDirection());
+            assertEquals(1700000000L + locationCount, locationData.getTimestamp() / 1000000L);
+            locationCount++;
+        }
+    }
+
+    private static void writeFrames(TelemetryLogWriter writer) throws IOException {
+        ByteBuffer buffer = frameBuffer(44);
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            buffer.clear();
+            putWheelFrame(buffer, i * 20L, 80, i % 26);
+            putLocationFrame(buffer, i * 20L + 1, -114123922 - i, 22631426 + i, 100, i % 3600, 50, 90, 1700000000 + i);
+            writer.append(buffer.array(), 0, buffer.position());
+        }
+    }
+
+    @Test
+    public void roundTripAcrossSegments() throws Exception {
+        File directory = new File(folder.getRoot(), "telemetry");
+        TelemetryLogWriter writer = new TelemetryLogWriter(directory, 16 * 1024, 10);
+        writeFrames(writer);
+        writer.close();
+
+        File[] segments = TelemetryLogReader.listSegments(directory);
+        assertTrue("segments " + segments.length, segments.length > 1);
+        CheckingListener listener = new CheckingListener();
+        int replayed = 0;
+        for (File segment : segments) {
+            assertTrue(segment.length() <= 16 * 1024);
+            replayed += new TelemetryLogReader(segment).replay(listener);
+        }
+        assertEquals(2 * FRAME_COUNT, replayed);
+        assertEquals(FRAME_COUNT, listener.wheelCount);
+        assertEquals(FRAME_COUNT, listener.locationCount);
+    }
+
+    @Test(timeout = 10000)
+    public void slowSyncDoesNotBlockAppend() throws Exception {
+        File directory = new File(folder.getRoot(), "telemetry");
+        final AtomicInteger syncCount = new AtomicInteger();
+        TelemetryLogWriter writer = new TelemetryLogWriter(directory, 16 * 1024, 0) {
+            @Override
+            void force(FileChannel channel) throws IOException {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                syncCount.incrementAndGet();
+                super.force(channel);
+            }
+        };
+        long start = System.nanoTime();
+        writeFrames(writer);
+        long appendMs = (System.nanoTime() - start) / 1000000;
+        writer.close();
+
+        assertTrue("appending took " + appendMs + " ms", appendMs < 200);
+        assertTrue(syncCount.get() >= 1);
+        CheckingListener listener = new CheckingListener();
+        for (File segment : TelemetryLogReader.listSegments(directory)) {
+            new TelemetryLogReader(segment).replay(listener);
+        }
+        assertEquals(FRAME_COUNT, listener.wheelCount);
+        assertEquals(FRAME_COUNT, listener.locationCount);
+    }
+
+    @Test
+    public void reopenedWriterContinuesSequence() throws Exception {
+        File directory = folder.newFolder("telemetry");
+        TelemetryLogWriter writer = new TelemetryLogWriter(directory, 1024 * 1024, 1000);
+        writeFrames(writer);
+        File first = writer.currentSegment();
+        writer.close();
+
+        writer = new TelemetryLogWriter(directory, 1024 * 1024, 1000);
+        writer.append(new byte[0]);
+        assertNull(writer.currentSegment());
+        writeFrames(writer);
+        File second = writer.currentSegment();
+        writer.close();
+
+        File[] segments = TelemetryLogReader.listSegments(directory);
+        assertEquals(2, segments.length);
+        assertEquals(first, segments[0]);
+        assertEquals(second, segments[1]);
+    }
+
+    @Test
+    public void unparsableSegmentNamesAreSkipped() throws Exception {
+        File directory = folder.newFolder("telemetry");
+        TelemetryLogWriter writer = new TelemetryLogWriter(directory, 1024 * 1024, 1000);
+        writeFrames(writer);
+        File first = writer.currentSegment();
+        writer.close();
+        long firstLength = first.length();
+        File foreign = new File(directory, "telemetry_backup.tlog");
+        assertTrue(foreign.createNewFile());
+
+        writer = new TelemetryLogWriter(directory, 1024 * 1024, 1000);
+        writeFrames(writer);
+        File second = writer.currentSegment();
+        writer.close();
+
+        assertEquals(TelemetryLogWriter.segmentFile(directory, 1), second);
+        assertEquals(firstLength, first.length());
+        assertTrue(foreign.exists());
+    }
+
+    @Test
+    public void oldSegmentsAreDeleted() throws Exception {
+        File directory = new File(folder.getRoot(), "telemetry");
+        TelemetryLogWriter writer = new TelemetryLogWriter(directory, 16 * 1024, 10, 64 * 1024);
+        writeFrames(writer);
+        File newest = writer.currentSegment();
+        writer.close();
+
+        File[] segments = TelemetryLogReader.listSegments(directory);
+        assertTrue("segments " + segments.length, segments.length >= 3);
+        long total = 0;
+        for (File segment : segments) {
+            total += segment.length();
+        }
+        assertTrue("total " + total, total <= 64 * 1024);
+        assertFalse(TelemetryLogWriter.segmentFile(directory, 0).exists());
+        // the newest segments are the ones kept
+        assertEquals(newest, segments[segments.length - 1]);
+        int oldest = Integer.parseInt(segments[0].getName().replaceAll("\\D", ""));
+        for (int i = 0; i < segments.length; i++) {
+            assertEquals(TelemetryLogWriter.segmentFile(directory, oldest + i), segments[i]);
+        }
+    }
+
+    @Test
+    public void truncatedSegmentReplaysCompleteFrames() throws Exception {
+        File directory = folder.newFolder("telemetry");
+        TelemetryLogWriter writer = new TelemetryLogWriter(directory, 1024 * 1024, 1000);
+        writeFrames(writer);
+        File segment = writer.currentSegment();
+        writer.close();
+
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        file.setLength(file.length() - 5);
+        file.close();
+
+        CheckingListener listener = new CheckingListener();
+        assertEquals(2 * FRAME_COUNT - 1, new TelemetryLogReader(segment).replay(listener));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectForeignFile() throws Exception {
+        File file = folder.newFile("telemetry_00000000.tlog");
+        new TelemetryLogReader(file);
+    }
+}
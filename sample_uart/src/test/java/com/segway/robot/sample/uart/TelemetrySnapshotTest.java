@@ -0,0 +1,82 @@
+package com.segway.robot.sample.uart;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static com.segway.robot.sample.uart.TelemetryDecoderTest.frameBuffer;
+import static com.segway.robot.sample.uart.TelemetryDecoderTest.putLocationFrame;
+import static com.segway.robot.sample.uart.TelemetryDecoderTest.putWheelFrame;
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link TelemetrySnapshot}, parsing synthetic multi-type getData() responses.
+ */
+public class TelemetrySnapshotTest {
+
+    private final TelemetryDecoder decoder = new TelemetryDecoder();
+
+    @Test
+    public void parseWheelThenLocation() {
+        ByteBuffer buffer = frameBuffer(44);
+        putWheelFrame(buffer, 100L, 90, 15);
+        putLocationFrame(buffer, 101L, 1, 2, 3, 4, 5, 6, 7);
+
+        TelemetrySnapshot snapshot = new TelemetrySnapshot();
+        assertTrue(snapshot.parse(decoder, buffer.array()));
+        assertTrue(snapshot.hasWheelData());
+        assertTrue(snapshot.hasLocationData());
+        assertEquals(100L, snapshot.getWheelReceivedTimestamp());
+        assertEquals(101L, snapshot.getLocationReceivedTimestamp());
+        assertEquals(15, snapshot.getWheelData().getWheelSpeed());
+        assertEquals(1, snapshot.getLocationData().getLongitude());
+        assertEquals(7000000L, snapshot.getLocationData().getTimestamp());
+    }
+
+    @Test
+    public void parseLocationThenWheel() {
+        ByteBuffer buffer = frameBuffer(44);
+        putLocationFrame(buffer, 201L, 11, 12, 13, 14, 15, 16, 17);
+        putWheelFrame(buffer, 200L, 90, 20);
+
+        TelemetrySnapshot snapshot = new TelemetrySnapshot();
+        assertTrue(snapshot.parse(decoder, buffer.array()));
+        assertEquals(20, snapshot.getWheelData().getWheelSpeed());
+        assertEquals(12, snapshot.getLocationData().getLatitude());
+    }
+
+    @Test
+    public void skipUnknownFrameTypes() {
+        ByteBuffer buffer = frameBuffer(57);
+        buffer.put((byte) 7);
+        buffer.putLong(300L);
+        buffer.put((byte) 3);
+        buffer.put(new byte[]{1, 2, 3});
+        putWheelFrame(buffer, 301L, 90, 9);
+        putLocationFrame(buffer, 302L, 21, 22, 23, 24, 25, 26, 27);
+
+        TelemetrySnapshot snapshot = new TelemetrySnapshot();
+        assertTrue(snapshot.parse(decoder, buffer.array()));
+        assertEquals(9, snapshot.getWheelData().getWheelSpeed());
+        assertEquals(25, snapshot.getLocationData().getSpeed());
+    }
+
+    @Test
+    public void missingAndTruncatedFrames() {
+        ByteBuffer buffer = frameBuffer(44);
+        putWheelFrame(buffer, 400L, 90, 5);
+        putLocationFrame(buffer, 401L, 1, 2, 3, 4, 5, 6, 7);
+        byte[] truncated = new byte[30];
+        System.arraycopy(buffer.array(), 0, truncated, 0, truncated.length);
+
+        TelemetrySnapshot snapshot = new TelemetrySnapshot();
+        assertTrue(snapshot.parse(decoder, truncated));
+        assertTrue(snapshot.hasWheelData());
+        assertFalse(snapshot.hasLocationData());
+
+        assertFalse(snapshot.parse(decoder, new byte[0]));
+        assertFalse(snapshot.parse(decoder, null));
+        assertFalse(snapshot.hasWheelData());
+        assertFalse(snapshot.hasLocationData());
+    }
+}
@@ -0,0 +1,129 @@
+package com.segway.robot.sample.uart;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static com.segway.robot.sample.uart.TelemetryDecoderTest.frameBuffer;
+import static com.segway.robot.sample.uart.TelemetryDecoderTest.putLocationFrame;
+import static com.segway.robot.sample.uart.TelemetryDecoderTest.putWheelFrame;
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for the dispatching of {@link TelemetryStream}, fed without the service.
+ */
+public class TelemetryStreamTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static class CountingListener implements TelemetryStream.Listener {
+        int wheelCount;
+        int locationCount;
+        long lastWheelSpeed;
+
+        @Override
+        public void onWheelData(WheelData wheelData) {
+            wheelCount++;
+            lastWheelSpeed = wheelData.getWheelSpeed();
+        }
+
+        @Override
+        public void onLocationData(LocationData locationData) {
+            locationCount++;
+        }
+    }
+
+    private static class FailingLogWriter extends TelemetryLogWriter {
+        int appendCount;
+
+        FailingLogWriter() {
+            super(new File("unused"), 4096, 1000);
+        }
+
+        @Override
+        public synchronized void append(byte[] data, int offset, int length) throws IOException {
+            appendCount++;
+            throw new IOException("No space left on device");
+        }
+    }
+
+    private static byte[] frames(long timestamp, int speed) {
+        ByteBuffer buffer = frameBuffer(44);
+        putWheelFrame(buffer, timestamp, 80, speed);
+        putLocationFrame(buffer, timestamp + 1, -114123922, 22631426, 100, 0, 50, 90, 1700000000);
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    @Test
+    public void repeatedFramesAreDispatchedOnce() {
+        TelemetryStream stream = new TelemetryStream(100);
+        CountingListener listener = new CountingListener();
+        stream.addListener(listener);
+        stream.dispatch(frames(20, 5));
+        stream.dispatch(frames(20, 5));
+        stream.dispatch(frames(40, 6));
+
+        assertEquals(2, listener.wheelCount);
+        assertEquals(2, listener.locationCount);
+        assertEquals(6, listener.lastWheelSpeed);
+    }
+
+    @Test
+    public void locationReceivedTimestampBelongsToTheDispatchedFrame() {
+        final TelemetryStream stream = new TelemetryStream(100);
+        final long[] received = new long[2];
+        stream.addListener(new CountingListener() {
+            @Override
+            public void onLocationData(LocationData locationData) {
+                received[locationCount] = stream.getLocationReceivedTimestamp();
+                super.onLocationData(locationData);
+            }
+        });
+        stream.dispatch(frames(20, 1));
+        stream.dispatch(frames(40, 2));
+
+        assertEquals(21, received[0]);
+        assertEquals(41, received[1]);
+    }
+
+    @Test
+    public void failingLogWriterIsDetached() {
+        TelemetryStream stream = new TelemetryStream(100);
+        CountingListener listener = new CountingListener();
+        stream.addListener(listener);
+        FailingLogWriter logWriter = new FailingLogWriter();
+        stream.setLogWriter(logWriter);
+
+        for (int i = 1; i <= 3; i++) {
+            stream.dispatch(frames(i * 20L, i));
+        }
+        assertEquals(3, listener.wheelCount);
+        assertEquals(3, listener.locationCount);
+        assertEquals(3, listener.lastWheelSpeed);
+        assertEquals(1, logWriter.appendCount);
+    }
+
+    @Test
+    public void newFramesAreRecorded() throws Exception {
+        TelemetryStream stream = new TelemetryStream(100);
+        File directory = folder.newFolder("telemetry");
+        TelemetryLogWriter logWriter = new TelemetryLogWriter(directory, 4096, 1000);
+        stream.setLogWriter(logWriter);
+        stream.dispatch(frames(20, 1));
+        stream.dispatch(frames(20, 1));
+        stream.dispatch(frames(40, 2));
+        logWriter.close();
+
+        File[] segments = TelemetryLogReader.listSegments(directory);
+        assertEquals(1, segments.length);
+        CountingListener listener = new CountingListener();
+        assertEquals(4, new TelemetryLogReader(segments[0]).replay(listener));
+        assertEquals(2, listener.lastWheelSpeed);
+    }
+}
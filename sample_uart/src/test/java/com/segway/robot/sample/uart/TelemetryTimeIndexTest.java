@@ -0,0 +1,65 @@
+package com.segway.robot.sample.uart;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link TelemetryTimeIndex}.
+ */
+public class TelemetryTimeIndexTest {
+
+    @Test
+    public void wheelSpeedLookups() {
+        TelemetryTimeIndex index = new TelemetryTimeIndex(16);
+        assertTrue(Float.isNaN(index.nearestWheelSpeed(0, Long.MAX_VALUE)));
+        index.appendWheel(1000, 10);
+        index.appendWheel(1100, 20);
+        index.appendWheel(1200, 12);
+
+        assertEquals(10, index.nearestWheelSpeed(1040, 100), 0);
+        assertEquals(20, index.nearestWheelSpeed(1060, 100), 0);
+        assertEquals(15, index.interpolatedWheelSpeed(1050, 100), 1e-6);
+        assertEquals(16, index.interpolatedWheelSpeed(1150, 100), 1e-6);
+        assertEquals(20, index.interpolatedWheelSpeed(1100, 100), 0);
+        // outside of the recorded range the nearest sample is used
+        assertEquals(12, index.interpolatedWheelSpeed(1250, 100), 0);
+        assertEquals(10, index.interpolatedWheelSpeed(990, 100), 0);
+        assertTrue(Float.isNaN(index.nearestWheelSpeed(1500, 100)));
+        assertTrue(Float.isNaN(index.interpolatedWheelSpeed(800, 100)));
+        assertFalse(index.appendWheel(1150, 0));
+    }
+
+    @Test
+    public void locationLookups() {
+        TelemetryTimeIndex index = new TelemetryTimeIndex(16);
+        LocationData out = new LocationData();
+        assertFalse(index.nearestLocation(0, Long.MAX_VALUE, out));
+        index.appendLocation(2000000, 22631426, -114123922, 100);
+        index.appendLocation(3000000, 22631446, -114123902, 120);
+
+        assertTrue(index.nearestLocation(2400000, 1000000, out));
+        assertEquals(2000000, out.getTimestamp());
+        assertEquals(22631426, out.getLatitude());
+
+        assertTrue(index.interpolatedLocation(2250000, 1000000, out));
+        assertEquals(2250000, out.getTimestamp());
+        assertEquals(22631431, out.getLatitude());
+        assertEquals(-114123917, out.getLongitude());
+        assertEquals(105, out.getSpeed());
+    }
+
+    @Test
+    public void oldSamplesAreEvicted() {
+        TelemetryTimeIndex index = new TelemetryTimeIndex(4);
+        for (int i = 0; i < 100; i++) {
+            index.appendWheel(i * 10L, i);
+        }
+        assertEquals(96, index.nearestWheelSpeed(0, Long.MAX_VALUE), 0);
+        for (int i = 0; i < 100; i++) {
+            float expected = i < 96 ? 96 : i;
+            assertEquals(expected, index.nearestWheelSpeed(i * 10L, Long.MAX_VALUE), 0);
+        }
+        assertEquals(97.5f, index.interpolatedWheelSpeed(975, 10), 1e-6);
+    }
+}
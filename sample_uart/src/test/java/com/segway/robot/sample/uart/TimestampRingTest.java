@@ -0,0 +1,52 @@
+package com.segway.robot.sample.uart;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link TimestampRing}.
+ */
+public class TimestampRingTest {
+
+    @Test
+    public void searchesAfterWrapping() {
+        TimestampRing ring = new TimestampRing(4);
+        assertEquals(0, ring.firstIndexAtOrAfter(0));
+        assertEquals(-1, ring.lastIndexAtOrBefore(0));
+        for (int i = 0; i < 6; i++) {
+            assertTrue(ring.append(i * 10L) >= 0);
+        }
+        assertTrue(ring.isFull());
+        assertEquals(20L, ring.at(ring.physical(0)));
+        assertEquals(50L, ring.at(ring.physical(3)));
+        assertEquals(0, ring.firstIndexAtOrAfter(5));
+        assertEquals(1, ring.firstIndexAtOrAfter(25));
+        assertEquals(1, ring.firstIndexAtOrAfter(30));
+        assertEquals(4, ring.firstIndexAtOrAfter(55));
+        assertEquals(1, ring.lastIndexAtOrBefore(35));
+        assertEquals(3, ring.lastIndexAtOrBefore(50));
+        assertEquals(-1, ring.lastIndexAtOrBefore(15));
+    }
+
+    @Test
+    public void outOfOrderSamplesAreRejected() {
+        TimestampRing ring = new TimestampRing(2);
+        assertEquals(0, ring.append(100));
+        assertEquals(-1, ring.append(99));
+        assertEquals(1, ring.append(100));
+        // the oldest slot is reused once the ring is full
+        assertEquals(0, ring.append(200));
+        assertEquals(2, ring.size());
+        ring.clear();
+        assertEquals(0, ring.size());
+        assertEquals(0, ring.append(1));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void indexesAreChecked() {
+        TimestampRing ring = new TimestampRing(2);
+        ring.append(1);
+        ring.checkedPhysical(1);
+    }
+}
@@ -9,6 +9,7 @@ import android.view.ViewGroup
 import android.widget.Button
 import android.widget.ImageView
 import android.widget.Toast
+import com.segway.robot.sample.yuv.YuvConverter
 import com.segway.robot.sdk.vision.BindStateListener
 import com.segway.robot.sdk.vision.Vision
 import com.segway.robot.sdk.vision.calibration.RS2Intrinsic
@@ -36,6 +37,8 @@ class MainActivity : Activity() {
     @Volatile
     private var mIsBind = false
     private val mLock = Any()
+    private var mYuvData: ByteArray? = null
+    private val mYuvConverter = YuvConverter(YUV_CONVERTER_THREADS)
 
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
@@ -121,16 +124,25 @@ class MainActivity : Activity() {
             val width = Resolution.getWidth(resolution)
             val height = Resolution.getHeight(resolution)
             if (mBitmap == null) {
-                mBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888)
+                // ImageDisplay shows the frame at half size, convert only the pixels it needs
+                mBitmap = Bitmap.createBitmap(
+                    YuvConverter.scaledSize(width, PREVIEW_SCALE),
+                    YuvConverter.scaledSize(height, PREVIEW_SCALE),
+                    Bitmap.Config.ARGB_8888
+                )
                 mImageDisplay = ImageDisplay(width, height)
             }
             val pixelFormat = frame.info.pixelFormat
             if (pixelFormat == PixelFormat.YUV420 || pixelFormat == PixelFormat.YV12) {
                 val limit = frame.byteBuffer.limit()
-                val buff = ByteArray(limit)
+                var buff = mYuvData
+                if (buff == null || buff.size != limit) {
+                    buff = ByteArray(limit)
+                    mYuvData = buff
+                }
                 frame.byteBuffer.position(0)
                 frame.byteBuffer[buff]
-                yuv2RGBBitmap(buff, mBitmap!!, width, height)
+                yuv2RGBBitmap(buff, pixelFormat, mBitmap!!, width, height)
             } else {
                 Log.d(TAG, "An unsupported format")
             }
@@ -145,6 +157,9 @@ class MainActivity : Activity() {
             mTimer?.cancel()
             mTimer = null
         }
+        synchronized(mLock) {
+            mYuvConverter.close()
+        }
     }
 
     internal inner class ImageDisplayTimerTask : TimerTask() {
@@ -168,7 +183,7 @@ class MainActivity : Activity() {
         private var mWidth: Int
         private var mHeight: Int
         private var setParamsFlag = false
-        private var zoom = 0.5f
+        private var zoom = 1f / PREVIEW_SCALE
 
         init {
             mWidth = (width * zoom).toInt()
@@ -187,28 +202,16 @@ class MainActivity : Activity() {
         }
     }
 
-    private fun yuv2RGBBitmap(data: ByteArray, bitmap: Bitmap, width: Int, height: Int) {
-        val frameSize = width * height
-        val rgba = IntArray(frameSize)
-        for (i in 0 until height) {
-            for (j in 0 until width) {
-                var y = 0xff and data[i * width + j].toInt()
-                val v = 0xff and data[frameSize + (i shr 1) * width + (j and 1.inv()) + 0].toInt()
-                val u = 0xff and data[frameSize + (i shr 1) * width + (j and 1.inv()) + 1].toInt()
-                y = if (y < 16) 16 else y
-                var r = Math.round(1.164f * (y - 16) + 1.596f * (v - 128))
-                var g = Math.round(1.164f * (y - 16) - 0.813f * (v - 128) - 0.391f * (u - 128))
-                var b = Math.round(1.164f * (y - 16) + 2.018f * (u - 128))
-                r = if (r < 0) 0 else if (r > 255) 255 else r
-                g = if (g < 0) 0 else if (g > 255) 255 else g
-                b = if (b < 0) 0 else if (b > 255) 255 else b
-                rgba[i * width + j] = -0x1000000 + (b shl 16) + (g shl 8) + r
-            }
-        }
-        bitmap.setPixels(rgba, 0, width, 0, 0, width, height)
+    private fun yuv2RGBBitmap(data: ByteArray, pixelFormat: Int, bitmap: Bitmap, width: Int, height: Int) {
+        val format =
+            if (pixelFormat == PixelFormat.YV12) YuvConverter.FORMAT_YV12 else YuvConverter.FORMAT_NV12
+        val pixels = mYuvConverter.convert(data, format, width, height, PREVIEW_SCALE)
+        bitmap.setPixels(pixels, 0, bitmap.width, 0, 0, bitmap.width, bitmap.height)
     }
 
     companion object {
         private const val TAG = "VisionSample"
+        private const val YUV_CONVERTER_THREADS = 2
+        private const val PREVIEW_SCALE = 2
     }
 }
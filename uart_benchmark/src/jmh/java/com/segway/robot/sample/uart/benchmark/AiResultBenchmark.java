@@ -0,0 +1,49 @@
+package com.segway.robot.sample.uart.benchmark;
+
+import com.segway.robot.sample.uart.ProtocolV1Util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Packing of the one byte AiResult struct: aiInferenceResult in the low 4 bits and
+ * pedestrianDetected in bit 4. {@link ProtocolV1Util#sendAiResult(int, int)} builds it with
+ * NativeByteBuffer and sends it to {@link ReplayDataTransmit}; the alternative packs it with plain
+ * shifts into a reused array and sends that.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AiResultBenchmark {
+
+    private final byte[] payload = new byte[1];
+    private ReplayDataTransmit dataTransmit;
+    private int counter;
+
+    @Setup
+    public void setUp() {
+        dataTransmit = ReplayDataTransmit.install();
+    }
+
+    @Benchmark
+    public long sendAiResult() throws Exception {
+        int value = counter++;
+        ProtocolV1Util.sendAiResult(value & 0xf, value >> 4 & 1);
+        return dataTransmit.getSentBytes();
+    }
+
+    @Benchmark
+    public long sendBitShift() {
+        int value = counter++;
+        payload[0] = (byte) ((value & 0xf) | (value >> 4 & 1) << 4);
+        dataTransmit.sendData(payload);
+        return dataTransmit.getSentBytes();
+    }
+}
@@ -0,0 +1,61 @@
+package com.segway.robot.sample.uart.benchmark;
+
+import com.segway.robot.sample.uart.ProtocolV1Util;
+import com.segway.robot.sample.uart.TelemetryDecoder;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Builds getData() responses with the wire layout documented in {@link ProtocolV1Util}.
+ */
+final class Frames {
+
+    private Frames() {
+    }
+
+    static byte[] wheelFrame(long receivedTimestamp, int power, int speed) {
+        ByteBuffer buffer = allocate(TelemetryDecoder.HEADER_LENGTH + TelemetryDecoder.WHEEL_CONTENT_LENGTH);
+        putWheelFrame(buffer, receivedTimestamp, power, speed);
+        return buffer.array();
+    }
+
+    static byte[] locationFrame(long receivedTimestamp, int longitude, int latitude, int timestamp) {
+        ByteBuffer buffer = allocate(TelemetryDecoder.HEADER_LENGTH + TelemetryDecoder.IOT_CONTENT_LENGTH);
+        putLocationFrame(buffer, receivedTimestamp, longitude, latitude, timestamp);
+        return buffer.array();
+    }
+
+    static byte[] telemetryFrames(long receivedTimestamp) {
+        ByteBuffer buffer = allocate(2 * TelemetryDecoder.HEADER_LENGTH
+                + TelemetryDecoder.WHEEL_CONTENT_LENGTH + TelemetryDecoder.IOT_CONTENT_LENGTH);
+        putWheelFrame(buffer, receivedTimestamp, 80, 18);
+        putLocationFrame(buffer, receivedTimestamp + 1, -114123922, 22631426, 1700000000);
+        return buffer.array();
+    }
+
+    private static ByteBuffer allocate(int length) {
+        return ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void putWheelFrame(ByteBuffer buffer, long receivedTimestamp, int power, int speed) {
+        buffer.put((byte) ProtocolV1Util.TYPE_WHEEL);
+        buffer.putLong(receivedTimestamp);
+        buffer.put((byte) TelemetryDecoder.WHEEL_CONTENT_LENGTH);
+        buffer.put((byte) power);
+        buffer.put((byte) speed);
+    }
+
+    private static void putLocationFrame(ByteBuffer buffer, long receivedTimestamp, int longitude, int latitude, int timestamp) {
+        buffer.put((byte) ProtocolV1Util.TYPE_IOT);
+        buffer.putLong(receivedTimestamp);
+        buffer.put((byte) TelemetryDecoder.IOT_CONTENT_LENGTH);
+        buffer.putInt(longitude);
+        buffer.putInt(latitude);
+        buffer.putInt(12345);
+        buffer.putShort((short) 456);
+        buffer.putShort((short) 123);
+        buffer.putShort((short) 90);
+        buffer.putInt(timestamp);
+    }
+}
@@ -0,0 +1,64 @@
+package com.segway.robot.sample.uart.benchmark;
+
+import android.os.RemoteException;
+
+import com.segway.robot.datatransmit.utils.NativeByteBuffer;
+import com.segway.robot.sample.uart.LocationData;
+import com.segway.robot.sample.uart.ProtocolV1Util;
+import com.segway.robot.sample.uart.WheelData;
+import com.segway.robot.service.AiBoxServiceManager;
+import com.segway.robot.service.execption.ServiceUnbindException;
+
+/**
+ * The polling methods of {@link ProtocolV1Util} before it decoded through TelemetryDecoder, kept
+ * unchanged as the baseline: one getData() call and one NativeByteBuffer per frame type, and a
+ * new record per poll.
+ */
+final class LegacyProtocolV1 {
+    private static final int[] WHEEL_PARAM = new int[]{ProtocolV1Util.TYPE_WHEEL};
+    private static final int[] WHEEL_LEN_PARAM = new int[]{2};
+    private static final int[] IOT_PARAM = new int[]{ProtocolV1Util.TYPE_IOT};
+    private static final int[] IOT_LEN_PARAM = new int[]{22};
+
+    private LegacyProtocolV1() {
+    }
+
+    static WheelData getWheelData() throws RemoteException, ServiceUnbindException {
+        byte[] data = AiBoxServiceManager.getInstance().getDataTransmit().getData(WHEEL_PARAM, WHEEL_LEN_PARAM);
+        if (data != null && data.length > 0) {
+            NativeByteBuffer nativeData = NativeByteBuffer.obtain().wrap(data);
+            int type = nativeData.getByte();
+            long timestamp = nativeData.getLong();
+            int size = nativeData.getByte();
+            int power = nativeData.getByte();
+            int speed = nativeData.getByte();
+            nativeData.recycle();
+            if (type == ProtocolV1Util.TYPE_WHEEL) {
+                return new WheelData(timestamp, speed);
+            }
+        }
+        return null;
+    }
+
+    static LocationData getLocationData() throws RemoteException, ServiceUnbindException {
+        byte[] data = AiBoxServiceManager.getInstance().getDataTransmit().getData(IOT_PARAM, IOT_LEN_PARAM);
+        if (data != null && data.length > 0) {
+            NativeByteBuffer nativeData = NativeByteBuffer.obtain().wrap(data);
+            int type = nativeData.getByte();
+            long timestamp = nativeData.getLong();
+            int size = nativeData.getByte();
+            int longitude = nativeData.getInt();
+            int latitude = nativeData.getInt();
+            int gpsAt = nativeData.getInt();
+            int gpsHeading = nativeData.getShort();
+            int gpsSpeed = nativeData.getShort();
+            int gpsHdop = nativeData.getShort();
+            long locTimestamp = nativeData.getInt() * 1000000L;
+            nativeData.recycle();
+            if (type == ProtocolV1Util.TYPE_IOT) {
+                return new LocationData(locTimestamp, longitude, latitude, gpsAt, gpsHeading, gpsSpeed, gpsHdop);
+            }
+        }
+        return null;
+    }
+}
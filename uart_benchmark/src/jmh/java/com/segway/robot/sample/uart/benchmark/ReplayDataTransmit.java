@@ -0,0 +1,40 @@
+package com.segway.robot.sample.uart.benchmark;
+
+import com.segway.robot.sample.uart.ProtocolV1Util;
+import com.segway.robot.service.AiBoxServiceManager;
+import com.segway.robot.service.DataTransmit;
+
+/**
+ * A {@link DataTransmit} answering getData() with fixed frames built by {@link Frames}, so the
+ * benchmarks poll through {@link ProtocolV1Util} exactly like the app. Install it with
+ * {@link #install()}; sent data is only counted.
+ */
+final class ReplayDataTransmit implements DataTransmit {
+    private final byte[] wheelFrame = Frames.wheelFrame(1700000000000L, 80, 18);
+    private final byte[] locationFrame = Frames.locationFrame(1700000000001L, -114123922, 22631426, 1700000000);
+    private final byte[] telemetryFrames = Frames.telemetryFrames(1700000000000L);
+    private long sentBytes;
+
+    static ReplayDataTransmit install() {
+        ReplayDataTransmit dataTransmit = new ReplayDataTransmit();
+        AiBoxServiceManager.getInstance().setDataTransmit(dataTransmit);
+        return dataTransmit;
+    }
+
+    @Override
+    public byte[] getData(int[] types, int[] lengths) {
+        if (types.length == 1) {
+            return types[0] == ProtocolV1Util.TYPE_WHEEL ? wheelFrame : locationFrame;
+        }
+        return telemetryFrames;
+    }
+
+    @Override
+    public void sendData(byte[] data) {
+        sentBytes += data.length;
+    }
+
+    long getSentBytes() {
+        return sentBytes;
+    }
+}
@@ -0,0 +1,136 @@
+package com.segway.robot.sample.uart.benchmark;
+
+import android.os.Parcel;
+
+import com.segway.robot.sample.uart.LocationData;
+import com.segway.robot.sample.uart.LocationDataBatch;
+import com.segway.robot.sample.uart.WheelData;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Record construction and serialisation of telemetry history: one {@link LocationData} per
+ * sample against reused records and the columnar {@link LocationDataBatch}, written to and read
+ * back from a heap buffer and from the in-memory {@link Parcel} stand-in.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SerializationBenchmark {
+    // timestamp + 6 int fields
+    private static final int LOCATION_RECORD_LENGTH = 8 + 6 * 4;
+
+    @Param({"1000"})
+    public int sampleCount;
+
+    private LocationData[] samples;
+    private LocationDataBatch batch;
+    private ByteBuffer buffer;
+    private final LocationData locationData = new LocationData();
+    private final WheelData wheelData = new WheelData();
+
+    @Setup
+    public void setUp() {
+        samples = new LocationData[sampleCount];
+        batch = new LocationDataBatch(sampleCount);
+        for (int i = 0; i < sampleCount; i++) {
+            samples[i] = new LocationData((1700000000L + i) * 1000000L, -114123922 - i, 22631426 + i,
+                    12345, i % 3600, 123, 90);
+            batch.add(samples[i]);
+        }
+        buffer = ByteBuffer.allocate(sampleCount * LOCATION_RECORD_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Benchmark
+    public void constructWheelData(Blackhole blackhole) {
+        for (int i = 0; i < sampleCount; i++) {
+            blackhole.consume(new WheelData(i * 20L, i % 26));
+        }
+    }
+
+    @Benchmark
+    public void reuseWheelData(Blackhole blackhole) {
+        for (int i = 0; i < sampleCount; i++) {
+            wheelData.setTimestamp(i * 20L);
+            wheelData.setWheelSpeed(i % 26);
+            blackhole.consume(wheelData);
+        }
+    }
+
+    @Benchmark
+    public void roundTripPerObject(Blackhole blackhole) {
+        buffer.clear();
+        for (LocationData sample : samples) {
+            buffer.putLong(sample.getTimestamp());
+            buffer.putInt(sample.getLongitude());
+            buffer.putInt(sample.getLatitude());
+            buffer.putInt(sample.getAttitude());
+            buffer.putInt(sample.getDirection());
+            buffer.putInt(sample.getSpeed());
+            buffer.putInt(sample.getHdop());
+        }
+        buffer.flip();
+        for (int i = 0; i < sampleCount; i++) {
+            blackhole.consume(new LocationData(buffer.getLong(), buffer.getInt(), buffer.getInt(),
+                    buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt()));
+        }
+    }
+
+    @Benchmark
+    public void roundTripReused(Blackhole blackhole) {
+        buffer.clear();
+        for (int i = 0; i < sampleCount; i++) {
+            batch.get(i, locationData);
+            buffer.putLong(locationData.getTimestamp());
+            buffer.putInt(locationData.getLongitude());
+            buffer.putInt(locationData.getLatitude());
+            buffer.putInt(locationData.getAttitude());
+            buffer.putInt(locationData.getDirection());
+            buffer.putInt(locationData.getSpeed());
+            buffer.putInt(locationData.getHdop());
+        }
+        buffer.flip();
+        for (int i = 0; i < sampleCount; i++) {
+            locationData.setTimestamp(buffer.getLong());
+            locationData.setLongitude(buffer.getInt());
+            locationData.setLatitude(buffer.getInt());
+            locationData.setAttitude(buffer.getInt());
+            locationData.setDirection(buffer.getInt());
+            locationData.setSpeed(buffer.getInt());
+            locationData.setHdop(buffer.getInt());
+            blackhole.consume(locationData);
+        }
+    }
+
+    @Benchmark
+    public LocationData[] parcelPerObject() {
+        Parcel parcel = Parcel.obtain();
+        parcel.writeTypedArray(samples, 0);
+        parcel.setDataPosition(0);
+        LocationData[] result = parcel.createTypedArray(LocationData.CREATOR);
+        parcel.recycle();
+        return result;
+    }
+
+    @Benchmark
+    public LocationDataBatch parcelBatch() {
+        Parcel parcel = Parcel.obtain();
+        batch.writeToParcel(parcel, 0);
+        parcel.setDataPosition(0);
+        LocationDataBatch result = LocationDataBatch.CREATOR.createFromParcel(parcel);
+        parcel.recycle();
+        return result;
+    }
+}
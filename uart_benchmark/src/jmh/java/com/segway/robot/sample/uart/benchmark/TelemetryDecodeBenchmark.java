@@ -0,0 +1,61 @@
+package com.segway.robot.sample.uart.benchmark;
+
+import com.segway.robot.sample.uart.LocationData;
+import com.segway.robot.sample.uart.ProtocolV1Util;
+import com.segway.robot.sample.uart.TelemetrySnapshot;
+import com.segway.robot.sample.uart.WheelData;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wheel and GPS polling through the service, answered by {@link ReplayDataTransmit}: the
+ * NativeByteBuffer path ProtocolV1Util used to take, which builds a new record per poll, against
+ * the current {@link ProtocolV1Util} decoding into reused records.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TelemetryDecodeBenchmark {
+
+    private final WheelData wheelData = new WheelData();
+    private final LocationData locationData = new LocationData();
+    private final TelemetrySnapshot snapshot = new TelemetrySnapshot();
+
+    @Setup
+    public void setUp() {
+        ReplayDataTransmit.install();
+    }
+
+    @Benchmark
+    public WheelData wheelLegacy() throws Exception {
+        return LegacyProtocolV1.getWheelData();
+    }
+
+    @Benchmark
+    public WheelData wheelProtocol() throws Exception {
+        return ProtocolV1Util.getWheelData(wheelData) ? wheelData : null;
+    }
+
+    @Benchmark
+    public LocationData locationLegacy() throws Exception {
+        return LegacyProtocolV1.getLocationData();
+    }
+
+    @Benchmark
+    public LocationData locationProtocol() throws Exception {
+        return ProtocolV1Util.getLocationData(locationData) ? locationData : null;
+    }
+
+    @Benchmark
+    public boolean telemetrySnapshot() throws Exception {
+        return ProtocolV1Util.getTelemetrySnapshot(snapshot);
+    }
+}
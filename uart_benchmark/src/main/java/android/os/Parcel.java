@@ -0,0 +1,184 @@
+package android.os;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+
+/**
+ * JVM stand-in for the Android class: an in-memory, growable byte buffer with the wire layout of
+ * the platform Parcel for the types the telemetry records use. Integers and longs take 4 and 8
+ * bytes in native (little-endian) order, and an array is its length, -1 for null, followed by its
+ * elements. Positions and sizes are in bytes, as on Android. Like the platform class, instances
+ * come from {@link #obtain()} and go back with {@link #recycle()}.
+ */
+public final class Parcel {
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int POOL_SIZE = 6;
+    private static final ArrayDeque<Parcel> POOL = new ArrayDeque<>(POOL_SIZE);
+
+    private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_CAPACITY).order(ByteOrder.LITTLE_ENDIAN);
+    private int dataSize;
+
+    private Parcel() {
+    }
+
+    public static Parcel obtain() {
+        synchronized (POOL) {
+            Parcel parcel = POOL.pollLast();
+            if (parcel != null) {
+                return parcel;
+            }
+        }
+        return new Parcel();
+    }
+
+    public void recycle() {
+        buffer.clear();
+        dataSize = 0;
+        synchronized (POOL) {
+            if (POOL.size() < POOL_SIZE) {
+                POOL.addLast(this);
+            }
+        }
+    }
+
+    public int dataSize() {
+        return dataSize;
+    }
+
+    public int dataPosition() {
+        return buffer.position();
+    }
+
+    public void setDataPosition(int pos) {
+        if (pos < 0 || pos > dataSize) {
+            throw new IllegalArgumentException("Position " + pos + " outside of " + dataSize + " bytes");
+        }
+        buffer.position(pos);
+    }
+
+    public void writeInt(int val) {
+        ensureCapacity(4);
+        buffer.putInt(val);
+        grown();
+    }
+
+    public void writeLong(long val) {
+        ensureCapacity(8);
+        buffer.putLong(val);
+        grown();
+    }
+
+    public void writeIntArray(int[] val) {
+        if (val == null) {
+            writeInt(-1);
+            return;
+        }
+        ensureCapacity(4 + 4 * val.length);
+        buffer.putInt(val.length);
+        buffer.asIntBuffer().put(val);
+        buffer.position(buffer.position() + 4 * val.length);
+        grown();
+    }
+
+    public void writeLongArray(long[] val) {
+        if (val == null) {
+            writeInt(-1);
+            return;
+        }
+        ensureCapacity(4 + 8 * val.length);
+        buffer.putInt(val.length);
+        buffer.asLongBuffer().put(val);
+        buffer.position(buffer.position() + 8 * val.length);
+        grown();
+    }
+
+    public <T extends Parcelable> void writeTypedArray(T[] val, int parcelableFlags) {
+        if (val == null) {
+            writeInt(-1);
+            return;
+        }
+        writeInt(val.length);
+        for (T item : val) {
+            // the platform writes a presence flag before every item
+            if (item == null) {
+                writeInt(0);
+            } else {
+                writeInt(1);
+                item.writeToParcel(this, parcelableFlags);
+            }
+        }
+    }
+
+    public int readInt() {
+        checkAvailable(4);
+        return buffer.getInt();
+    }
+
+    public long readLong() {
+        checkAvailable(8);
+        return buffer.getLong();
+    }
+
+    public int[] createIntArray() {
+        int length = readInt();
+        if (length < 0) {
+            return null;
+        }
+        checkAvailable(4L * length);
+        int[] val = new int[length];
+        buffer.asIntBuffer().get(val);
+        buffer.position(buffer.position() + 4 * length);
+        return val;
+    }
+
+    public long[] createLongArray() {
+        int length = readInt();
+        if (length < 0) {
+            return null;
+        }
+        checkAvailable(8L * length);
+        long[] val = new long[length];
+        buffer.asLongBuffer().get(val);
+        buffer.position(buffer.position() + 8 * length);
+        return val;
+    }
+
+    public <T> T[] createTypedArray(Parcelable.Creator<T> creator) {
+        int length = readInt();
+        if (length < 0) {
+            return null;
+        }
+        T[] val = creator.newArray(length);
+        for (int i = 0; i < length; i++) {
+            if (readInt() != 0) {
+                val[i] = creator.createFromParcel(this);
+            }
+        }
+        return val;
+    }
+
+    private void ensureCapacity(int length) {
+        if (buffer.remaining() >= length) {
+            return;
+        }
+        int capacity = Math.max(buffer.capacity() * 2, buffer.position() + length);
+        ByteBuffer grown = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+        int position = buffer.position();
+        buffer.position(0).limit(dataSize);
+        grown.put(buffer);
+        grown.position(position);
+        buffer = grown;
+    }
+
+    private void grown() {
+        dataSize = Math.max(dataSize, buffer.position());
+    }
+
+    private void checkAvailable(long length) {
+        if (buffer.position() + length > dataSize) {
+            throw new IllegalStateException("Reading " + length + " bytes at " + buffer.position()
+                    + " of " + dataSize);
+        }
+    }
+}
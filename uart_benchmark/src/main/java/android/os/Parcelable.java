@@ -0,0 +1,17 @@
+package android.os;
+
+/**
+ * JVM stand-in for the Android interface, written to and read from the {@link Parcel} stand-in.
+ */
+public interface Parcelable {
+
+    void writeToParcel(Parcel dest, int flags);
+
+    int describeContents();
+
+    interface Creator<T> {
+        T createFromParcel(Parcel source);
+
+        T[] newArray(int size);
+    }
+}
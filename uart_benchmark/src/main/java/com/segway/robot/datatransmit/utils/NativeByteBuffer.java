@@ -0,0 +1,63 @@
+package com.segway.robot.datatransmit.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * JVM stand-in for the NativeByteBuffer of the AI box SDK, used as the baseline of the legacy
+ * decode and AI result paths. Like the SDK class, every obtain() hands out a fresh buffer and the
+ * values are read little-endian; put() packs bit fields from the least significant bit up.
+ */
+public class NativeByteBuffer {
+    private ByteBuffer buffer;
+    private int bitPosition;
+
+    public static NativeByteBuffer obtain() {
+        return new NativeByteBuffer();
+    }
+
+    public static NativeByteBuffer obtain(int size) {
+        NativeByteBuffer nativeByteBuffer = new NativeByteBuffer();
+        nativeByteBuffer.buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        return nativeByteBuffer;
+    }
+
+    public NativeByteBuffer wrap(byte[] data) {
+        buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        bitPosition = 0;
+        return this;
+    }
+
+    public void put(int value, int bits) {
+        int index = bitPosition >> 3;
+        int shift = bitPosition & 7;
+        int current = buffer.get(index) & 0xff;
+        current |= (value & ((1 << bits) - 1)) << shift;
+        buffer.put(index, (byte) current);
+        bitPosition += bits;
+    }
+
+    public byte[] getData() {
+        return buffer.array();
+    }
+
+    public int getByte() {
+        return buffer.get();
+    }
+
+    public int getShort() {
+        return buffer.getShort();
+    }
+
+    public int getInt() {
+        return buffer.getInt();
+    }
+
+    public long getLong() {
+        return buffer.getLong();
+    }
+
+    public void recycle() {
+        buffer = null;
+    }
+}
@@ -0,0 +1,29 @@
+package com.segway.robot.service;
+
+import com.segway.robot.service.execption.ServiceUnbindException;
+
+/**
+ * JVM stand-in for the AI box SDK service manager. Benchmarks install the {@link DataTransmit}
+ * that {@code ProtocolV1Util} talks to with {@link #setDataTransmit(DataTransmit)}.
+ */
+public class AiBoxServiceManager {
+    private static final AiBoxServiceManager INSTANCE = new AiBoxServiceManager();
+
+    private volatile DataTransmit dataTransmit;
+
+    public static AiBoxServiceManager getInstance() {
+        return INSTANCE;
+    }
+
+    public void setDataTransmit(DataTransmit dataTransmit) {
+        this.dataTransmit = dataTransmit;
+    }
+
+    public DataTransmit getDataTransmit() throws ServiceUnbindException {
+        DataTransmit dataTransmit = this.dataTransmit;
+        if (dataTransmit == null) {
+            throw new ServiceUnbindException();
+        }
+        return dataTransmit;
+    }
+}
@@ -0,0 +1,13 @@
+package com.segway.robot.service;
+
+import android.os.RemoteException;
+
+/**
+ * JVM stand-in for the data transmit interface of the AI box SDK.
+ */
+public interface DataTransmit {
+
+    byte[] getData(int[] types, int[] lengths) throws RemoteException;
+
+    void sendData(byte[] data) throws RemoteException;
+}
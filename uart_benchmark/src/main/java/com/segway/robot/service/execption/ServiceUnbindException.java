@@ -0,0 +1,7 @@
+package com.segway.robot.service.execption;
+
+/**
+ * JVM stand-in for the AI box SDK class.
+ */
+public class ServiceUnbindException extends Exception {
+}
@@ -0,0 +1,85 @@
+package com.segway.robot.sample.uart;
+
+import android.os.Parcel;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round trips of the telemetry records through the in-memory {@link Parcel} stand-in.
+ */
+public class ParcelRoundTripTest {
+
+    @Test
+    public void locationDataArray() {
+        LocationData[] samples = new LocationData[]{
+                new LocationData(1700000000000000L, -114123922, 22631426, 12345, 90, 123, 80),
+                null,
+                new LocationData(1700000001000000L, -114123923, 22631427, 12346, 91, 124, 81),
+        };
+        Parcel parcel = Parcel.obtain();
+        parcel.writeTypedArray(samples, 0);
+        parcel.setDataPosition(0);
+        LocationData[] result = parcel.createTypedArray(LocationData.CREATOR);
+        assertEquals(parcel.dataSize(), parcel.dataPosition());
+        parcel.recycle();
+
+        assertEquals(3, result.length);
+        assertNull(result[1]);
+        assertEquals(1700000001000000L, result[2].getTimestamp());
+        assertEquals(-114123923, result[2].getLongitude());
+        assertEquals(22631427, result[2].getLatitude());
+        assertEquals(12346, result[2].getAttitude());
+        assertEquals(91, result[2].getDirection());
+        assertEquals(124, result[2].getSpeed());
+        assertEquals(81, result[2].getHdop());
+    }
+
+    @Test
+    public void locationDataBatchWritesOnlyItsSize() {
+        LocationDataBatch batch = new LocationDataBatch(16);
+        for (int i = 0; i < 3; i++) {
+            batch.add(new LocationData(i * 1000L, i, -i, 100 + i, i % 360, 10 + i, 90));
+        }
+        Parcel parcel = Parcel.obtain();
+        batch.writeToParcel(parcel, 0);
+        parcel.setDataPosition(0);
+        LocationDataBatch result = LocationDataBatch.CREATOR.createFromParcel(parcel);
+        assertEquals(parcel.dataSize(), parcel.dataPosition());
+        parcel.recycle();
+
+        assertEquals(3, result.size());
+        LocationData sample = new LocationData();
+        result.get(2, sample);
+        assertEquals(2000L, sample.getTimestamp());
+        assertEquals(-2, sample.getLatitude());
+        assertEquals(102, sample.getAttitude());
+        assertEquals(12, sample.getSpeed());
+    }
+
+    @Test
+    public void wheelDataBatch() {
+        WheelDataBatch batch = new WheelDataBatch(4);
+        for (int i = 0; i < 6; i++) {
+            batch.add(i * 20L, i);
+        }
+        Parcel parcel = Parcel.obtain();
+        batch.writeToParcel(parcel, 0);
+        parcel.setDataPosition(0);
+        WheelDataBatch result = WheelDataBatch.CREATOR.createFromParcel(parcel);
+        parcel.recycle();
+
+        assertEquals(6, result.size());
+        assertEquals(100L, result.getTimestamp(5));
+        assertEquals(5, result.getWheelSpeed(5));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void readingPastTheEndFails() {
+        Parcel parcel = Parcel.obtain();
+        parcel.writeInt(1);
+        parcel.setDataPosition(0);
+        parcel.readLong();
+    }
+}